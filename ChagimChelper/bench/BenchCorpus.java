@@ -0,0 +1,255 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * A generator of synthetic schedules and HebCal API responses, used by {@link Benchmarks}.
+ * The output is deterministic for a given seed, and scales with the number of courses, one-off
+ * events and years, so the benchmarks can be charted against each of them.
+ * This class cannot be constructed; it contains only static methods
+ */
+public class BenchCorpus {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private BenchCorpus() {}
+
+    /**
+     * The first year of every generated corpus
+     */
+    public static final int BASE_YEAR = 2023;
+
+    /**
+     * The weekly meeting patterns courses are given, as BYDAY values
+     */
+    private static final String[] DAY_PATTERNS = {"MO,WE", "TU,TH", "MO,WE,FR", "FR", "MO", "WE"};
+    /**
+     * The departments course names are made from
+     */
+    private static final String[] DEPARTMENTS = {"CIS", "NETS", "ESE", "MATH", "ASTR", "HIST", "ECON", "PHYS"};
+
+    /**
+     * The formatter for UTC date-times in a .ics file
+     */
+    private static final DateTimeFormatter ICS_UTC = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+    /**
+     * The formatter for local date-times in a .ics file
+     */
+    private static final DateTimeFormatter ICS_LOCAL = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+
+    /**
+     * Generate the text of a .ics schedule. Each course meets weekly in both semesters of every
+     * year, and the one-off events (e.g. exams) are spread over the same semesters.
+     *
+     * @param courses   The number of weekly courses
+     * @param events    The number of one-off events
+     * @param years     The number of academic years the schedule covers
+     * @param pennLabs  True to write the schedule the way PennCoursePlan does (UTC times with the
+     *                  Penn Labs offset bug), false to write local times with a TZID parameter
+     * @param seed      The seed for the random course times
+     * @return          The text of the .ics file
+     */
+    public static String schedule(int courses, int events, int years, boolean pennLabs, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        sb.append("BEGIN:VCALENDAR\r\n");
+        sb.append("X-WR-CALNAME:Synthetic Schedule\r\n");
+        sb.append("VERSION:2.0\r\n");
+        sb.append(pennLabs ? "PRODID:Penn Labs\r\n" : "PRODID:-//ChagimChelper//Benchmarks//EN\r\n");
+
+        List<LocalDate[]> semesters = semesters(years);
+        for (int c = 0; c < courses; c++) {
+            String name = DEPARTMENTS[c % DEPARTMENTS.length] + "-" + (1000 + 10 * c);
+            String days = DAY_PATTERNS[random.nextInt(DAY_PATTERNS.length)];
+            LocalTime start = LocalTime.of(8, 0).plusMinutes(15L * random.nextInt(40));
+            LocalTime end = start.plusMinutes(60 + 30L * random.nextInt(4));
+            for (LocalDate[] semester : semesters) {
+                sb.append("BEGIN:VEVENT\r\n");
+                appendLine(sb, "RRULE:FREQ=WEEKLY;UNTIL=" + ICS_UTC.format(semester[1].atStartOfDay()) + ";WKST=SU;BYDAY=" + days, pennLabs);
+                appendDateTime(sb, "DTEND", semester[0].atTime(end), pennLabs);
+                appendDateTime(sb, "DTSTART", semester[0].atTime(start), pennLabs);
+                appendLine(sb, "SUMMARY:" + name, pennLabs);
+                appendLine(sb, "DESCRIPTION:Weekly meetings of " + name + ", held in room " + (100 + random.nextInt(400))
+                        + " of the building on the far side of the campus, across from the library", pennLabs);
+                sb.append("END:VEVENT\r\n");
+            }
+        }
+        for (int e = 0; e < events; e++) {
+            LocalDate[] semester = semesters.get(random.nextInt(semesters.size()));
+            int length = (int) (semester[1].toEpochDay() - semester[0].toEpochDay());
+            LocalDateTime start = semester[0].plusDays(random.nextInt(length + 1)).atTime(9 + random.nextInt(10), 0);
+            sb.append("BEGIN:VEVENT\r\n");
+            appendDateTime(sb, "DTEND", start.plusHours(2), pennLabs);
+            appendDateTime(sb, "DTSTART", start, pennLabs);
+            appendLine(sb, "SUMMARY:Exam " + (e + 1), pennLabs);
+            sb.append("END:VEVENT\r\n");
+        }
+        sb.append("END:VCALENDAR\r\n");
+        return sb.toString();
+    }
+
+    /**
+     * The first and last dates of each semester in the given number of academic years
+     *
+     * @param years  The number of years
+     * @return       A list of [start, end] pairs, in order
+     */
+    private static List<LocalDate[]> semesters(int years) {
+        List<LocalDate[]> rtn = new ArrayList<>();
+        for (int y = BASE_YEAR; y < BASE_YEAR + years; y++) {
+            rtn.add(new LocalDate[] {LocalDate.of(y, 1, 11), LocalDate.of(y, 4, 26)});
+            rtn.add(new LocalDate[] {LocalDate.of(y, 8, 30), LocalDate.of(y, 12, 11)});
+        }
+        return rtn;
+    }
+
+    /**
+     * Append a DTSTART or DTEND line.
+     *
+     * @param sb        The builder to append to
+     * @param property  The property name
+     * @param time      The date-time, in Penn's timezone
+     * @param pennLabs  True to write the time as PennCoursePlan does, see {@link #schedule}
+     */
+    private static void appendDateTime(StringBuilder sb, String property, LocalDateTime time, boolean pennLabs) {
+        if (pennLabs) {
+            appendLine(sb, property + ":" + ICS_UTC.format(time), true);
+        } else {
+            appendLine(sb, property + ";TZID=" + Utils.PENN_TIMEZONE + ":" + ICS_LOCAL.format(time), false);
+        }
+    }
+
+    /**
+     * Append a content line, folding it at 75 characters as described in RFC 5545 section 3.1.
+     * PennCoursePlan does not fold its lines, so lines are only folded in the other format.
+     *
+     * @param sb    The builder to append to
+     * @param line  The unfolded line
+     * @param flat  True to leave the line unfolded
+     */
+    private static void appendLine(StringBuilder sb, String line, boolean flat) {
+        if (flat || line.length() <= 75) {
+            sb.append(line).append("\r\n");
+            return;
+        }
+        sb.append(line, 0, 75).append("\r\n");
+        for (int i = 75; i < line.length(); i += 74) {
+            sb.append(' ').append(line, i, Math.min(i + 74, line.length())).append("\r\n");
+        }
+    }
+
+    /**
+     * Generate the text of a HebCal API response with the holidays of the given number of years,
+     * as computed by {@link LocalHolidayProvider}. Like the real API, the response includes items
+     * (e.g. weekly Torah portions) and fields which the parser has to skip.
+     *
+     * @param years  The number of years, starting on January 1st of {@link #BASE_YEAR}
+     * @return       The text of the JSON response
+     */
+    public static String holidayJson(int years) {
+        LocalDate start = LocalDate.of(BASE_YEAR, 1, 1);
+        LocalDate end = LocalDate.of(BASE_YEAR + years - 1, 12, 31);
+        TreeMap<LocalDate, String> yomTov = HebrewCalendar.yomTovDays(start, end.plusDays(7));
+        List<HebCalAPI.HolidayInterval> holidays = new LocalHolidayProvider().getHolidays(start, end);
+
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter json = new JsonWriter(out);
+            json.beginObject();
+            json.name("title").value("Hebcal 19104 " + BASE_YEAR);
+            json.name("date").value(start + "T00:00:00.000Z");
+            json.name("location").beginObject()
+                    .name("title").value("Philadelphia, PA 19104")
+                    .name("city").value("Philadelphia")
+                    .name("latitude").value(LocalHolidayProvider.PENN_LATITUDE + "")
+                    .name("longitude").value(LocalHolidayProvider.PENN_LONGITUDE + "")
+                    .endObject();
+            json.name("range").beginObject()
+                    .name("start").value(start.toString())
+                    .name("end").value(end.toString())
+                    .endObject();
+            json.name("items").beginArray();
+            for (var h : holidays) {
+                ZonedDateTime candles = h.interval.start;
+                json.beginObject()
+                        .name("title").value("Candle lighting: " + DateTimeFormatter.ofPattern("h:mma").format(candles).toLowerCase())
+                        .name("date").value(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(candles))
+                        .name("category").value("candles")
+                        .name("title_orig").value("Candle lighting")
+                        .name("hebrew").value("\u05d4\u05d3\u05dc\u05e7\u05ea \u05e0\u05e8\u05d5\u05ea")
+                        .endObject();
+
+                LocalDate last = h.interval.end.toLocalDate();
+                for (var day : yomTov.subMap(candles.toLocalDate(), false, last, true).entrySet()) {
+                    json.beginObject()
+                            .name("title").value(day.getValue())
+                            .name("date").value(day.getKey().toString())
+                            .name("hdate").value(HebrewCalendar.hebrewYear(day.getKey()) + "")
+                            .name("category").value("holiday")
+                            .name("subcat").value("major")
+                            .name("yomtov").value(true)
+                            .name("link").value("https://hebcal.com/h/" + day.getValue().toLowerCase().replace(' ', '-'))
+                            .name("memo").value("A major holiday, on which work is forbidden")
+                            .endObject();
+                }
+                if (!yomTov.containsKey(last)) {
+                    json.beginObject()
+                            .name("title").value("Parashat Bereshit")
+                            .name("date").value(last.toString())
+                            .name("category").value("parashat")
+                            .name("leyning").beginObject()
+                            .name("torah").value("Genesis 1:1-6:8")
+                            .name("haftarah").value("Isaiah 42:5-43:10")
+                            .name("triennial").beginArray().value(1).value(2).value(3).endArray()
+                            .endObject()
+                            .endObject();
+                }
+
+                json.beginObject()
+                        .name("title").value("Havdalah: " + DateTimeFormatter.ofPattern("h:mma").format(h.interval.end).toLowerCase())
+                        .name("date").value(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(h.interval.end))
+                        .name("category").value("havdalah")
+                        .name("title_orig").value("Havdalah")
+                        .name("hebrew").value("\u05d4\u05d1\u05d3\u05dc\u05d4")
+                        .endObject();
+            }
+            json.endArray();
+            json.endObject();
+        } catch (IOException e) {
+            throw new RuntimeException("A StringWriter threw an IOException", e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Write a corpus to disk, so it can be inspected or used with other tools.
+     *
+     * @param args  The output directory, and optionally the number of courses, one-off events
+     *              and years (4, 4 and 1 by default)
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: <output directory> [courses] [events] [years]");
+            System.exit(1);
+        }
+        Path dir = Path.of(args[0]);
+        int courses = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+        int events = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+        int years = (args.length > 3) ? Integer.parseInt(args[3]) : 1;
+        String suffix = "-" + courses + "c-" + events + "e-" + years + "y";
+        try {
+            Files.createDirectories(dir);
+            Files.writeString(dir.resolve("schedule" + suffix + ".ics"), schedule(courses, events, years, true, 1), StandardCharsets.UTF_8);
+            Files.writeString(dir.resolve("schedule-tzid" + suffix + ".ics"), schedule(courses, events, years, false, 1), StandardCharsets.UTF_8);
+            Files.writeString(dir.resolve("holidays-" + years + "y.json"), holidayJson(years), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing the corpus to " + dir);
+            System.exit(1);
+        }
+    }
+}
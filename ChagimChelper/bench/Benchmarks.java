@@ -0,0 +1,278 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Microbenchmarks for the hot paths of the program: parsing schedules and DTSTART/DTEND lines,
+ * finding conflicts, parsing HebCal API responses, and writing emails. The inputs come from
+ * {@link BenchCorpus}, at several sizes so that scaling curves can be charted, and from the real
+ * schedules in sample_schedules as baselines.
+ * <p>
+ * Each benchmark is run for a number of warmup iterations, whose results are discarded, and
+ * then for a number of measured iterations. Each iteration calls the benchmark repeatedly for a
+ * fixed amount of time, and the mean time per call and its standard deviation across iterations
+ * are reported. The results of each call are folded into {@link #sink}, so the JIT cannot
+ * eliminate them as dead code.
+ * <p>
+ * The benchmarks are compiled together with the main sources, and run from the repository root:
+ * <pre>
+ * javac -d out ChagimChelper/src/*.java ChagimChelper/bench/*.java
+ * java -cp out Benchmarks --csv results.csv
+ * </pre>
+ * This class cannot be constructed; it contains only static methods
+ */
+public class Benchmarks {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private Benchmarks() {}
+
+    /**
+     * The code being measured
+     */
+    @FunctionalInterface
+    private interface Op {
+        /**
+         * Run the code being measured once.
+         *
+         * @return  The result of the code, which is consumed so it is not optimized away
+         * @throws Exception  If the code throws
+         */
+        Object run() throws Exception;
+    }
+
+    /**
+     * A single benchmark
+     *
+     * @param name    The name of the benchmark
+     * @param params  A description of the input, e.g. "courses=4 years=1"
+     * @param op      The code being measured
+     */
+    private record Benchmark(String name, String params, Op op) {}
+
+    /**
+     * The result of running a benchmark
+     *
+     * @param benchmark  The benchmark
+     * @param meanNanos  The mean time per call, in nanoseconds
+     * @param errorNanos The standard deviation of the time per call across iterations
+     * @param calls      The total number of measured calls
+     */
+    private record Result(Benchmark benchmark, double meanNanos, double errorNanos, long calls) {}
+
+    /**
+     * The sizes the synthetic schedules are generated in, as {courses, events, years}
+     */
+    private static final int[][] SCHEDULE_SIZES = {{4, 0, 1}, {4, 4, 1}, {16, 16, 1}, {16, 16, 4}, {64, 64, 4}};
+    /**
+     * The numbers of years the synthetic holiday responses are generated for
+     */
+    private static final int[] HOLIDAY_YEARS = {1, 4, 16};
+
+    /**
+     * Where the results of every call are folded into, so they cannot be optimized away
+     */
+    private static volatile int sink;
+
+    /**
+     * Run the benchmarks and print the results.
+     *
+     * @param args  Any of the options "--filter regex" (only run benchmarks whose name and params
+     *              contain a match), "--warmup n" and "--iterations n" (the number of iterations,
+     *              3 and 5 by default), "--time ms" (the length of each iteration, 500 by default),
+     *              "--samples dir" (the directory of real schedules, sample_schedules by default)
+     *              and "--csv file" (also write the results to a CSV file, for charting)
+     */
+    public static void main(String[] args) {
+        Pattern filter = null;
+        int warmup = 3;
+        int iterations = 5;
+        long timeMillis = 500;
+        Path samples = Path.of("sample_schedules");
+        Path csv = null;
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                System.out.println("Missing a value for the option " + args[i]);
+                System.exit(1);
+            }
+            switch (args[i]) {
+                case "--filter" -> filter = Pattern.compile(args[++i]);
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                case "--iterations" -> iterations = Integer.parseInt(args[++i]);
+                case "--time" -> timeMillis = Long.parseLong(args[++i]);
+                case "--samples" -> samples = Path.of(args[++i]);
+                case "--csv" -> csv = Path.of(args[++i]);
+                default -> {
+                    System.out.println("Unknown option " + args[i]);
+                    System.exit(1);
+                }
+            }
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (Benchmark b : benchmarks(samples)) {
+            if (filter != null && !filter.matcher(b.name() + " " + b.params()).find()) {
+                continue;
+            }
+            Result r = run(b, warmup, iterations, timeMillis * 1_000_000);
+            results.add(r);
+            System.out.printf("%-24s %-36s %14.1f ns/op  \u00b1 %10.1f%n", b.name(), b.params(), r.meanNanos(), r.errorNanos());
+        }
+
+        if (csv != null) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(csv, StandardCharsets.UTF_8))) {
+                out.println("benchmark,params,ns_per_op,error_ns,calls");
+                for (Result r : results) {
+                    out.printf(Locale.ROOT, "%s,\"%s\",%.1f,%.1f,%d%n", r.benchmark().name(), r.benchmark().params(), r.meanNanos(), r.errorNanos(), r.calls());
+                }
+            } catch (IOException e) {
+                System.out.println("An error occurred while writing the results to " + csv);
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Build the list of benchmarks. All the inputs are generated or read here, so that only the
+     * code under test is measured.
+     *
+     * @param samples  The directory of real schedules
+     * @return         The benchmarks, in the order they should be run
+     */
+    private static List<Benchmark> benchmarks(Path samples) {
+        Map<String, String> schedules = new LinkedHashMap<>();
+        for (int[] size : SCHEDULE_SIZES) {
+            String params = "courses=" + size[0] + " events=" + size[1] + " years=" + size[2];
+            schedules.put(params, BenchCorpus.schedule(size[0], size[1], size[2], true, 1));
+            schedules.put(params + " tzid", BenchCorpus.schedule(size[0], size[1], size[2], false, 1));
+        }
+        schedules.putAll(sampleSchedules(samples));
+
+        List<Benchmark> rtn = new ArrayList<>();
+        for (var s : schedules.entrySet()) {
+            String text = s.getValue();
+            rtn.add(new Benchmark("Schedule.parse", s.getKey(), () -> new Schedule(text)));
+        }
+
+        String[] dtLines = {
+                "DTSTART:20230111T120000Z",
+                "DTEND;TZID=America/New_York:20230111T145900",
+                "DTSTART;VALUE=DATE:20230111",
+                "DTEND:20231211T184500Z",
+        };
+        rtn.add(new Benchmark("Schedule.parseDTString", "lines=" + dtLines.length, () -> {
+            int h = 0;
+            for (String line : dtLines) {
+                h += Schedule.parseDTString(line, true).hashCode();
+            }
+            return h;
+        }));
+
+        // The holidays are computed locally, so that the benchmarks never need the network
+        HolidayProvider holidays = new HolidayStore(new LocalHolidayProvider());
+        for (var s : schedules.entrySet()) {
+            Schedule schedule = new Schedule(s.getValue());
+            var scheduleHolidays = holidays.getHolidays(schedule.startDate.minusDays(7), schedule.endDate.plusDays(7));
+            var conflicts = ConflictEngine.findConflicts(schedule, scheduleHolidays);
+            rtn.add(new Benchmark("ConflictEngine", s.getKey(), () -> ConflictEngine.findConflicts(schedule, scheduleHolidays)));
+            rtn.add(new Benchmark("meetingsInInterval", s.getKey(), () -> {
+                int n = 0;
+                for (var h : scheduleHolidays) {
+                    n += schedule.meetingsInInterval(h.interval).size();
+                }
+                return n;
+            }));
+            rtn.add(new Benchmark("Main.writeEmails", s.getKey(), () -> {
+                StringWriter out = new StringWriter();
+                Main.writeEmails(conflicts, "Student", out);
+                return out.getBuffer().length();
+            }));
+        }
+
+        for (int years : HOLIDAY_YEARS) {
+            String json = BenchCorpus.holidayJson(years);
+            rtn.add(new Benchmark("HebCalAPI.parseResponse", "years=" + years, () -> HebCalAPI.parseResponse(new StringReader(json))));
+        }
+        return rtn;
+    }
+
+    /**
+     * Read the real schedules used as baselines.
+     *
+     * @param dir  The directory of .ics files
+     * @return     A map from a description of each file to its text, which is empty if the
+     *             directory does not exist
+     */
+    private static Map<String, String> sampleSchedules(Path dir) {
+        Map<String, String> rtn = new TreeMap<>();
+        if (!Files.isDirectory(dir)) {
+            System.out.println("No sample schedules found in " + dir.toAbsolutePath() + ", only synthetic inputs are used");
+            return rtn;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".ics")).toList()) {
+                rtn.put("sample=" + file.getFileName(), Files.readString(file, StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the sample schedules in " + dir);
+            System.exit(1);
+            throw new RuntimeException("System.exit() did not exit");
+        }
+        return rtn;
+    }
+
+    /**
+     * Run a single benchmark.
+     *
+     * @param b              The benchmark
+     * @param warmup         The number of warmup iterations
+     * @param iterations     The number of measured iterations
+     * @param iterationNanos The length of each iteration, in nanoseconds
+     * @return               The result
+     */
+    private static Result run(Benchmark b, int warmup, int iterations, long iterationNanos) {
+        for (int i = 0; i < warmup; i++) {
+            iteration(b.op(), iterationNanos);
+        }
+        double[] nanosPerCall = new double[iterations];
+        long calls = 0;
+        for (int i = 0; i < iterations; i++) {
+            long[] iteration = iteration(b.op(), iterationNanos);
+            nanosPerCall[i] = (double) iteration[0] / iteration[1];
+            calls += iteration[1];
+        }
+
+        double mean = Arrays.stream(nanosPerCall).average().orElse(Double.NaN);
+        double variance = Arrays.stream(nanosPerCall).map(x -> (x - mean) * (x - mean)).sum() / Math.max(1, iterations - 1);
+        return new Result(b, mean, Math.sqrt(variance), calls);
+    }
+
+    /**
+     * Call the code being measured repeatedly, until the iteration time has passed.
+     *
+     * @param op              The code being measured
+     * @param iterationNanos  The length of the iteration, in nanoseconds
+     * @return                The elapsed time in nanoseconds, and the number of calls
+     */
+    private static long[] iteration(Op op, long iterationNanos) {
+        int h = 0;
+        long calls = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        try {
+            do {
+                h += Objects.hashCode(op.run());
+                calls++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < iterationNanos);
+        } catch (Exception e) {
+            throw new RuntimeException("A benchmark threw an exception", e);
+        }
+        sink += h;
+        return new long[] {elapsed, calls};
+    }
+}
@@ -0,0 +1,423 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A search for alternatives to a schedule with too many holiday conflicts. Given the student's
+ * schedule and a catalog of alternative sections for each of their courses, it finds the
+ * combinations of sections which miss the fewest meetings to holidays, without any two sections
+ * meeting at the same time.
+ * <p>
+ * The search is a branch and bound over the courses: the sections of each course are tried in
+ * order of their conflicts (from a {@link CatalogIndex}), and a partial combination is abandoned
+ * as soon as its conflicts plus the fewest possible conflicts of the remaining courses cannot
+ * beat the results found so far. The first levels of the search are split into tasks which run
+ * in parallel on the common {@link ForkJoinPool}.
+ * <p>
+ * Only the schedule's weekly courses are searched; its other courses meet once or on an
+ * irregular pattern, and have no alternative sections.
+ * This class cannot be constructed; it contains only static methods
+ */
+public class AlternativeSearch {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private AlternativeSearch() {}
+
+    /**
+     * The number of levels of the search which are split into parallel tasks. Below this, each
+     * task searches its part of the tree on its own thread.
+     */
+    private static final int PARALLEL_DEPTH = 2;
+
+    /**
+     * A combination of sections found by the search
+     *
+     * @param sections        One section for each of the schedule's weekly courses, in the order
+     *                        the courses appear in the schedule
+     * @param missedMeetings  The number of meetings of the sections which conflict with holidays
+     */
+    public record Alternative(List<Schedule.WeeklyCourse> sections, int missedMeetings) {}
+
+    /**
+     * Find the combinations of sections with the fewest holiday conflicts.
+     *
+     * @param schedule      The student's schedule
+     * @param alternatives  The alternative sections for each course, keyed by the name of the
+     *                      course in the schedule. The course's own section is always included.
+     *                      The sections of a course are identified by their names, so a section
+     *                      with the same name as an earlier one of the same course is ignored;
+     *                      sections of different courses may share names (e.g. "001").
+     * @param holidays      Where to get the holidays from, e.g. {@link HolidayIndex#forLocation}
+     * @param limit         The largest number of combinations to return
+     * @return              The combinations with the fewest missed meetings, in order of missed
+     *                      meetings. Ties are broken by the order of the sections in the
+     *                      catalog (each course's own section first), starting with the courses
+     *                      with the fewest sections, so the results are the same on every run.
+     *                      Empty if no combination is free of time clashes, or the schedule has
+     *                      no weekly courses.
+     * @throws HolidayException  If the holidays cannot be retrieved
+     * @throws IllegalArgumentException  If the limit is not positive
+     */
+    public static List<Alternative> search(Schedule schedule, Map<String, ? extends Collection<Schedule.WeeklyCourse>> alternatives,
+                                           HolidayProvider holidays, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive, but was " + limit);
+        }
+        List<List<Schedule.WeeklyCourse>> options = new ArrayList<>();
+        for (Schedule.Course course : schedule.courses) {
+            if (course instanceof Schedule.WeeklyCourse wc) {
+                Map<String, Schedule.WeeklyCourse> sections = new LinkedHashMap<>();
+                sections.put(wc.name(), wc);
+                Collection<Schedule.WeeklyCourse> alts = alternatives.get(wc.name());
+                if (alts != null) {
+                    for (Schedule.WeeklyCourse alt : alts) {
+                        sections.putIfAbsent(alt.name(), alt);
+                    }
+                }
+                options.add(new ArrayList<>(sections.values()));
+            }
+        }
+        if (options.isEmpty()) {
+            return List.of();
+        }
+
+        Search search = new Search(options, holidays, limit);
+        ForkJoinPool.commonPool().invoke(search.new Task(0, new int[options.size()], 0));
+        return search.results();
+    }
+
+    /**
+     * Check if two sections ever meet at the same time.
+     *
+     * @param a  A section
+     * @param b  Another section
+     * @return   True if they meet on a common day at overlapping times, during overlapping dates
+     */
+    private static boolean clash(Schedule.WeeklyCourse a, Schedule.WeeklyCourse b) {
+        return (a.dayMask & b.dayMask) != 0
+                && a.startTime.isBefore(b.endTime) && b.startTime.isBefore(a.endTime)
+                && !a.startDate.isAfter(b.endDate) && !b.startDate.isAfter(a.endDate);
+    }
+
+    /**
+     * The state of one search. Every section is given an id, and the search works only with the
+     * ids, so the inner loop is over primitive arrays.
+     */
+    private static final class Search {
+        /**
+         * The sections, indexed by id. The ids of each course's sections are consecutive, in
+         * catalog order.
+         */
+        private final Schedule.WeeklyCourse[] sections;
+        /**
+         * The number of missed meetings of each section, indexed by id
+         */
+        private final int[] cost;
+        /**
+         * The ids of the sections each section clashes with, indexed by id
+         */
+        private final BitSet[] clashes;
+        /**
+         * The ids of the sections of the course at each level of the search, cheapest first
+         */
+        private final int[][] levels;
+        /**
+         * The position of each level's course in the schedule's list of weekly courses
+         */
+        private final int[] courseAt;
+        /**
+         * The fewest missed meetings of the courses at each level and below, so that
+         * {@code remaining[levels.length]} is zero
+         */
+        private final int[] remaining;
+        /**
+         * The largest number of results to keep
+         */
+        private final int limit;
+        /**
+         * The best results so far, as the ids of their sections by level, with the worst at the
+         * head
+         */
+        private final PriorityQueue<int[]> best;
+        /**
+         * The worst of the best results, once there are enough of them, or null; combinations
+         * which cannot do better than it are pruned
+         */
+        private volatile Cutoff cutoff;
+
+        /**
+         * The worst of the best results
+         *
+         * @param missed  Its missed meetings
+         * @param ids     The ids of its sections, by level
+         */
+        private record Cutoff(int missed, int[] ids) {}
+
+        /**
+         * Set up a search.
+         *
+         * @param options   The sections of each of the schedule's weekly courses, in order
+         * @param holidays  Where to get the holidays from
+         * @param limit     The largest number of results to keep
+         */
+        private Search(List<List<Schedule.WeeklyCourse>> options, HolidayProvider holidays, int limit) {
+            int n = 0;
+            for (var o : options) {
+                n += o.size();
+            }
+            this.sections = new Schedule.WeeklyCourse[n];
+            this.cost = new int[n];
+            int[] courseOf = new int[n];
+            int[][] byCourse = new int[options.size()][];
+            // The sections are indexed by their ids rather than their names, since sections of
+            // different courses may have the same name
+            List<Schedule.WeeklyCourse> byId = new ArrayList<>(n);
+            int id = 0;
+            for (int c = 0; c < options.size(); c++) {
+                byCourse[c] = new int[options.get(c).size()];
+                for (int i = 0; i < byCourse[c].length; i++, id++) {
+                    Schedule.WeeklyCourse section = options.get(c).get(i);
+                    this.sections[id] = section;
+                    byId.add(new Schedule.WeeklyCourse(Integer.toString(id), section.dayMask, section.startTime,
+                            section.endTime, section.startDate, section.endDate));
+                    courseOf[id] = c;
+                    byCourse[c][i] = id;
+                }
+            }
+            CatalogIndex index = CatalogIndex.build(byId, holidays);
+            for (id = 0; id < n; id++) {
+                for (Conflict conflict : index.conflicts(Integer.toString(id))) {
+                    this.cost[id] += conflict.courseMeetings().size();
+                }
+            }
+
+            this.clashes = new BitSet[n];
+            for (int a = 0; a < n; a++) {
+                this.clashes[a] = new BitSet(n);
+            }
+            for (int a = 0; a < n; a++) {
+                for (int b = a + 1; b < n; b++) {
+                    if (courseOf[a] != courseOf[b] && clash(this.sections[a], this.sections[b])) {
+                        this.clashes[a].set(b);
+                        this.clashes[b].set(a);
+                    }
+                }
+            }
+
+            // Courses with the fewest sections go first, so the tree branches as late as possible
+            Integer[] order = new Integer[options.size()];
+            for (int c = 0; c < order.length; c++) {
+                order[c] = c;
+            }
+            Arrays.sort(order, Comparator.comparingInt(c -> byCourse[c].length));
+            this.levels = new int[order.length][];
+            this.courseAt = new int[order.length];
+            this.remaining = new int[order.length + 1];
+            for (int level = 0; level < order.length; level++) {
+                this.courseAt[level] = order[level];
+                this.levels[level] = Arrays.stream(byCourse[order[level]]).boxed()
+                        .sorted(Comparator.comparingInt((Integer s) -> this.cost[s]).thenComparingInt(s -> s))
+                        .mapToInt(Integer::intValue).toArray();
+            }
+            for (int level = order.length - 1; level >= 0; level--) {
+                this.remaining[level] = this.remaining[level + 1] + this.cost[this.levels[level][0]];
+            }
+
+            this.limit = limit;
+            this.best = new PriorityQueue<>(Collections.reverseOrder(this::compare));
+        }
+
+        /**
+         * Compare two results: by missed meetings, and then by the ids of their sections in
+         * level order.
+         *
+         * @param a  A result, as the ids of its sections by level
+         * @param b  Another result
+         * @return   A negative number if a is better, positive if b is better, or zero if they
+         *           are the same
+         */
+        private int compare(int[] a, int[] b) {
+            int c = Integer.compare(total(a), total(b));
+            return (c != 0) ? c : Arrays.compare(a, b);
+        }
+
+        /**
+         * Returns the number of missed meetings of a combination
+         *
+         * @param ids  The ids of the sections
+         * @return     The total missed meetings
+         */
+        private int total(int[] ids) {
+            int rtn = 0;
+            for (int id : ids) {
+                rtn += this.cost[id];
+            }
+            return rtn;
+        }
+
+        /**
+         * Search below a partial combination, one level at a time.
+         *
+         * @param level   The level to choose a section for
+         * @param chosen  The ids of the sections chosen at the levels above
+         * @param missed  The missed meetings of the chosen sections
+         */
+        private void searchFrom(int level, int[] chosen, int missed) {
+            if (level == this.levels.length) {
+                offer(chosen);
+                return;
+            }
+            for (int id : this.levels[level]) {
+                int total = missed + this.cost[id];
+                if (pruned(chosen, level, id, total)) {
+                    return;
+                }
+                if (clashesWithAny(id, chosen, level)) {
+                    continue;
+                }
+                chosen[level] = id;
+                searchFrom(level + 1, chosen, total);
+            }
+        }
+
+        /**
+         * Check if no combination starting with the chosen sections and a section can be among
+         * the best results. Since each level's sections are sorted by cost and then by id, this
+         * also means that none of the sections after it at the same level can be.
+         *
+         * @param chosen  The ids of the sections chosen at the levels above
+         * @param level   The level of the section
+         * @param id      The id of the section
+         * @param missed  The missed meetings of the chosen sections and the section
+         * @return        True if the section and the rest of the level can be skipped
+         */
+        private boolean pruned(int[] chosen, int level, int id, int missed) {
+            Cutoff cutoff = this.cutoff;
+            if (cutoff == null) {
+                return false;
+            }
+            int fewest = missed + this.remaining[level + 1];
+            if (fewest != cutoff.missed()) {
+                return fewest > cutoff.missed();
+            }
+            // A tie with the worst result, which is only replaced by combinations ordered before it
+            for (int i = 0; i <= level; i++) {
+                int a = (i < level) ? chosen[i] : id;
+                if (a != cutoff.ids()[i]) {
+                    return a > cutoff.ids()[i];
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Check if a section clashes with any of the chosen sections.
+         *
+         * @param id      The id of the section
+         * @param chosen  The ids of the chosen sections
+         * @param count   The number of chosen sections
+         * @return        True if it clashes with at least one
+         */
+        private boolean clashesWithAny(int id, int[] chosen, int count) {
+            BitSet c = this.clashes[id];
+            for (int i = 0; i < count; i++) {
+                if (c.get(chosen[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Record a complete combination, if it is among the best so far.
+         *
+         * @param chosen  The ids of the sections, by level
+         */
+        private synchronized void offer(int[] chosen) {
+            this.best.add(chosen.clone());
+            if (this.best.size() > this.limit) {
+                this.best.poll();
+            }
+            if (this.best.size() == this.limit) {
+                this.cutoff = new Cutoff(total(this.best.peek()), this.best.peek());
+            }
+        }
+
+        /**
+         * Returns the best combinations found
+         *
+         * @return  The combinations, best first
+         */
+        private synchronized List<Alternative> results() {
+            List<int[]> sorted = new ArrayList<>(this.best);
+            sorted.sort(this::compare);
+            List<Alternative> rtn = new ArrayList<>(sorted.size());
+            for (int[] ids : sorted) {
+                Schedule.WeeklyCourse[] chosen = new Schedule.WeeklyCourse[ids.length];
+                for (int level = 0; level < ids.length; level++) {
+                    chosen[this.courseAt[level]] = this.sections[ids[level]];
+                }
+                rtn.add(new Alternative(List.of(chosen), total(ids)));
+            }
+            return rtn;
+        }
+
+        /**
+         * A part of the search, below a partial combination. Tasks above
+         * {@link #PARALLEL_DEPTH} fork a task for each section at their level.
+         */
+        private final class Task extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            /**
+             * The level to choose a section for
+             */
+            private final int level;
+            /**
+             * The ids of the sections chosen at the levels above
+             */
+            private final int[] chosen;
+            /**
+             * The missed meetings of the chosen sections
+             */
+            private final int missed;
+
+            /**
+             * Construct a task.
+             *
+             * @param level   The level to choose a section for
+             * @param chosen  The ids of the sections chosen at the levels above; the task owns
+             *                this array
+             * @param missed  The missed meetings of the chosen sections
+             */
+            private Task(int level, int[] chosen, int missed) {
+                this.level = level;
+                this.chosen = chosen;
+                this.missed = missed;
+            }
+
+            @Override
+            protected void compute() {
+                if (this.level >= PARALLEL_DEPTH || this.level == levels.length) {
+                    searchFrom(this.level, this.chosen, this.missed);
+                    return;
+                }
+                List<Task> tasks = new ArrayList<>();
+                for (int id : levels[this.level]) {
+                    int total = this.missed + cost[id];
+                    if (pruned(this.chosen, this.level, id, total)) {
+                        break;
+                    }
+                    if (clashesWithAny(id, this.chosen, this.level)) {
+                        continue;
+                    }
+                    int[] next = this.chosen.clone();
+                    next[this.level] = id;
+                    tasks.add(new Task(this.level + 1, next, total));
+                }
+                invokeAll(tasks);
+            }
+        }
+    }
+}
@@ -0,0 +1,351 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A class for analyzing many schedules in one run, for example for a whole student organization.
+ * Schedules are fetched and parsed concurrently, the schedules are grouped by the location of their
+ * campus, the holidays are fetched once per location for the union of its schedules' date ranges,
+ * and a conflict report is written for each student.
+ * This class cannot be constructed; it contains only static methods
+ */
+public class BatchRunner {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private BatchRunner() {}
+
+    /**
+     * The directory reports are written to if none is specified
+     */
+    private static final String DEFAULT_OUTPUT_DIR = "chagimChelperReports";
+
+    /**
+     * A source of schedules, and the location of their campus
+     *
+     * @param path      A directory of .ics files, or a text file of urls
+     * @param location  The location to find the holiday times for
+     */
+    private record Source(Path path, Location location) {}
+
+    /**
+     * A single schedule to analyze; exactly one of file and url is non-null
+     *
+     * @param name      The name of the student, used to name their report
+     * @param file      The path to the student's .ics file
+     * @param url       The url of the student's .ics file
+     * @param location  The location to find the holiday times for
+     */
+    private record Job(String name, Path file, URI url, Location location) {
+        private CompletableFuture<Schedule> parseAsync(Executor executor) {
+            if (file != null) {
+                return CompletableFuture.supplyAsync(() -> new Schedule(file), executor);
+            } else {
+                return Schedule.fetchAsync(url, executor);
+            }
+        }
+    }
+
+    /**
+     * Where the emails to professors are written, if anywhere. The emails are left unsigned.
+     *
+     * @param template        The email template
+     * @param perCourseFiles  True to write each student's emails to one file per course, in a
+     *                        directory named after the student next to their report
+     * @param zip             An archive to write every student's emails to, or null
+     */
+    private record EmailOutput(EmailTemplate template, boolean perCourseFiles, ZipOutputStream zip) {}
+
+    /**
+     * The result of parsing a single schedule; exactly one of schedule and error is non-null
+     *
+     * @param job       The job that was parsed
+     * @param schedule  The parsed schedule
+     * @param error     A message explaining why the schedule could not be parsed
+     */
+    private record Parsed(Job job, Schedule schedule, String error) {}
+
+    /**
+     * Run the batch mode.
+     *
+     * @param args  One or more sources, each either a directory of .ics files or a text file
+     *              with one url per line (optionally prefixed by a name and a colon, as in
+     *              "sample_schedules/Sample links.txt"), optionally followed by "--out" and the
+     *              directory to write reports to. Sources after "--zip" and a zip code are
+     *              analyzed with the holiday times at that zip code, rather than Penn's.
+     *              "--emails" also writes each student's emails to professors, one file per
+     *              course, and "--emails-zip" followed by a file name writes every student's
+     *              emails to a single zip archive.
+     */
+    public static void main(String[] args) {
+        List<Source> sources = new ArrayList<>();
+        Path outputDir = Path.of(DEFAULT_OUTPUT_DIR);
+        Location location = Location.PENN;
+        boolean emailFiles = false;
+        Path emailZip = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--out") && i + 1 < args.length) {
+                outputDir = Path.of(args[++i]);
+            } else if (args[i].equals("--emails")) {
+                emailFiles = true;
+            } else if (args[i].equals("--emails-zip") && i + 1 < args.length) {
+                emailZip = Path.of(args[++i]);
+            } else if (args[i].equals("--zip") && i + 1 < args.length) {
+                try {
+                    location = Location.zip(args[++i]);
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(1);
+                }
+            } else {
+                sources.add(new Source(Path.of(args[i]), location));
+            }
+        }
+        if (sources.isEmpty()) {
+            System.out.println("Usage: --batch [--zip <zip code>] <directory of .ics files | file of urls>... [--out <report directory>]"
+                    + " [--emails] [--emails-zip <zip file>]");
+            System.exit(1);
+        }
+
+        List<Job> jobs;
+        try {
+            jobs = collectJobs(sources);
+            Files.createDirectories(outputDir);
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the batch inputs: " + e.getMessage());
+            System.exit(1);
+            throw new RuntimeException("System.exit() did not exit");
+        }
+        if (jobs.isEmpty()) {
+            System.out.println("No schedules were found in the given sources.");
+            System.exit(1);
+        }
+
+        EmailTemplate template = Main.emailTemplate();
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try (ZipOutputStream zip = (emailZip == null) ? null
+                : new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(emailZip)))) {
+            int failures = run(jobs, outputDir, new EmailOutput(template, emailFiles, zip), pool);
+            System.out.println("Wrote " + (jobs.size() - failures) + " report(s) to " + outputDir.toAbsolutePath()
+                    + ((failures > 0) ? ("; " + failures + " schedule(s) could not be processed") : ""));
+        } catch (HolidayException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing the email archive '" + emailZip + "'");
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Parse all the schedules, fetch the holidays for each location, and write a report for
+     * each schedule. The holidays for different locations are fetched at the same time.
+     *
+     * @param jobs       The schedules to analyze
+     * @param outputDir  The directory to write reports to
+     * @param emails     Where to write the emails to professors
+     * @param pool       The pool to run the work on
+     * @return           The number of schedules which could not be processed
+     */
+    private static int run(List<Job> jobs, Path outputDir, EmailOutput emails, ForkJoinPool pool) {
+        List<Parsed> parsed = jobs.stream()
+                .map(job -> job.parseAsync(pool).handle((schedule, error) -> parsed(job, schedule, error)))
+                .toList()
+                .stream()
+                .map(CompletableFuture::join)
+                .toList();
+
+        // The union of the date ranges of the schedules at each location
+        Map<Location, LocalDate[]> ranges = new LinkedHashMap<>();
+        for (var p : parsed) {
+            if (p.schedule() == null) {
+                continue;
+            }
+            LocalDate[] range = ranges.computeIfAbsent(p.job().location(), l -> new LocalDate[2]);
+            if (range[0] == null || p.schedule().startDate.isBefore(range[0])) {
+                range[0] = p.schedule().startDate;
+            }
+            if (range[1] == null || p.schedule().endDate.isAfter(range[1])) {
+                range[1] = p.schedule().endDate;
+            }
+        }
+
+        Map<Location, CompletableFuture<List<HebCalAPI.HolidayInterval>>> fetches = new HashMap<>();
+        ranges.forEach((location, range) -> fetches.put(location, CompletableFuture.supplyAsync(
+                () -> HolidayIndex.forLocation(location).getHolidays(range[0].minusDays(7), range[1].plusDays(7)), pool)));
+        // Every schedule at a location is checked against the same holidays, so they are indexed once
+        Map<Location, HolidayBitmap> holidays = new HashMap<>();
+        for (var fetch : fetches.entrySet()) {
+            try {
+                holidays.put(fetch.getKey(), new HolidayBitmap(fetch.getValue().join()));
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof HolidayException he) {
+                    throw he;
+                }
+                throw e;
+            }
+        }
+
+        return parsed.stream()
+                .map(p -> CompletableFuture.supplyAsync(
+                        () -> writeReport(p, holidays.get(p.job().location()), outputDir, emails), pool))
+                .toList()
+                .stream()
+                .mapToInt(f -> f.join() ? 0 : 1)
+                .sum();
+    }
+
+    /**
+     * Combine the outcome of parsing a single schedule into a result.
+     *
+     * @param job       The schedule that was parsed
+     * @param schedule  The parsed schedule, or null if parsing failed
+     * @param error     The error that occurred while parsing, or null if parsing succeeded
+     * @return          The parsed schedule, or the reason it could not be parsed
+     */
+    private static Parsed parsed(Job job, Schedule schedule, Throwable error) {
+        if (error == null) {
+            return new Parsed(job, schedule, null);
+        }
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof ScheduleException) {
+            return new Parsed(job, null, error.getMessage());
+        }
+        return new Parsed(job, null, "An unexpected error occurred: " + error);
+    }
+
+    /**
+     * Find the conflicts for a single schedule, and write them to the schedule's report file,
+     * along with its emails if they were requested.
+     *
+     * @param parsed     The parsed schedule
+     * @param holidays   The index of the holidays covering the schedule's date range, or null if
+     *                   the schedule could not be parsed
+     * @param outputDir  The directory to write the report to
+     * @param emails     Where to write the emails to professors
+     * @return           True if the schedule was parsed and its report was written, false otherwise
+     */
+    private static boolean writeReport(Parsed parsed, HolidayBitmap holidays, Path outputDir, EmailOutput emails) {
+        Path reportPath = outputDir.resolve(parsed.job().name() + ".txt");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(reportPath, StandardCharsets.UTF_8))) {
+            if (parsed.schedule() == null) {
+                out.println(parsed.error());
+                System.out.println("Could not process the schedule for " + parsed.job().name() + ": " + parsed.error());
+                return false;
+            }
+            List<Conflict> conflicts = ConflictEngine.findConflicts(parsed.schedule(), holidays);
+            Main.printConflicts(conflicts, out);
+            writeEmails(parsed.job().name(), conflicts, outputDir, emails);
+            return true;
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing the report file '" + reportPath + "'");
+            return false;
+        }
+    }
+
+    /**
+     * Write a student's emails to professors, if they were requested. Each student's emails are
+     * written straight to their files or archive entries, so nothing is kept in memory between
+     * students.
+     *
+     * @param name       The name of the student
+     * @param conflicts  The conflicts in the student's schedule
+     * @param outputDir  The directory the reports are written to
+     * @param emails     Where to write the emails
+     * @throws IOException  If the emails cannot be written
+     */
+    private static void writeEmails(String name, List<Conflict> conflicts, Path outputDir, EmailOutput emails) throws IOException {
+        if (emails.perCourseFiles() && !conflicts.isEmpty()) {
+            emails.template().writeFiles(conflicts, "", outputDir.resolve(name));
+        }
+        if (emails.zip() != null) {
+            // Entries must be written to the archive one at a time
+            synchronized (emails.zip()) {
+                emails.template().writeZip(conflicts, "", emails.zip(), name + "/");
+            }
+        }
+    }
+
+    /**
+     * Collect the schedules to analyze from the given sources.
+     *
+     * @param sources  Directories of .ics files, or text files of urls
+     * @return         A list of jobs, each with a unique name
+     * @throws IOException  If a source cannot be read
+     */
+    private static List<Job> collectJobs(List<Source> sources) throws IOException {
+        List<Job> rtn = new ArrayList<>();
+        Set<String> usedNames = new HashSet<>();
+        for (Source s : sources) {
+            Path source = s.path();
+            if (Files.isDirectory(source)) {
+                List<Path> files;
+                try (var stream = Files.list(source)) {
+                    files = stream.filter(p -> p.getFileName().toString().toLowerCase().endsWith(".ics"))
+                            .sorted()
+                            .toList();
+                }
+                for (Path file : files) {
+                    String fileName = file.getFileName().toString();
+                    String name = uniqueName(fileName.substring(0, fileName.length() - 4), usedNames);
+                    rtn.add(new Job(name, file, null, s.location()));
+                }
+            } else {
+                Pattern linePattern = CachedRegex.LINK_FILE_LINE;
+                List<String> lines = Files.readAllLines(source, StandardCharsets.UTF_8);
+                for (int i = 0; i < lines.size(); i++) {
+                    Matcher m = linePattern.matcher(lines.get(i));
+                    if (!m.matches()) {
+                        continue;
+                    }
+                    URI url;
+                    try {
+                        url = URI.create(m.group(2));
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("Skipping line " + (i + 1) + " of '" + source + "': '" + m.group(2)
+                                + "' is not a valid url");
+                        continue;
+                    }
+                    String name = (m.group(1) != null && !m.group(1).isEmpty()) ? m.group(1)
+                            : (url.getHost() != null) ? url.getHost() : m.group(2);
+                    rtn.add(new Job(uniqueName(name, usedNames), null, url, s.location()));
+                }
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Turn a name into one which is safe to use as a file name, and which has not been used before.
+     *
+     * @param name       The name to clean
+     * @param usedNames  The names which have already been used; the returned name is added to it
+     * @return           A unique, file-name-safe version of the name
+     */
+    private static String uniqueName(String name, Set<String> usedNames) {
+        String cleaned = CachedRegex.UNSAFE_FILE_NAME_CHAR.matcher(name).replaceAll("_");
+        String rtn = cleaned;
+        int i = 1;
+        while (!usedNames.add(rtn)) {
+            rtn = cleaned + " (" + (++i) + ")";
+        }
+        return rtn;
+    }
+}
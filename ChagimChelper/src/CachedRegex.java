@@ -1,14 +1,58 @@
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 /**
  * A class for caching regex patterns, so we don't call Pattern.compile() multiple times
  * for the same pattern (for example, if we call a method multiple times that contains a pattern).
+ * <p>
+ * The fixed patterns used by the program are compiled once, eagerly, and kept in the constants
+ * below, so hot paths don't need to look them up at all. Other patterns are cached on demand,
+ * in a cache which is safe to use from multiple threads, and which evicts the least recently
+ * used pattern once it holds more than {@code chagimchelper.regex.cacheSize} patterns (256 by
+ * default). The cache's hits, misses and evictions are counted in {@link Metrics}.
  */
 public class CachedRegex {
     private CachedRegex() {}
 
+    /**
+     * The separators between the name, parameters and values of a .ics property, e.g. in
+     * "RRULE:FREQ=WEEKLY;BYDAY=MO,WE"
+     */
+    public static final Pattern ICS_PROPERTY_SEPARATORS = Pattern.compile("[:;]");
+    /**
+     * A comma, which separates the values in a .ics list, e.g. in "BYDAY=MO,WE"
+     */
+    public static final Pattern COMMA = Pattern.compile(",");
+    /**
+     * A holiday name ending in a roman numeral, e.g. "Pesach VII". The first group is the name
+     * without the numeral.
+     */
+    public static final Pattern ROMAN_NUMERAL_SUFFIX = Pattern.compile("(.*?)[ ]+[IVX]+", Pattern.CASE_INSENSITIVE);
+    /**
+     * Rosh Hashana followed by the Hebrew year, e.g. "Rosh Hashana 5783". The first group is the
+     * name without the year.
+     */
+    public static final Pattern ROSH_HASHANA_YEAR = Pattern.compile("(rosh hashana)[ ]+\\d{4}", Pattern.CASE_INSENSITIVE);
+    /**
+     * A line of a batch link file: a url, optionally preceded by a name and a colon. The first
+     * group is the name (or null), and the second is the url.
+     */
+    public static final Pattern LINK_FILE_LINE = Pattern.compile("\\s*(?:(.*?)\\s*:\\s*)?(https?://\\S+)\\s*");
+    /**
+     * A character which should not be used in a file name
+     */
+    public static final Pattern UNSAFE_FILE_NAME_CHAR = Pattern.compile("[^A-Za-z0-9._ -]");
+    /**
+     * A character which should not be used in a cache key
+     */
+    public static final Pattern UNSAFE_CACHE_KEY_CHAR = Pattern.compile("[^A-Za-z0-9.-]");
+    /**
+     * A five-digit US zip code
+     */
+    public static final Pattern ZIP_CODE = Pattern.compile("\\d{5}");
+
     /**
      * The key class used in our map of cached Regex patterns. Patterns are only considered
      * the same if they were created with the same string and the same flags.
@@ -26,7 +70,35 @@ public class CachedRegex {
         }
     }
 
-    private static final Map<PatternKey, Pattern> map = new HashMap<>();
+    /**
+     * A cached pattern, along with when it was last used
+     */
+    private static final class CacheEntry {
+        /**
+         * The compiled pattern
+         */
+        final Pattern pattern;
+        /**
+         * The value of {@link #clock} when the pattern was last used
+         */
+        volatile long lastUsed;
+
+        CacheEntry(Pattern pattern) {
+            this.pattern = pattern;
+            this.lastUsed = clock.incrementAndGet();
+        }
+    }
+
+    /**
+     * The maximum number of patterns kept in the cache
+     */
+    private static final int MAX_SIZE = Integer.getInteger("chagimchelper.regex.cacheSize", 256);
+
+    private static final Map<PatternKey, CacheEntry> map = new ConcurrentHashMap<>();
+    /**
+     * A counter which is incremented on every lookup, used to find the least recently used pattern
+     */
+    private static final AtomicLong clock = new AtomicLong();
 
     /**
      * Either compiles the given string to a Pattern, or returns an already-compiled cached version
@@ -37,7 +109,45 @@ public class CachedRegex {
      * @return               the compiled pattern
      */
     private static Pattern patternImpl(String patternString, Integer flags) {
-        return map.computeIfAbsent(new PatternKey(patternString, flags), PatternKey::toPattern);
+        PatternKey key = new PatternKey(patternString, flags);
+        CacheEntry entry = map.get(key);
+        if (entry != null) {
+            Metrics.count(Metrics.Counter.REGEX_CACHE_HITS, 1);
+            entry.lastUsed = clock.incrementAndGet();
+            return entry.pattern;
+        }
+
+        Metrics.count(Metrics.Counter.REGEX_CACHE_MISSES, 1);
+        entry = map.computeIfAbsent(key, k -> new CacheEntry(k.toPattern()));
+        if (map.size() > MAX_SIZE) {
+            evictLeastRecentlyUsed(key);
+        }
+        return entry.pattern;
+    }
+
+    /**
+     * Evict the least recently used patterns until the cache is within its size. This scans the
+     * whole cache, but only happens on a miss once the cache is full.
+     *
+     * @param keep  The key which was just added, which is never evicted
+     */
+    private static void evictLeastRecentlyUsed(PatternKey keep) {
+        while (map.size() > MAX_SIZE) {
+            PatternKey oldest = null;
+            long oldestUsed = Long.MAX_VALUE;
+            for (var e : map.entrySet()) {
+                if (!e.getKey().equals(keep) && e.getValue().lastUsed < oldestUsed) {
+                    oldest = e.getKey();
+                    oldestUsed = e.getValue().lastUsed;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            if (map.remove(oldest) != null) {
+                Metrics.count(Metrics.Counter.REGEX_CACHE_EVICTIONS, 1);
+            }
+        }
     }
 
     /**
@@ -0,0 +1,347 @@
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * An index of the holiday conflicts of every section in a course catalog, so students can see
+ * which sections to avoid before they build a schedule. Each section is a
+ * {@link Schedule.WeeklyCourse} whose name is the section id, e.g. "CIS-1200-001".
+ * <p>
+ * Sections are grouped by their meeting pattern (days, times and dates), since a catalog of
+ * thousands of sections has only a few hundred distinct patterns, and every section with the
+ * same pattern has the same conflicts. The conflicts of the patterns are found in parallel,
+ * against a {@link HolidayBitmap} of the holidays during the catalog. When the catalog changes,
+ * {@link #withChanges} builds a new index which reuses the conflicts of the patterns it already
+ * knows, so only new patterns are checked.
+ * <p>
+ * An index is immutable once built, so it can be shared between threads.
+ */
+public class CatalogIndex {
+    /**
+     * The meeting pattern of a section: the days and times it meets, and the dates it meets
+     * between. Sections with the same pattern have the same conflicts.
+     *
+     * @param dayMask    The days of the week the section meets (see {@link Schedule.WeeklyCourse#dayMask})
+     * @param startTime  The start time of the meetings
+     * @param endTime    The end time of the meetings
+     * @param startDate  The earliest date the section can meet on
+     * @param endDate    The latest date the section can meet on
+     */
+    private record Pattern(int dayMask, LocalTime startTime, LocalTime endTime, LocalDate startDate, LocalDate endDate) {
+        /**
+         * Returns the meeting pattern of a section
+         *
+         * @param section  The section
+         * @return         Its pattern
+         */
+        private static Pattern of(Schedule.WeeklyCourse section) {
+            return new Pattern(section.dayMask, section.startTime, section.endTime, section.startDate, section.endDate);
+        }
+
+        /**
+         * Returns the days and times of this pattern, without its dates
+         *
+         * @return  The key to look sections up by
+         */
+        private TimeSlot timeSlot() {
+            return new TimeSlot(this.dayMask, this.startTime, this.endTime);
+        }
+    }
+
+    /**
+     * The days and times a section meets, which students look sections up by
+     *
+     * @param dayMask    The days of the week (see {@link Schedule.WeeklyCourse#dayMask})
+     * @param startTime  The start time of the meetings
+     * @param endTime    The end time of the meetings
+     */
+    private record TimeSlot(int dayMask, LocalTime startTime, LocalTime endTime) {}
+
+    /**
+     * A holiday which a meeting pattern conflicts with
+     *
+     * @param holiday   The holiday
+     * @param meetings  The meetings of the pattern which overlap it, in order
+     */
+    private record Blocked(HebCalAPI.HolidayInterval holiday, List<Interval> meetings) {}
+
+    /**
+     * Where the holidays come from, so they can be requested again if the catalog grows
+     */
+    private final HolidayProvider provider;
+    /**
+     * The first date the holidays were requested for
+     */
+    private final LocalDate firstDate;
+    /**
+     * The last date the holidays were requested for
+     */
+    private final LocalDate lastDate;
+    /**
+     * The holidays during the catalog
+     */
+    private final HolidayBitmap holidays;
+    /**
+     * The sections, keyed by id, in the order they were given
+     */
+    private final Map<String, Schedule.WeeklyCourse> sections;
+    /**
+     * The conflicts of each meeting pattern in the catalog
+     */
+    private final Map<Pattern, List<Blocked>> conflicts;
+    /**
+     * The ids of the sections at each time slot, in catalog order
+     */
+    private final Map<TimeSlot, List<String>> byTimeSlot;
+    /**
+     * The ids of the sections which have no conflicts, in catalog order
+     */
+    private final List<String> conflictFree;
+
+    /**
+     * Construct an index, finding the conflicts of any patterns which are not already known.
+     *
+     * @param provider   Where the holidays came from
+     * @param firstDate  The first date the holidays were requested for
+     * @param lastDate   The last date the holidays were requested for
+     * @param holidays   The holidays during the catalog
+     * @param sections   The sections, keyed by id
+     * @param known      The conflicts of patterns which have already been checked against the
+     *                   same holidays
+     */
+    private CatalogIndex(HolidayProvider provider, LocalDate firstDate, LocalDate lastDate, HolidayBitmap holidays,
+                         Map<String, Schedule.WeeklyCourse> sections, Map<Pattern, List<Blocked>> known) {
+        this.provider = provider;
+        this.firstDate = firstDate;
+        this.lastDate = lastDate;
+        this.holidays = holidays;
+        this.sections = Collections.unmodifiableMap(sections);
+
+        Map<Pattern, List<Blocked>> found = new ConcurrentHashMap<>();
+        Set<Pattern> patterns = new HashSet<>();
+        for (Schedule.WeeklyCourse section : sections.values()) {
+            patterns.add(Pattern.of(section));
+        }
+        patterns.parallelStream().forEach(p -> {
+            List<Blocked> k = known.get(p);
+            found.put(p, (k != null) ? k : findConflicts(p, holidays));
+        });
+        this.conflicts = found;
+
+        Map<TimeSlot, List<String>> slots = new HashMap<>();
+        List<String> free = new ArrayList<>();
+        for (var entry : sections.entrySet()) {
+            Pattern p = Pattern.of(entry.getValue());
+            slots.computeIfAbsent(p.timeSlot(), s -> new ArrayList<>()).add(entry.getKey());
+            if (found.get(p).isEmpty()) {
+                free.add(entry.getKey());
+            }
+        }
+        this.byTimeSlot = slots;
+        this.conflictFree = Collections.unmodifiableList(free);
+    }
+
+    /**
+     * Build an index of the conflicts of a catalog of sections with the holidays during it.
+     *
+     * @param sections  The sections. Each is identified by its name; if several sections have the
+     *                  same name, the last one is used.
+     * @param provider  Where to get the holidays from, e.g. {@link HolidayIndex#forLocation}
+     * @return          The index
+     * @throws HolidayException  If the holidays cannot be retrieved
+     */
+    public static CatalogIndex build(Collection<Schedule.WeeklyCourse> sections, HolidayProvider provider) {
+        Map<String, Schedule.WeeklyCourse> byId = new LinkedHashMap<>();
+        for (Schedule.WeeklyCourse section : sections) {
+            byId.put(section.name(), section);
+        }
+        return build(byId, provider, Map.of());
+    }
+
+    /**
+     * Load the sections of a catalog from a .ics file with an event for each section. Events
+     * which do not recur weekly are skipped.
+     *
+     * @param icsFile  The path to the file
+     * @return         The sections, in the order they appear in the file
+     * @throws ScheduleException  If the file cannot be read or parsed
+     */
+    public static List<Schedule.WeeklyCourse> load(Path icsFile) {
+        List<Schedule.WeeklyCourse> rtn = new ArrayList<>();
+        for (Schedule.Course c : new Schedule(icsFile).courses) {
+            if (c instanceof Schedule.WeeklyCourse wc) {
+                rtn.add(wc);
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Build an index of a catalog, requesting the holidays for its dates.
+     *
+     * @param sections  The sections, keyed by id
+     * @param provider  Where to get the holidays from
+     * @param known     The conflicts of patterns already checked against the same holidays
+     * @return          The index
+     */
+    private static CatalogIndex build(Map<String, Schedule.WeeklyCourse> sections, HolidayProvider provider,
+                                      Map<Pattern, List<Blocked>> known) {
+        LocalDate first = null;
+        LocalDate last = null;
+        for (Schedule.WeeklyCourse section : sections.values()) {
+            first = (first == null || section.firstDate().isBefore(first)) ? section.firstDate() : first;
+            last = (last == null || section.lastDate().isAfter(last)) ? section.lastDate() : last;
+        }
+        if (first == null) {
+            return new CatalogIndex(provider, null, null, new HolidayBitmap(List.of()), sections, known);
+        }
+        first = first.minusDays(7);
+        last = last.plusDays(7);
+        HolidayBitmap holidays = new HolidayBitmap(provider.getHolidays(first, last));
+        return new CatalogIndex(provider, first, last, holidays, sections, known);
+    }
+
+    /**
+     * Build an index of a changed catalog. The conflicts of meeting patterns which this index
+     * has already checked are reused, so only new patterns are checked, unless the changed
+     * catalog extends past the dates this index has holidays for.
+     *
+     * @param changed  Sections which were added or changed. A section replaces the section with
+     *                 the same name, if there is one.
+     * @param removed  The ids of the sections which were removed
+     * @return         The index of the changed catalog; this index is unchanged
+     * @throws HolidayException  If the holidays for new dates cannot be retrieved
+     */
+    public CatalogIndex withChanges(Collection<Schedule.WeeklyCourse> changed, Collection<String> removed) {
+        Map<String, Schedule.WeeklyCourse> updated = new LinkedHashMap<>(this.sections);
+        updated.keySet().removeAll(removed);
+        boolean covered = this.firstDate != null;
+        for (Schedule.WeeklyCourse section : changed) {
+            updated.put(section.name(), section);
+            covered &= this.firstDate != null && !section.firstDate().minusDays(7).isBefore(this.firstDate)
+                    && !section.lastDate().plusDays(7).isAfter(this.lastDate);
+        }
+        if (!covered && !changed.isEmpty()) {
+            // The holidays may be different, so every pattern has to be checked again
+            return build(updated, this.provider, Map.of());
+        }
+        return new CatalogIndex(this.provider, this.firstDate, this.lastDate, this.holidays, updated, this.conflicts);
+    }
+
+    /**
+     * Returns the sections in the catalog
+     *
+     * @return  The sections, keyed by id, in catalog order
+     */
+    public Map<String, Schedule.WeeklyCourse> sections() {
+        return this.sections;
+    }
+
+    /**
+     * Get the conflicts of a section.
+     *
+     * @param sectionId  The id of the section, e.g. "CIS-1200-001"
+     * @return           A Conflict for each holiday the section has a meeting during, in order,
+     *                   or null if there is no such section
+     */
+    public List<Conflict> conflicts(String sectionId) {
+        Schedule.WeeklyCourse section = this.sections.get(sectionId);
+        if (section == null) {
+            return null;
+        }
+        List<Conflict> rtn = new ArrayList<>();
+        for (Blocked b : this.conflicts.get(Pattern.of(section))) {
+            List<Schedule.CourseMeeting> meetings = new ArrayList<>(b.meetings().size());
+            for (Interval m : b.meetings()) {
+                meetings.add(new Schedule.CourseMeeting(sectionId, m));
+            }
+            rtn.add(new Conflict(b.holiday(), meetings));
+        }
+        return rtn;
+    }
+
+    /**
+     * Check if a section has no conflicts.
+     *
+     * @param sectionId  The id of the section
+     * @return           True if the section has no meetings during any holiday, false if it
+     *                   does or if there is no such section
+     */
+    public boolean isConflictFree(String sectionId) {
+        Schedule.WeeklyCourse section = this.sections.get(sectionId);
+        return section != null && this.conflicts.get(Pattern.of(section)).isEmpty();
+    }
+
+    /**
+     * Returns the sections which have no conflicts
+     *
+     * @return  The ids of the sections, in catalog order
+     */
+    public List<String> conflictFreeSections() {
+        return this.conflictFree;
+    }
+
+    /**
+     * Find the sections which meet at a time slot.
+     *
+     * @param days              The days of the week the sections meet on, e.g. Monday and
+     *                          Wednesday
+     * @param startTime         The start time of the meetings
+     * @param endTime           The end time of the meetings
+     * @param conflictFreeOnly  True to include only the sections with no conflicts
+     * @return                  The ids of the sections which meet on exactly those days at
+     *                          exactly those times, in catalog order
+     */
+    public List<String> sectionsAt(Set<DayOfWeek> days, LocalTime startTime, LocalTime endTime, boolean conflictFreeOnly) {
+        int dayMask = 0;
+        for (DayOfWeek d : days) {
+            dayMask |= 1 << (d.getValue() - 1);
+        }
+        List<String> ids = this.byTimeSlot.getOrDefault(new TimeSlot(dayMask, startTime, endTime), List.of());
+        if (!conflictFreeOnly) {
+            return Collections.unmodifiableList(ids);
+        }
+        return ids.stream().filter(this::isConflictFree).collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * Find the holidays a meeting pattern conflicts with. Only the meetings on the holidays'
+     * dates are expanded, and each is checked against the bitmap of blocked minutes first.
+     *
+     * @param pattern   The meeting pattern
+     * @param holidays  The holidays
+     * @return          The holidays the pattern has meetings during, in the order of the
+     *                  bitmap's holidays
+     */
+    private static List<Blocked> findConflicts(Pattern pattern, HolidayBitmap holidays) {
+        Schedule.WeeklyCourse course = new Schedule.WeeklyCourse(null, pattern.dayMask(), pattern.startTime(),
+                pattern.endTime(), pattern.startDate(), pattern.endDate());
+        List<List<Interval>> found = new ArrayList<>(Collections.nCopies(holidays.holidays().size(), null));
+        for (var range : holidays.dates().entrySet()) {
+            course.meetingStream(range.getKey(), range.getValue()).forEach(meeting -> {
+                long start = meeting.start.toEpochSecond();
+                long end = meeting.end.toEpochSecond() + (meeting.end.getNano() > 0 ? 1 : 0);
+                if (holidays.mayOverlap(start, end)) {
+                    holidays.forEachOverlapping(meeting, start, end, h -> {
+                        if (found.get(h) == null) {
+                            found.set(h, new ArrayList<>());
+                        }
+                        found.get(h).add(meeting);
+                    });
+                }
+            });
+        }
+
+        List<Blocked> rtn = new ArrayList<>();
+        for (int h = 0; h < found.size(); h++) {
+            if (found.get(h) != null) {
+                rtn.add(new Blocked(holidays.holidays().get(h), List.copyOf(found.get(h))));
+            }
+        }
+        return List.copyOf(rtn);
+    }
+}
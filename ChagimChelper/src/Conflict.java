@@ -0,0 +1,9 @@
+import java.util.List;
+
+/**
+ * A record representing a holiday, and the course meetings which conflict with it
+ *
+ * @param holiday         The holiday
+ * @param courseMeetings  The course meetings which overlap with the holiday
+ */
+public record Conflict(HebCalAPI.HolidayInterval holiday, List<Schedule.CourseMeeting> courseMeetings) {}
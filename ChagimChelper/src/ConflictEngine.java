@@ -0,0 +1,207 @@
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * A class which finds the conflicts between a schedule and a list of holidays.
+ * Rather than checking every course on every day of every holiday, the course meetings on the
+ * holidays' dates are expanded once into a {@link MeetingTable} sorted by start time, and the
+ * meetings during each holiday are then found with a binary search.
+ * This class cannot be constructed; it contains only static methods
+ */
+public class ConflictEngine {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private ConflictEngine() {}
+
+    /**
+     * A course meeting which conflicts with a holiday, along with the information needed to sort it
+     *
+     * @param meeting   The course meeting
+     * @param courseId  The index of the course in the schedule's list of courses
+     * @param date      The date the meeting starts on, in Penn's timezone
+     */
+    private record FoundMeeting(Schedule.CourseMeeting meeting, int courseId, LocalDate date) {}
+
+    /**
+     * The order in which conflicting meetings are reported for a single holiday: by date, then
+     * in the order the courses appear in the schedule
+     */
+    private static final Comparator<FoundMeeting> REPORT_ORDER =
+            Comparator.comparing(FoundMeeting::date).thenComparingInt(FoundMeeting::courseId);
+
+    /**
+     * Find all the course meetings in the schedule which overlap with each of the given holidays.
+     * Only the meetings on the dates of the holidays are expanded.
+     *
+     * @param schedule  The schedule to check
+     * @param holidays  The holidays to check against
+     * @return          A list with a Conflict for each holiday that has at least one overlapping
+     *                  course meeting, in the same order as the given holidays
+     */
+    public static List<Conflict> findConflicts(Schedule schedule, List<HebCalAPI.HolidayInterval> holidays) {
+        List<Conflict> rtn = new ArrayList<>();
+        findConflicts(schedule, holidays, rtn::add);
+        return rtn;
+    }
+
+    /**
+     * Find the course meetings in the schedule which overlap with each of the given holidays,
+     * passing each holiday's conflict on as soon as it is found rather than collecting them.
+     *
+     * @param schedule  The schedule to check
+     * @param holidays  The holidays to check against
+     * @param action    Called with a Conflict for each holiday that has at least one overlapping
+     *                  course meeting, in the same order as the given holidays
+     */
+    public static void findConflicts(Schedule schedule, List<HebCalAPI.HolidayInterval> holidays, Consumer<? super Conflict> action) {
+        try (Metrics.Timer timer = Metrics.time(Metrics.Phase.CONFLICT_DETECTION)) {
+            timer.items(holidays.size());
+            Metrics.count(Metrics.Counter.HOLIDAYS, holidays.size());
+            if (holidays.isEmpty()) {
+                return;
+            }
+            findConflicts(MeetingTable.of(schedule, holidayDates(holidays)), holidays, conflict -> {
+                Metrics.count(Metrics.Counter.CONFLICTS, 1);
+                action.accept(conflict);
+            });
+        }
+    }
+
+    /**
+     * Find all the course meetings in the schedule which overlap with each of the holidays in an
+     * index. This gives the same result as {@link #findConflicts(Schedule, List)}, but each
+     * meeting is checked against the index's bitmap of blocked minutes instead of searching for
+     * the meetings during each holiday, so it is cheaper when many schedules are checked against
+     * the same holidays.
+     *
+     * @param schedule  The schedule to check
+     * @param index     The index of the holidays to check against
+     * @return          A list with a Conflict for each holiday that has at least one overlapping
+     *                  course meeting, in the same order as the index's holidays
+     */
+    public static List<Conflict> findConflicts(Schedule schedule, HolidayBitmap index) {
+        List<HebCalAPI.HolidayInterval> holidays = index.holidays();
+        try (Metrics.Timer timer = Metrics.time(Metrics.Phase.CONFLICT_DETECTION)) {
+            timer.items(holidays.size());
+            Metrics.count(Metrics.Counter.HOLIDAYS, holidays.size());
+            if (holidays.isEmpty()) {
+                return new ArrayList<>();
+            }
+
+            MeetingTable table = MeetingTable.of(schedule, index.dates());
+            List<List<FoundMeeting>> found = new ArrayList<>(Collections.nCopies(holidays.size(), null));
+            for (int row = 0; row < table.size(); row++) {
+                long start = table.start(row);
+                long end = table.end(row);
+                // Most meetings are ruled out by the bitmap alone, without rebuilding the meeting
+                if (!index.mayOverlap(start, end)) {
+                    continue;
+                }
+                FoundMeeting meeting = new FoundMeeting(table.meeting(row), table.courseId(row), table.date(row));
+                index.forEachOverlapping(meeting.meeting().meetingTime(), start, end, h -> {
+                    if (found.get(h) == null) {
+                        found.set(h, new ArrayList<>());
+                    }
+                    found.get(h).add(meeting);
+                });
+            }
+
+            List<Conflict> rtn = new ArrayList<>();
+            for (int h = 0; h < holidays.size(); h++) {
+                List<FoundMeeting> meetings = found.get(h);
+                if (meetings != null) {
+                    meetings.sort(REPORT_ORDER);
+                    rtn.add(new Conflict(holidays.get(h), meetings.stream().map(FoundMeeting::meeting).toList()));
+                }
+            }
+            Metrics.count(Metrics.Counter.CONFLICTS, rtn.size());
+            return rtn;
+        }
+    }
+
+    /**
+     * Find the dates the holidays take place on, merged into ranges.
+     *
+     * @param holidays  The holidays
+     * @return          A map from the first date to the last date (inclusive) of each range of
+     *                  dates with a holiday, in Penn's timezone
+     */
+    static TreeMap<LocalDate, LocalDate> holidayDates(List<HebCalAPI.HolidayInterval> holidays) {
+        TreeMap<LocalDate, LocalDate> ranges = new TreeMap<>();
+        for (var h : holidays) {
+            Interval interval = h.interval.canonical();
+            LocalDate first = interval.start.toLocalDate();
+            LocalDate last = interval.end.toLocalDate();
+            if (last.isBefore(first)) {
+                LocalDate swap = first;
+                first = last;
+                last = swap;
+            }
+            ranges.merge(first, last, (a, b) -> a.isAfter(b) ? a : b);
+        }
+
+        TreeMap<LocalDate, LocalDate> merged = new TreeMap<>();
+        Map.Entry<LocalDate, LocalDate> current = null;
+        for (var range : ranges.entrySet()) {
+            if (current != null && !range.getKey().isAfter(current.getValue().plusDays(1))) {
+                if (range.getValue().isAfter(current.getValue())) {
+                    current = Map.entry(current.getKey(), range.getValue());
+                }
+            } else {
+                if (current != null) {
+                    merged.put(current.getKey(), current.getValue());
+                }
+                current = range;
+            }
+        }
+        merged.put(current.getKey(), current.getValue());
+        return merged;
+    }
+
+    /**
+     * Find all the meetings in a table which overlap with each of the given holidays.
+     *
+     * @param table     The expanded meetings of a schedule
+     * @param holidays  The holidays to check against
+     * @return          A list with a Conflict for each holiday that has at least one overlapping
+     *                  course meeting, in the same order as the given holidays
+     */
+    public static List<Conflict> findConflicts(MeetingTable table, List<HebCalAPI.HolidayInterval> holidays) {
+        List<Conflict> rtn = new ArrayList<>();
+        findConflicts(table, holidays, rtn::add);
+        return rtn;
+    }
+
+    /**
+     * Find the meetings in a table which overlap with each of the given holidays, passing each
+     * holiday's conflict on as soon as it is found.
+     *
+     * @param table     The expanded meetings of a schedule
+     * @param holidays  The holidays to check against
+     * @param action    Called with a Conflict for each holiday that has at least one overlapping
+     *                  course meeting, in the same order as the given holidays
+     */
+    public static void findConflicts(MeetingTable table, List<HebCalAPI.HolidayInterval> holidays, Consumer<? super Conflict> action) {
+        for (var h : holidays) {
+            Interval interval = h.interval;
+            long end = interval.end.toEpochSecond() + (interval.end.getNano() > 0 ? 1 : 0);
+            List<FoundMeeting> found = null;
+            for (int row : table.rowsDuring(interval.start.toEpochSecond(), end)) {
+                // The rows are rounded to the second, so check against the exact meeting time
+                Schedule.CourseMeeting meeting = table.meeting(row);
+                if (interval.overlaps(meeting.meetingTime())) {
+                    if (found == null) {
+                        found = new ArrayList<>();
+                    }
+                    found.add(new FoundMeeting(meeting, table.courseId(row), table.date(row)));
+                }
+            }
+            if (found != null) {
+                found.sort(REPORT_ORDER);
+                action.accept(new Conflict(h, found.stream().map(FoundMeeting::meeting).toList()));
+            }
+        }
+    }
+}
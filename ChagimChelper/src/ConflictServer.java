@@ -0,0 +1,375 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A web service which finds the holiday conflicts in a schedule, and returns them as JSON.
+ * <ul>
+ *     <li>{@code POST /conflicts}, with the .ics file as the request body</li>
+ *     <li>{@code GET /conflicts?url=...}, with the url of the .ics file</li>
+ * </ul>
+ * Either request may also have a {@code zip} parameter, to find the holiday times at a campus
+ * other than Penn's. Each location's holidays are kept for as long as the server runs, so only
+ * the zip codes listed in {@code chagimchelper.server.zips} (comma-separated, default: none)
+ * are accepted. Request bodies larger than {@code chagimchelper.server.maxBodyBytes}
+ * (default: 8 MiB) are rejected.
+ * <p>
+ * Schedule urls are secret links, so the calendars they are fetched from are never stored (see
+ * {@link Schedule#fetchUncached}). They must be https urls on public hosts, and the server only
+ * follows redirects to such urls (see {@link HttpService#restrictToPublicHosts}), so requests
+ * cannot easily be used to reach the server's own network. This check is best-effort: the
+ * host is resolved again when the request is made, so a host whose DNS answer changes in
+ * between could still reach a private address. A server on a network with private services
+ * should also block them with a firewall.
+ * <p>
+ * Every request is handled on its own (virtual, if available) thread, and all requests for the
+ * same location share the same holiday store, so the holidays are only fetched once for each
+ * date range.
+ * This class cannot be constructed; it contains only static methods
+ */
+public class ConflictServer {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private ConflictServer() {}
+
+    /**
+     * The port the server listens on if none is specified
+     */
+    private static final int DEFAULT_PORT = 8080;
+    /**
+     * The largest request body accepted, in bytes
+     */
+    private static final long MAX_BODY_BYTES = Long.getLong("chagimchelper.server.maxBodyBytes", 8 << 20);
+    /**
+     * The zip codes holidays are found for, besides Penn's
+     */
+    private static final Set<String> ALLOWED_ZIPS = Arrays.stream(System.getProperty("chagimchelper.server.zips", "").split(","))
+            .map(String::strip)
+            .filter(zip -> !zip.isEmpty())
+            .collect(Collectors.toUnmodifiableSet());
+
+    /**
+     * Run the server until the process is stopped.
+     *
+     * @param args  Optionally, the port to listen on
+     */
+    public static void main(String[] args) {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        HttpServer server;
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            System.out.println("An error occurred while starting the server on port " + port);
+            System.exit(1);
+            throw new RuntimeException("System.exit() did not exit");
+        }
+        server.createContext("/conflicts", ConflictServer::handleConflicts);
+        server.setExecutor(newRequestExecutor());
+        HttpService.restrictToPublicHosts();
+        Metrics.registerMBean();
+        // Load Penn's holidays before taking requests, so the first analysis doesn't wait for them
+        HolidayIndex.shared();
+        server.start();
+        System.out.println("Chagim Chelper is listening on port " + port);
+    }
+
+    /**
+     * Create the executor requests are handled on: a new virtual thread per request if the JDK
+     * supports them, and a cached thread pool otherwise.
+     *
+     * @return  The executor
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Handle a request to the /conflicts endpoint.
+     *
+     * @param exchange  The request and response
+     * @throws IOException  If the response cannot be written
+     */
+    private static void handleConflicts(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Schedule schedule;
+            try {
+                schedule = readSchedule(exchange);
+            } catch (BodyTooLargeException e) {
+                sendError(exchange, 413, e.getMessage());
+                return;
+            } catch (ScheduleException e) {
+                if (tooLarge(e) != null) {
+                    sendError(exchange, 413, tooLarge(e).getMessage());
+                } else {
+                    sendError(exchange, 400, e.getMessage());
+                }
+                return;
+            }
+            if (schedule == null) {
+                sendError(exchange, 405, "Use POST with a .ics body, or GET with a url parameter");
+                return;
+            }
+
+            Location location;
+            try {
+                String zip = queryParameter(exchange.getRequestURI(), "zip");
+                location = (zip == null) ? Location.PENN : Location.zip(zip);
+                if (location != Location.PENN && !ALLOWED_ZIPS.contains(zip)) {
+                    throw new IllegalArgumentException("Holidays are only available for zip codes " + allowedZips());
+                }
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+
+            List<Conflict> conflicts;
+            try {
+                var holidays = HolidayIndex.forLocation(location).getHolidays(schedule.startDate.minusDays(7), schedule.endDate.plusDays(7));
+                conflicts = ConflictEngine.findConflicts(schedule, holidays);
+            } catch (HolidayException e) {
+                sendError(exchange, 502, e.getMessage());
+                return;
+            }
+
+            // The body is rendered before the headers are sent, so an error while rendering it
+            // can still be reported with an error status
+            StringWriter body = new StringWriter();
+            writeConflicts(schedule, conflicts, new JsonWriter(body));
+            sendJson(exchange, 200, body.toString());
+        } catch (RuntimeException e) {
+            System.out.println("An unexpected error occurred while handling " + exchange.getRequestURI() + ": " + e);
+            if (exchange.getResponseCode() == -1) {
+                sendError(exchange, 500, "An unexpected error occurred");
+            }
+        }
+    }
+
+    /**
+     * Read the schedule from a request.
+     *
+     * @param exchange  The request
+     * @return          The schedule, or null if the request has the wrong method or no url parameter
+     * @throws ScheduleException      If the schedule cannot be retrieved or parsed, or the url is
+     *                                not an https url on a public host
+     * @throws BodyTooLargeException  If the request body is known to be larger than {@link #MAX_BODY_BYTES}
+     */
+    private static Schedule readSchedule(HttpExchange exchange) throws BodyTooLargeException {
+        String method = exchange.getRequestMethod();
+        if (method.equals("POST")) {
+            String length = exchange.getRequestHeaders().getFirst("Content-Length");
+            try {
+                if (length != null && Long.parseLong(length.strip()) > MAX_BODY_BYTES) {
+                    throw new BodyTooLargeException();
+                }
+            } catch (NumberFormatException e) {
+                // The bounded stream still enforces the limit
+            }
+            InputStream body = new BoundedInputStream(exchange.getRequestBody(), MAX_BODY_BYTES);
+            return new Schedule(new InputStreamReader(body, StandardCharsets.UTF_8));
+        } else if (method.equals("GET")) {
+            String url;
+            try {
+                url = queryParameter(exchange.getRequestURI(), "url");
+            } catch (IllegalArgumentException e) {
+                throw new ScheduleException("The query string is not correctly encoded: " + e.getMessage(), e);
+            }
+            if (url == null) {
+                return null;
+            }
+            URI uri;
+            try {
+                uri = new URI(url);
+                HttpService.checkPublicUrl(uri);
+            } catch (URISyntaxException | IOException e) {
+                throw new ScheduleException("The schedule url must be a valid https url on a public host: " + e.getMessage(), e);
+            }
+            return Schedule.fetchUncached(uri);
+        }
+        return null;
+    }
+
+    /**
+     * List the zip codes holidays are found for, for an error message.
+     *
+     * @return  The zip codes, in order, starting with Penn's
+     */
+    private static String allowedZips() {
+        return Stream.concat(Stream.of("19104"), ALLOWED_ZIPS.stream().sorted())
+                .distinct()
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Find the reason a schedule could not be read because its request body was too large.
+     *
+     * @param e  The exception thrown while reading the schedule
+     * @return   The exception thrown by the request body, or null if the body was not too large
+     */
+    private static BodyTooLargeException tooLarge(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BodyTooLargeException tooLarge) {
+                return tooLarge;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The exception thrown when a request body is larger than {@link #MAX_BODY_BYTES}
+     */
+    private static class BodyTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        BodyTooLargeException() {
+            super("The request body is larger than the limit of " + MAX_BODY_BYTES + " bytes");
+        }
+    }
+
+    /**
+     * A stream which throws a {@link BodyTooLargeException} once more than a given number of
+     * bytes have been read from it
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+        /**
+         * The number of bytes which may still be read
+         */
+        private long remaining;
+
+        /**
+         * Construct a bounded stream.
+         *
+         * @param in     The stream to read from
+         * @param limit  The number of bytes which may be read
+         */
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1 && --this.remaining < 0) {
+                throw new BodyTooLargeException();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            // Read one byte past the limit, so a body of exactly the limit is accepted
+            int n = super.read(b, off, (int) Math.min(len, this.remaining + 1));
+            if (n > 0) {
+                this.remaining -= n;
+                if (this.remaining < 0) {
+                    throw new BodyTooLargeException();
+                }
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Get the value of a query parameter.
+     *
+     * @param uri   The request uri
+     * @param name  The name of the parameter
+     * @return      The decoded value of the parameter, or null if it is not present
+     * @throws IllegalArgumentException  If the query string has an invalid escape sequence
+     */
+    private static String queryParameter(URI uri, String name) {
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write a schedule's conflicts as a JSON object.
+     *
+     * @param schedule   The schedule
+     * @param conflicts  The conflicts found in the schedule
+     * @param json       The writer to write to
+     * @throws IOException  If the underlying writer throws
+     */
+    static void writeConflicts(Schedule schedule, List<Conflict> conflicts, JsonWriter json) throws IOException {
+        DateTimeFormatter dtf = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+        json.beginObject();
+        json.name("startDate").value(schedule.startDate.toString());
+        json.name("endDate").value(schedule.endDate.toString());
+        json.name("conflicts").beginArray();
+        for (var c : conflicts) {
+            json.beginObject();
+            json.name("holiday").value(c.holiday().eventName);
+            json.name("holidayStart").value(dtf.format(c.holiday().interval.start));
+            json.name("holidayEnd").value(dtf.format(c.holiday().interval.end));
+            json.name("meetings").beginArray();
+            for (var m : c.courseMeetings()) {
+                json.beginObject();
+                json.name("course").value(m.courseName());
+                json.name("start").value(dtf.format(m.meetingTime().start));
+                json.name("end").value(dtf.format(m.meetingTime().end));
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    /**
+     * Send an error response, with the message in a JSON object.
+     *
+     * @param exchange  The request and response
+     * @param status    The status code
+     * @param message   A message describing the error
+     * @throws IOException  If the response cannot be written
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringWriter body = new StringWriter();
+        new JsonWriter(body).beginObject().name("error").value(message).endObject();
+        sendJson(exchange, status, body.toString());
+    }
+
+    /**
+     * Send a response with a JSON body.
+     *
+     * @param exchange  The request and response
+     * @param status    The status code
+     * @param json      The body
+     * @throws IOException  If the response cannot be written
+     */
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A compiled template for the emails sent to professors, with one email per course with
+ * conflicts. The template is parsed once into a list of literal text and placeholders, and
+ * emails are rendered by writing each part straight to the output, without building any
+ * intermediate strings, so they can be streamed to a file, to one file per course, or to a zip
+ * archive.
+ * <p>
+ * A template is plain text, with the following placeholders:
+ * <ul>
+ *     <li>{@code ${course}}: the name of the course</li>
+ *     <li>{@code ${classes}}: "class" if only one class will be missed, and "classes" otherwise</li>
+ *     <li>{@code ${missedClasses}}: a line for each class that will be missed, e.g.
+ *         "I will be missing class on 09/25 for the holiday of Yom Kippur."</li>
+ *     <li>{@code ${signature}}: "Best," and the student's name, or nothing if there is no name</li>
+ * </ul>
+ */
+public class EmailTemplate {
+    /**
+     * The placeholders a template can contain
+     */
+    private enum Placeholder {
+        COURSE("course"), CLASSES("classes"), MISSED_CLASSES("missedClasses"), SIGNATURE("signature");
+
+        /**
+         * The name of the placeholder, as written in a template
+         */
+        private final String name;
+
+        Placeholder(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * The text of the default template
+     */
+    private static final String DEFAULT_TEXT = """
+
+
+             -------${course}-------
+            \s
+            Dear Professor, \n
+            I hope this email finds you well. I am enrolled to take ${course} with you this semester.
+
+            I wanted to reach out to you now to let you know that I am an observant Jew and will have to miss some ${classes} due to conflicts with Jewish holidays.
+
+            ${missedClasses}
+            I'm looking forward to taking your class, and hope these absences will not be too much of an inconvenience.
+
+            Thank you so much for your understanding!
+            ${signature}""";
+
+    /**
+     * The default template
+     */
+    public static final EmailTemplate DEFAULT = compile(DEFAULT_TEXT);
+
+    /**
+     * The format of the dates of missed classes, e.g. "09/25"
+     */
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM/dd");
+
+    /**
+     * The parts of the template, in order: each is either a String of literal text, or a
+     * Placeholder
+     */
+    private final Object[] parts;
+
+    /**
+     * Construct a template from its parts.
+     *
+     * @param parts  The parts of the template
+     */
+    private EmailTemplate(Object[] parts) {
+        this.parts = parts;
+    }
+
+    /**
+     * Compile a template.
+     *
+     * @param text  The text of the template
+     * @return      The compiled template
+     * @throws IllegalArgumentException  If the template contains an unknown placeholder
+     */
+    public static EmailTemplate compile(String text) {
+        List<Object> parts = new ArrayList<>();
+        int literalStart = 0;
+        int i = text.indexOf("${");
+        while (i >= 0) {
+            int end = text.indexOf('}', i);
+            if (end < 0) {
+                break;
+            }
+            String name = text.substring(i + 2, end);
+            Placeholder placeholder = Arrays.stream(Placeholder.values())
+                    .filter(p -> p.name.equals(name))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown placeholder in email template: '${" + name + "}'"));
+            if (i > literalStart) {
+                parts.add(text.substring(literalStart, i));
+            }
+            parts.add(placeholder);
+            literalStart = end + 1;
+            i = text.indexOf("${", literalStart);
+        }
+        if (literalStart < text.length()) {
+            parts.add(text.substring(literalStart));
+        }
+        return new EmailTemplate(parts.toArray());
+    }
+
+    /**
+     * Load and compile a template from a file.
+     *
+     * @param path  The path to the template, which is assumed to be UTF-8
+     * @return      The compiled template
+     * @throws IOException  If the file cannot be read
+     * @throws IllegalArgumentException  If the template contains an unknown placeholder
+     */
+    public static EmailTemplate load(Path path) throws IOException {
+        return compile(Files.readString(path, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A class which will be missed
+     *
+     * @param meeting  The course meeting
+     * @param holiday  The name of the holiday it conflicts with
+     */
+    private record MissedClass(Schedule.CourseMeeting meeting, String holiday) {}
+
+    /**
+     * Group the conflicting meetings by course.
+     *
+     * @param conflicts  The conflicts
+     * @return           A map from each course name to its missed classes, in order
+     */
+    private static Map<String, List<MissedClass>> missedClassesPerCourse(List<Conflict> conflicts) {
+        // Filled with get() and put() rather than computeIfAbsent(), which orders colliding keys
+        // differently, so the emails come out in the same order as they always have
+        Map<String, List<MissedClass>> rtn = new HashMap<>();
+        for (var conf : conflicts) {
+            for (var m : conf.courseMeetings()) {
+                List<MissedClass> missed = rtn.get(m.courseName());
+                if (missed == null) {
+                    missed = new ArrayList<>();
+                    rtn.put(m.courseName(), missed);
+                }
+                missed.add(new MissedClass(m, conf.holiday().eventName));
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Write an email for each course with conflicts, one after the other.
+     *
+     * @param conflicts  The conflicts to write emails for
+     * @param name       The name to sign the emails with, or an empty string to leave them unsigned
+     * @param out        The writer to write the emails to, which should be buffered
+     * @throws IOException  If the writer throws
+     */
+    public void write(List<Conflict> conflicts, String name, Writer out) throws IOException {
+        for (var course : missedClassesPerCourse(conflicts).entrySet()) {
+            render(course.getKey(), course.getValue(), name, out);
+        }
+    }
+
+    /**
+     * Write an email for each course with conflicts to its own file in a directory, named
+     * after the course. Courses whose names would give the same file name are numbered.
+     *
+     * @param conflicts  The conflicts to write emails for
+     * @param name       The name to sign the emails with, or an empty string to leave them unsigned
+     * @param directory  The directory to write the files to, which is created if necessary
+     * @return           The number of files written
+     * @throws IOException  If the directory or a file cannot be written
+     */
+    public int writeFiles(List<Conflict> conflicts, String name, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        int count = 0;
+        Set<String> usedNames = new HashSet<>();
+        for (var course : missedClassesPerCourse(conflicts).entrySet()) {
+            Path path = directory.resolve(fileName(course.getKey(), usedNames));
+            try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                render(course.getKey(), course.getValue(), name, out);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Write an email for each course with conflicts to its own entry in a zip archive, named
+     * after the course. Courses whose names would give the same entry name are numbered. The
+     * entries are written one at a time, so only one email is held in memory at once.
+     *
+     * @param conflicts  The conflicts to write emails for
+     * @param name       The name to sign the emails with, or an empty string to leave them unsigned
+     * @param zip        The archive to write to
+     * @param prefix     A prefix for the entry names (e.g. a directory for the student), or an
+     *                   empty string
+     * @return           The number of entries written
+     * @throws IOException  If the archive cannot be written
+     */
+    public int writeZip(List<Conflict> conflicts, String name, ZipOutputStream zip, String prefix) throws IOException {
+        // The writer is flushed, but not closed, after each entry, since closing it would close the archive
+        Writer out = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+        int count = 0;
+        Set<String> usedNames = new HashSet<>();
+        for (var course : missedClassesPerCourse(conflicts).entrySet()) {
+            zip.putNextEntry(new ZipEntry(prefix + fileName(course.getKey(), usedNames)));
+            render(course.getKey(), course.getValue(), name, out);
+            out.flush();
+            zip.closeEntry();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Turn a course name into the name of its email file, which has not been used before.
+     *
+     * @param course     The name of the course
+     * @param usedNames  The file names which have already been used; the returned name is added to it
+     * @return           A unique file name which is safe to use
+     */
+    private static String fileName(String course, Set<String> usedNames) {
+        String cleaned = CachedRegex.UNSAFE_FILE_NAME_CHAR.matcher(course).replaceAll("_");
+        String rtn = cleaned + ".txt";
+        int i = 1;
+        while (!usedNames.add(rtn)) {
+            rtn = cleaned + " (" + (++i) + ").txt";
+        }
+        return rtn;
+    }
+
+    /**
+     * Write the email for a single course.
+     *
+     * @param course         The name of the course
+     * @param missedClasses  The classes of the course which will be missed
+     * @param name           The name to sign the email with, or an empty string to leave it unsigned
+     * @param out            The writer to write the email to
+     * @throws IOException  If the writer throws
+     */
+    private void render(String course, List<MissedClass> missedClasses, String name, Writer out) throws IOException {
+        for (Object part : this.parts) {
+            if (part instanceof String literal) {
+                out.write(literal);
+                continue;
+            }
+            switch ((Placeholder) part) {
+                case COURSE -> out.write(course);
+                case CLASSES -> out.write((missedClasses.size() > 1) ? "classes" : "class");
+                case MISSED_CLASSES -> {
+                    for (MissedClass m : missedClasses) {
+                        out.write("I will be missing class on ");
+                        writeDates(m.meeting().meetingTime(), out);
+                        out.write(" for the holiday of ");
+                        out.write(m.holiday());
+                        out.write(".\n");
+                    }
+                }
+                case SIGNATURE -> {
+                    if (name.length() > 0) {
+                        out.write("\nBest, \n");
+                        out.write(name);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the date of a class, e.g. "04/30", or "04/30 & 05/01" if it spans two dates.
+     *
+     * @param interval  The time of the class
+     * @param out       The writer to write to
+     * @throws IOException  If the writer throws
+     */
+    private static void writeDates(Interval interval, Writer out) throws IOException {
+        DATE_FORMAT.formatTo(interval.start, out);
+        if (interval.start.getMonthValue() != interval.end.getMonthValue()
+                || interval.start.getDayOfMonth() != interval.end.getDayOfMonth()) {
+            // Realistically, this shouldn't occur for actual classes (they don't go across multiple days)
+            out.write(" & ");
+            DATE_FORMAT.formatTo(interval.end, out);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A non-interactive mode for running the program from scripts and pipelines. The schedules to
+ * check are given as arguments or on standard input, and every conflicting course meeting is
+ * written to standard output as a line of newline-delimited JSON or a CSV row as soon as its
+ * holiday has been checked, so other tools can start consuming the conflicts before the whole
+ * input has been processed.
+ * <p>
+ * Only the records are written to standard output. Errors about schedules which could not be
+ * checked, and any warnings printed while parsing them, are written to standard error, and the
+ * exit status is 1 if any schedule could not be checked.
+ * This class cannot be constructed; it contains only static methods
+ */
+public class HeadlessRunner {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private HeadlessRunner() {}
+
+    /**
+     * The format the records are written in
+     */
+    private enum Format {
+        /**
+         * One JSON object per line
+         */
+        NDJSON,
+        /**
+         * Comma-separated values with a header row, as described in RFC 4180
+         */
+        CSV
+    }
+
+    /**
+     * The fields of each record: the CSV header, and the names in the JSON objects
+     */
+    private static final String[] FIELDS = {"schedule", "course", "holiday", "holidayStart", "holidayEnd", "start", "end"};
+
+    /**
+     * Run the headless mode.
+     *
+     * @param args  The schedules to check, each a path to a .ics file, a url, or "-" to read
+     *              the .ics text from standard input. If none are given, the paths or urls are
+     *              read from standard input, one per line. They may be preceded by "--format"
+     *              and "ndjson" (the default) or "csv", and by "--zip" and a zip code to use the
+     *              holiday times at that zip code rather than Penn's.
+     */
+    public static void main(String[] args) {
+        Format format = Format.NDJSON;
+        Location location = Location.PENN;
+        List<String> sources = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--format") && i + 1 < args.length) {
+                switch (args[++i]) {
+                    case "ndjson" -> format = Format.NDJSON;
+                    case "csv" -> format = Format.CSV;
+                    default -> {
+                        System.err.println("Unknown format '" + args[i] + "'; use 'ndjson' or 'csv'");
+                        System.exit(1);
+                    }
+                }
+            } else if (args[i].equals("--zip") && i + 1 < args.length) {
+                try {
+                    location = Location.zip(args[++i]);
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    System.exit(1);
+                }
+            } else if (args[i].startsWith("--")) {
+                System.err.println("Usage: --headless [--format ndjson|csv] [--zip <zip code>] [<.ics file | url | ->...]");
+                System.exit(1);
+            } else {
+                sources.add(args[i]);
+            }
+        }
+
+        // Standard output carries only the records, so anything else printed goes to standard error
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8));
+        System.setOut(System.err);
+
+        boolean failed = false;
+        try {
+            RecordWriter records = new RecordWriter(format, out);
+            if (sources.isEmpty()) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    if (!line.isBlank()) {
+                        failed |= !check(line.strip(), location, records);
+                    }
+                }
+            } else {
+                for (String source : sources) {
+                    failed |= !check(source, location, records);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Usually because the program reading the records has exited
+            System.err.println("An error occurred while writing the conflicts: " + e.getMessage());
+            System.exit(1);
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Check a schedule for conflicts, and write a record for each conflicting course meeting.
+     *
+     * @param source    The path or url of the schedule, or "-" for standard input
+     * @param location  The location to find the holiday times for
+     * @param records   The writer to write the records to
+     * @return          True if the schedule was checked, or false if it could not be (the
+     *                  reason is printed to standard error)
+     * @throws IOException  If the records cannot be written
+     */
+    private static boolean check(String source, Location location, RecordWriter records) throws IOException {
+        try {
+            Schedule schedule = readSchedule(source);
+            var holidays = HolidayIndex.forLocation(location).getHolidays(schedule.startDate.minusDays(7), schedule.endDate.plusDays(7));
+            ConflictEngine.findConflicts(schedule, holidays, conflict -> {
+                try {
+                    records.write(source, conflict);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return true;
+        } catch (ScheduleException | HolidayException | IllegalArgumentException e) {
+            System.err.println(source + ": " + e.getMessage());
+            return false;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Read and parse a schedule.
+     *
+     * @param source  The path or url of the schedule, or "-" to read it from standard input
+     * @return        The schedule
+     * @throws ScheduleException  If the schedule cannot be retrieved or parsed
+     * @throws IllegalArgumentException  If the url is malformed
+     */
+    private static Schedule readSchedule(String source) {
+        if (source.equals("-")) {
+            return new Schedule(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        } else if (source.startsWith("http")) {
+            return new Schedule(URI.create(source));
+        } else {
+            return new Schedule(Path.of(source));
+        }
+    }
+
+    /**
+     * Writes the records of conflicting course meetings in a format, flushing after each
+     * holiday's conflicts so that they reach the consumer right away
+     */
+    private static final class RecordWriter {
+        /**
+         * The format of the records
+         */
+        private final Format format;
+        /**
+         * The writer the records are written to
+         */
+        private final Writer out;
+        /**
+         * The writer used for JSON records, or null for CSV
+         */
+        private final JsonWriter json;
+
+        /**
+         * Construct a record writer, and write the CSV header if the format is CSV.
+         *
+         * @param format  The format of the records
+         * @param out     The writer to write the records to
+         * @throws IOException  If the header cannot be written
+         */
+        private RecordWriter(Format format, Writer out) throws IOException {
+            this.format = format;
+            this.out = out;
+            this.json = (format == Format.NDJSON) ? new JsonWriter(out) : null;
+            if (format == Format.CSV) {
+                writeRow(FIELDS);
+                out.flush();
+            }
+        }
+
+        /**
+         * Write a record for each of the course meetings in a conflict.
+         *
+         * @param source    The path or url of the schedule the conflict was found in
+         * @param conflict  The conflict
+         * @throws IOException  If the underlying writer throws
+         */
+        private void write(String source, Conflict conflict) throws IOException {
+            DateTimeFormatter dtf = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+            HebCalAPI.HolidayInterval holiday = conflict.holiday();
+            String holidayStart = dtf.format(holiday.interval.start);
+            String holidayEnd = dtf.format(holiday.interval.end);
+            for (var m : conflict.courseMeetings()) {
+                String[] values = {source, m.courseName(), holiday.eventName, holidayStart, holidayEnd,
+                        dtf.format(m.meetingTime().start), dtf.format(m.meetingTime().end)};
+                if (this.format == Format.CSV) {
+                    writeRow(values);
+                } else {
+                    this.json.beginObject();
+                    for (int i = 0; i < FIELDS.length; i++) {
+                        this.json.name(FIELDS[i]).value(values[i]);
+                    }
+                    this.json.endObject();
+                    this.out.write('\n');
+                }
+            }
+            this.out.flush();
+        }
+
+        /**
+         * Write a CSV row, quoting the values which contain commas, quotes or line breaks.
+         *
+         * @param values  The values of the row
+         * @throws IOException  If the underlying writer throws
+         */
+        private void writeRow(String[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    this.out.write(',');
+                }
+                String v = values[i];
+                if (v.indexOf(',') >= 0 || v.indexOf('"') >= 0 || v.indexOf('\n') >= 0 || v.indexOf('\r') >= 0) {
+                    this.out.write('"');
+                    this.out.write(v.replace("\"", "\"\""));
+                    this.out.write('"');
+                } else {
+                    this.out.write(v);
+                }
+            }
+            this.out.write("\r\n");
+        }
+    }
+}
@@ -1,19 +1,29 @@
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * A class representing the API of hebcal.com, which is used to retrieve holiday information
+ * A class representing the API of hebcal.com, which is used to retrieve holiday information.
+ * Identical requests which are made at the same time share a single API call, and calls are
+ * rate limited to stay within HebCal's usage policy. The rate limit can be configured with the
+ * system properties {@code chagimchelper.hebcal.requestsPerSecond} (default: 5) and
+ * {@code chagimchelper.hebcal.burst} (default: 10).
  * This class cannot be constructed; it contains only static methods
  */
 public class HebCalAPI {
@@ -23,159 +33,248 @@ public class HebCalAPI {
     private HebCalAPI() {}
 
     /**
-     * Get all the holidays between the given start and end dates
+     * The host of the api
+     */
+    private static final String HOST = "www.hebcal.com";
+
+    static {
+        HttpService.setRateLimit(HOST,
+                Double.parseDouble(System.getProperty("chagimchelper.hebcal.requestsPerSecond", "5")),
+                Integer.getInteger("chagimchelper.hebcal.burst", 10));
+    }
+
+    /**
+     * The key of a request to the api
+     *
+     * @param location   The location of the request
+     * @param startDate  The starting date of the request
+     * @param endDate    The ending date of the request
+     */
+    private record RequestKey(Location location, LocalDate startDate, LocalDate endDate) {}
+
+    /**
+     * The requests which are currently being made, so that identical requests can wait for
+     * their result instead of making the same request again
+     */
+    private static final Map<RequestKey, CompletableFuture<List<HolidayInterval>>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Get all the holidays between the given start and end dates, at Penn's location.
      *
      * @param startDate  The starting date, assumed to be in Penn's timezone
      * @param endDate    The ending date, assumed to be in Penn's timezone
-     * @return           A list of holidays in the give time period
+     * @return           A list of holidays in the given time period
+     * @throws HolidayException  If the holidays cannot be retrieved or parsed
      */
     public static List<HolidayInterval> getHolidays(LocalDate startDate, LocalDate endDate) {
-        String url = getURL(startDate, endDate);
-        String response = getResponse(url);
-        List<HebCalAPI.HolidayInterval> parsedReponse;
+        return getHolidays(Location.PENN, startDate, endDate);
+    }
+
+    /**
+     * Get all the holidays between the given start and end dates at a location. Responses are
+     * cached on disk (see {@link HolidayCache}), so repeated requests for the same dates are
+     * served locally, and if an identical request is already being made, its result is shared.
+     *
+     * @param location   The location to get the holiday times for
+     * @param startDate  The starting date, assumed to be in Penn's timezone
+     * @param endDate    The ending date, assumed to be in Penn's timezone
+     * @return           A list of holidays in the given time period
+     * @throws HolidayException  If the holidays cannot be retrieved or parsed
+     */
+    public static List<HolidayInterval> getHolidays(Location location, LocalDate startDate, LocalDate endDate) {
+        RequestKey key = new RequestKey(location, startDate, endDate);
+        CompletableFuture<List<HolidayInterval>> request = new CompletableFuture<>();
+        CompletableFuture<List<HolidayInterval>> existing = inFlight.putIfAbsent(key, request);
+        if (existing != null) {
+            try {
+                return new ArrayList<>(existing.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof HolidayException he) {
+                    throw he;
+                }
+                throw new HolidayException("An error occurred while requesting the holidays", e.getCause());
+            }
+        }
+
         try {
-            var splitResponse = splitResponse(response);
-            parsedReponse = parseList(splitResponse);
+            List<HolidayInterval> rtn = fetchHolidays(location, startDate, endDate);
+            request.complete(rtn);
+            return new ArrayList<>(rtn);
+        } catch (RuntimeException e) {
+            request.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, request);
+        }
+    }
+
+    /**
+     * Get all the holidays between the given start and end dates at a location, from the cache
+     * or from the api.
+     *
+     * @param location   The location to get the holiday times for
+     * @param startDate  The starting date, assumed to be in Penn's timezone
+     * @param endDate    The ending date, assumed to be in Penn's timezone
+     * @return           A list of holidays in the given time period
+     * @throws HolidayException  If the holidays cannot be retrieved or parsed
+     */
+    private static List<HolidayInterval> fetchHolidays(Location location, LocalDate startDate, LocalDate endDate) {
+        String geo = location.geoParameters();
+        List<HolidayInterval> cached = HolidayCache.get(geo, startDate, endDate);
+        if (cached != null) {
+            Metrics.count(Metrics.Counter.HOLIDAY_CACHE_HITS, 1);
+            return cached;
+        }
+        if (HolidayCache.isOffline()) {
+            throw new HolidayException("Running in offline mode, but no cached holidays were found from " + startDate + " to " + endDate);
+        }
+
+        String url = getURL(geo, startDate, endDate);
+        List<HebCalAPI.HolidayInterval> parsedReponse;
+        try (Reader response = getResponse(url)) {
+            parsedReponse = parseResponse(response);
+        } catch (HolidayException e) {
+            throw e;
         } catch (Exception e) {
-            System.out.println("An error occurred while parsing the holiday API response");
-            System.exit(1);
-            throw new RuntimeException("System.exit() did not exit");
+            throw new HolidayException("An error occurred while parsing the holiday API response", e);
         }
+        HolidayCache.put(geo, startDate, endDate, parsedReponse);
         return parsedReponse;
     }
 
     /**
      * Generate the url used to request data from the api
      *
+     * @param geo        The location parameters, e.g. "geo=zip&zip=19104"
      * @param startDate  The starting date, assumed to be in Penn's timezone
      * @param endDate    The ending date, assumed to be in Penn's timezone
      * @return           The url, as a string
      */
-    private static String getURL(LocalDate startDate, LocalDate endDate) {
+    private static String getURL(String geo, LocalDate startDate, LocalDate endDate) {
         DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE;
-        return "https://www.hebcal.com/hebcal?cfg=json&v=1&maj=on&leyning=off&c=on&geo=zip&zip=19104"
+        return "https://" + HOST + "/hebcal?cfg=json&v=1&maj=on&leyning=off&c=on&" + geo
                 + "&start=" + startDate.format(formatter)
                 + "&end=" + endDate.format(formatter);
     }
 
     /**
-     * Request data from the api, and return the body as a string
+     * Request data from the api, and return a reader over the body
      *
      * @param url  The api url to request from, as a string
-     * @return     The response body, as a string
+     * @return     A reader over the response body, which the caller must close
      */
-    private static String getResponse(String url) {
+    private static Reader getResponse(String url) {
         URI requestUri = URI.create(url);
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder().uri(requestUri).build();
-        HttpResponse<String> response;
+        HttpRequest request = HttpService.newRequest(requestUri).build();
+        HttpResponse<InputStream> response;
+        Metrics.Timer timer = Metrics.time(Metrics.Phase.HOLIDAY_FETCH);
         try {
-            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            response = HttpService.send(request, HttpResponse.BodyHandlers.ofInputStream());
         } catch (IOException | InterruptedException e) {
-            System.out.println("An error occurred while making a request to the holiday api url " + requestUri);
-            System.exit(1);
-            throw new RuntimeException("System.exit() did not exit");
+            throw new HolidayException("An error occurred while making a request to the holiday api url " + requestUri, e);
+        } finally {
+            timer.close();
         }
         if (response.statusCode() != 200) {
-            System.out.println("The request to the holiday API url '" + requestUri + "' returned unsuccessful status code " + response.statusCode());
-            System.exit(1);
-            throw new RuntimeException("System.exit() did not exit");
+            Utils.closeQuietly(response.body());
+            throw new HolidayException("The request to the holiday API url '" + requestUri + "' returned unsuccessful status code " + response.statusCode());
         }
-        return response.body();
+        return new InputStreamReader(response.body(), StandardCharsets.UTF_8);
     }
 
     /**
-     * Splits the JSON response into a list of relevant objects (sets of key-value pairs)
+     * Parse the JSON response into a list of HolidayInterval objects, in a single pass over the text.
+     * Only the "title", "title_orig", "date" and "yomtov" fields of each item are decoded;
+     * everything else is skipped.
      *
-     * @param response  The response body as text
-     * @return          The response, split into a list of objects
+     * @param response  A reader over the response body
+     * @return          A list of HolidayInterval objects
+     * @throws IOException  If the response cannot be read, or is not valid JSON
      */
-    private static ArrayList<Map<String, String>> splitResponse(String response) {
-        Pattern itemsPat = CachedRegex.pattern("\"items\"\\s*:\\s*\\[([^\\[\\]]+)\\]");
-        Matcher m1 = itemsPat.matcher(response);
-        if (!m1.find()) {
-            throw new IllegalArgumentException("Could not match pattern to response: " + response);
-        }
-        String itemString = m1.group(1);
-        Pattern objectSeparator = CachedRegex.pattern("(?<=\\})\\s*,\\s*(?=\\{)");
-        String[] items = objectSeparator.split(itemString);
-
-        ArrayList<Map<String, String>> rtn = new ArrayList<>(items.length);
-        for (var obj : items) {
-            Pattern objectPattern = CachedRegex.pattern("\\s*\\{([^{}]*)\\}\\s*");
-            Matcher m2 = objectPattern.matcher(obj);
-            if (!m2.matches()) {
-                throw new IllegalArgumentException("Could not match pattern to object: " + obj);
-            }
-            String objString = m2.group(1);
-
-            Pattern stringSeparator = CachedRegex.pattern("((?<=\")\\s*,\\s*(?=\"))|(\\s*,\\s*(?=\"))|((?<=\")\\s*,\\s*)");
-            String[] pairs = stringSeparator.split(objString);
-
-            Map<String, String> map = new HashMap<>(pairs.length);
-            for (var p: pairs) {
-                Pattern pairPattern = CachedRegex.pattern("\\s*\"([^\"]*)\"\\s*:\\s*\"?([^\"]*)\"?\\s*");
-                Matcher m3 = pairPattern.matcher(p);
-                if (!m3.matches()) {
-                    throw new IllegalArgumentException("Could not match pattern to kv pair: " + p);
+    static ArrayList<HolidayInterval> parseResponse(Reader response) throws IOException {
+        try (Metrics.Timer timer = Metrics.time(Metrics.Phase.HOLIDAY_PARSE)) {
+            JsonTokenizer json = new JsonTokenizer(response);
+            json.beginObject();
+            while (json.hasNext()) {
+                if (json.nextName().equals("items")) {
+                    ArrayList<HolidayInterval> rtn = parseItems(json);
+                    timer.items(rtn.size());
+                    return rtn;
                 }
-
-                String key = m3.group(1);
-                String value = m3.group(2);
-                map.put(key, value);
+                json.skipValue();
             }
-            rtn.add(map);
+            throw new IllegalArgumentException("Could not find the items in the response");
         }
-
-        return rtn;
     }
 
     /**
-     * Parse the split response into a list of HolidayInterval objects
+     * Parse the "items" array of the JSON response into a list of HolidayInterval objects.
+     * Each holiday starts with a candle lighting item, includes the names of the yom tov items
+     * after it, and ends with the next havdalah item.
      *
-     * @param rawList  The list of objects returned by {@link HebCalAPI#splitResponse(String response)}
-     * @return         A list of HolidayInterval objects
+     * @param json  The tokenizer, positioned at the start of the items array
+     * @return      A list of HolidayInterval objects
+     * @throws IOException  If the response cannot be read, or is not valid JSON
      */
-    private static ArrayList<HolidayInterval> parseList(ArrayList<Map<String, String>> rawList) {
-        ArrayList<HolidayInterval> rtn = new ArrayList<>(5 + rawList.size() / 3);
-
-        int i = -1;
-        while (++i < rawList.size()) {
-            var curr = rawList.get(i);
-
-            if ("Candle lighting".equals(curr.get("title_orig"))) {
-                String startDateString = curr.get("date");
-                ZonedDateTime startDateTime = DateTimeFormatter.ISO_OFFSET_DATE_TIME
-                        .parse(startDateString).query(OffsetDateTime::from)
-                        .atZoneSameInstant(Utils.PENN_ZONEID);
-
-                ArrayList<String> eventNames = new ArrayList<>();
-                ZonedDateTime endDateTime = null;
-                while (++i < rawList.size()) {
-                    curr = rawList.get(i);
-
-                    if ("true".equals(curr.get("yomtov"))) {
-                        String name = curr.get("title");
-                        if (name != null) {
-                            eventNames.add(name);
-                        }
-                    } else if ("Havdalah".equals(curr.get("title_orig"))) {
-                        String endDateString = curr.get("date");
-                        endDateTime = DateTimeFormatter.ISO_OFFSET_DATE_TIME
-                                .parse(endDateString).query(OffsetDateTime::from)
-                                .atZoneSameInstant(Utils.PENN_ZONEID);
-                        break;
-                    }
+    private static ArrayList<HolidayInterval> parseItems(JsonTokenizer json) throws IOException {
+        ArrayList<HolidayInterval> rtn = new ArrayList<>();
+
+        ZonedDateTime startDateTime = null;
+        ArrayList<String> eventNames = null;
+
+        json.beginArray();
+        while (json.hasNext()) {
+            String title = null;
+            String titleOrig = null;
+            String date = null;
+            String yomtov = null;
+
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "title" -> title = json.nextString();
+                    case "title_orig" -> titleOrig = json.nextString();
+                    case "date" -> date = json.nextString();
+                    case "yomtov" -> yomtov = json.nextString();
+                    default -> json.skipValue();
                 }
+            }
+            json.endObject();
 
-                HolidayInterval interval = new HolidayInterval(eventNames, startDateTime, endDateTime);
-                rtn.add(interval);
+            if (startDateTime == null) {
+                if ("Candle lighting".equals(titleOrig)) {
+                    startDateTime = parseDateTime(date);
+                    eventNames = new ArrayList<>();
+                }
+            } else if ("true".equals(yomtov)) {
+                if (title != null) {
+                    eventNames.add(title);
+                }
+            } else if ("Havdalah".equals(titleOrig)) {
+                rtn.add(new HolidayInterval(eventNames, startDateTime, parseDateTime(date)));
+                startDateTime = null;
             }
         }
+        json.endArray();
 
+        if (startDateTime != null) {
+            rtn.add(new HolidayInterval(eventNames, startDateTime, null));
+        }
         return rtn;
     }
 
+    /**
+     * Parse the date of a candle lighting or havdalah item.
+     *
+     * @param dateString  The date, in ISO offset date-time format
+     * @return            The date-time, in Penn's timezone
+     */
+    private static ZonedDateTime parseDateTime(String dateString) {
+        return DateTimeFormatter.ISO_OFFSET_DATE_TIME
+                .parse(dateString).query(OffsetDateTime::from)
+                .atZoneSameInstant(Utils.PENN_ZONEID);
+    }
+
     /**
      * A class representing a holiday, and the interval of time it takes place in
      */
@@ -183,6 +282,17 @@ public class HebCalAPI {
         public String eventName;
         public Interval interval;
 
+        /**
+         * Construct a holiday from an already-cleaned name and its interval.
+         *
+         * @param eventName  The cleaned name of the holiday, as produced by the other constructor
+         * @param interval   The interval of time the holiday takes place in
+         */
+        HolidayInterval(String eventName, Interval interval) {
+            this.eventName = eventName;
+            this.interval = interval;
+        }
+
         HolidayInterval(List<String> eventNames, ZonedDateTime startDateTime, ZonedDateTime endDateTime) {
             if (endDateTime == null) {
                 // This can only happen if havdalah is past the end date we requested.
@@ -214,7 +324,7 @@ public class HebCalAPI {
          */
         private static String cleanName(String name) {
             {
-                Pattern romanNumeral = CachedRegex.pattern("(.*?)[ ]+[IVX]+", Pattern.CASE_INSENSITIVE);
+                Pattern romanNumeral = CachedRegex.ROMAN_NUMERAL_SUFFIX;
                 Matcher m = romanNumeral.matcher(name);
                 if (m.matches()) {
                     return m.group(1);
@@ -222,7 +332,7 @@ public class HebCalAPI {
             }
 
             {
-                Pattern roshHashana = CachedRegex.pattern("(rosh hashana)[ ]+\\d{4}", Pattern.CASE_INSENSITIVE);
+                Pattern roshHashana = CachedRegex.ROSH_HASHANA_YEAR;
                 Matcher m = roshHashana.matcher(name);
                 if (m.matches()) {
                     return m.group(1);
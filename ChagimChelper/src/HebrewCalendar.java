@@ -0,0 +1,134 @@
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A class for Hebrew calendar arithmetic, used to find the dates of the yom tov days without
+ * needing the HebCal API. The calculations follow the fixed arithmetic calendar, as described in
+ * Dershowitz and Reingold's "Calendrical Calculations".
+ * This class cannot be constructed; it contains only static methods
+ */
+public class HebrewCalendar {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private HebrewCalendar() {}
+
+    /**
+     * The epoch day (see {@link LocalDate#toEpochDay()}) of 1 Tishrei, year 1
+     */
+    private static final long EPOCH_DAY_OF_HEBREW_EPOCH = -1373427 - 719163;
+
+    /**
+     * The number of days from 15 Nisan to 1 Tishrei of the following year. The months
+     * from Nisan to Elul always have the same lengths.
+     */
+    private static final int PESACH_TO_ROSH_HASHANA = 163;
+
+    /**
+     * The number of days from 15 Nisan to 6 Sivan
+     */
+    private static final int PESACH_TO_SHAVUOT = 50;
+
+    /**
+     * The number of days from 1 Tishrei of year 1 to 1 Tishrei of the given year, before the
+     * postponements which depend on the lengths of the surrounding years.
+     *
+     * @param year  The Hebrew year
+     * @return      The number of elapsed days
+     */
+    private static long elapsedDays(long year) {
+        long monthsElapsed = Math.floorDiv(235 * year - 234, 19);
+        long partsElapsed = 12084 + 13753 * monthsElapsed;
+        long days = 29 * monthsElapsed + Math.floorDiv(partsElapsed, 25920);
+        if (Math.floorMod(3 * (days + 1), 7) < 3) {
+            days++;
+        }
+        return days;
+    }
+
+    /**
+     * The postponement of Rosh Hashana needed to keep the lengths of the years valid.
+     *
+     * @param year  The Hebrew year
+     * @return      The number of days (0, 1 or 2) Rosh Hashana is postponed by
+     */
+    private static int yearLengthCorrection(long year) {
+        long ny0 = elapsedDays(year - 1);
+        long ny1 = elapsedDays(year);
+        long ny2 = elapsedDays(year + 1);
+        if (ny2 - ny1 == 356) {
+            return 2;
+        } else if (ny1 - ny0 == 382) {
+            return 1;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Return the date of Rosh Hashana (1 Tishrei) of the given Hebrew year.
+     *
+     * @param year  The Hebrew year, e.g. 5783
+     * @return      The Gregorian date of 1 Tishrei
+     */
+    public static LocalDate roshHashana(long year) {
+        return LocalDate.ofEpochDay(EPOCH_DAY_OF_HEBREW_EPOCH + elapsedDays(year) + yearLengthCorrection(year));
+    }
+
+    /**
+     * Return the date of the first day of Pesach (15 Nisan) of the given Hebrew year.
+     *
+     * @param year  The Hebrew year, e.g. 5783
+     * @return      The Gregorian date of 15 Nisan
+     */
+    public static LocalDate pesach(long year) {
+        return roshHashana(year + 1).minusDays(PESACH_TO_ROSH_HASHANA);
+    }
+
+    /**
+     * Return the Hebrew year that a Gregorian date falls in.
+     *
+     * @param date  The date
+     * @return      The Hebrew year
+     */
+    public static long hebrewYear(LocalDate date) {
+        long year = date.getYear() + 3761L;
+        if (date.isBefore(roshHashana(year))) {
+            year--;
+        }
+        return year;
+    }
+
+    /**
+     * Return the yom tov days (as observed outside of Israel) between two dates, with the
+     * names used by the HebCal API.
+     *
+     * @param startDate  The first date, inclusive
+     * @param endDate    The last date, inclusive
+     * @return           A sorted map from each yom tov date to its name
+     */
+    public static TreeMap<LocalDate, String> yomTovDays(LocalDate startDate, LocalDate endDate) {
+        TreeMap<LocalDate, String> rtn = new TreeMap<>();
+        for (long year = hebrewYear(startDate); year <= hebrewYear(endDate); year++) {
+            LocalDate rh = roshHashana(year);
+            rtn.put(rh, "Rosh Hashana " + year);
+            rtn.put(rh.plusDays(1), "Rosh Hashana II");
+            rtn.put(rh.plusDays(9), "Yom Kippur");
+            rtn.put(rh.plusDays(14), "Sukkot I");
+            rtn.put(rh.plusDays(15), "Sukkot II");
+            rtn.put(rh.plusDays(21), "Shmini Atzeret");
+            rtn.put(rh.plusDays(22), "Simchat Torah");
+
+            LocalDate pesach = pesach(year);
+            rtn.put(pesach, "Pesach I");
+            rtn.put(pesach.plusDays(1), "Pesach II");
+            rtn.put(pesach.plusDays(6), "Pesach VII");
+            rtn.put(pesach.plusDays(7), "Pesach VIII");
+            rtn.put(pesach.plusDays(PESACH_TO_SHAVUOT), "Shavuot I");
+            rtn.put(pesach.plusDays(PESACH_TO_SHAVUOT + 1), "Shavuot II");
+        }
+        Map<LocalDate, String> inRange = rtn.subMap(startDate, true, endDate, true);
+        return new TreeMap<>(inRange);
+    }
+}
@@ -0,0 +1,254 @@
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * An index of the minutes blocked by a list of holidays, for checking many course meetings
+ * against the same holidays. Every minute from midnight of the first holiday date to midnight
+ * after the last one has a bit, set if a holiday overlaps that minute, so checking a meeting
+ * takes a few word-level ANDs over the bits of its minutes. Most meetings don't overlap any
+ * holiday, and are ruled out by the bits alone.
+ * <p>
+ * The minutes are counted in elapsed time rather than wall-clock time, so days on which
+ * daylight saving time starts or ends are handled exactly. The bits round holidays and meetings
+ * out to whole minutes, so a meeting whose minutes are blocked is checked against the holidays
+ * themselves with {@link Interval#overlaps(Interval)}; the results are always the same as
+ * those of {@link ConflictEngine#findConflicts(Schedule, List)}.
+ * <p>
+ * An index is immutable once built, so it can be shared between threads, such as the workers
+ * of a batch checking many schedules against the holidays at the same location.
+ */
+public class HolidayBitmap {
+    /**
+     * The holidays, in the order they were given
+     */
+    private final List<HebCalAPI.HolidayInterval> holidays;
+    /**
+     * The start of each holiday in epoch seconds, rounded down. As in
+     * {@link MeetingTable#rowsDuring(long, long)}, this is not swapped with the end if a holiday
+     * ends before it starts, so such holidays give the same results as in {@link ConflictEngine}.
+     */
+    private final long[] holidayStarts;
+    /**
+     * The end of each holiday in epoch seconds, rounded up
+     */
+    private final long[] holidayEnds;
+    /**
+     * The dates the holidays take place on, merged into ranges (see {@link #dates()})
+     */
+    private final NavigableMap<LocalDate, LocalDate> dates;
+    /**
+     * The epoch second of the first minute in the index: midnight of the first holiday date
+     */
+    private final long origin;
+    /**
+     * The number of minutes in the index
+     */
+    private final long minutes;
+    /**
+     * One bit for each minute, set if the minute is blocked by a holiday
+     */
+    private final long[] bits;
+
+    /**
+     * Build an index of a list of holidays.
+     *
+     * @param holidays  The holidays
+     */
+    public HolidayBitmap(List<HebCalAPI.HolidayInterval> holidays) {
+        this.holidays = List.copyOf(holidays);
+        this.holidayStarts = new long[holidays.size()];
+        this.holidayEnds = new long[holidays.size()];
+        if (holidays.isEmpty()) {
+            this.dates = Collections.emptyNavigableMap();
+            this.origin = 0;
+            this.minutes = 0;
+            this.bits = new long[0];
+            return;
+        }
+
+        this.dates = Collections.unmodifiableNavigableMap(ConflictEngine.holidayDates(holidays));
+        this.origin = this.dates.firstKey().atStartOfDay(Utils.PENN_ZONEID).toEpochSecond();
+        long limit = this.dates.lastEntry().getValue().plusDays(1).atStartOfDay(Utils.PENN_ZONEID).toEpochSecond();
+        this.minutes = (limit - this.origin) / 60;
+        this.bits = new long[(int) ((this.minutes + 63) / 64)];
+
+        for (int i = 0; i < this.holidayStarts.length; i++) {
+            Interval interval = this.holidays.get(i).interval;
+            this.holidayStarts[i] = interval.start.toEpochSecond();
+            this.holidayEnds[i] = ceilEpochSecond(interval.end);
+            long first = Math.min(this.holidayStarts[i], this.holidayEnds[i]);
+            long last = Math.max(this.holidayStarts[i], this.holidayEnds[i]);
+            setMinutes(firstMinute(first), lastMinute(first, last));
+        }
+    }
+
+    /**
+     * Returns the holidays in the index
+     *
+     * @return  The holidays, in the order they were given
+     */
+    public List<HebCalAPI.HolidayInterval> holidays() {
+        return this.holidays;
+    }
+
+    /**
+     * Returns the dates the holidays take place on
+     *
+     * @return  A map from the first date to the last date (inclusive) of each range of dates
+     *          with a holiday, in Penn's timezone
+     */
+    public NavigableMap<LocalDate, LocalDate> dates() {
+        return this.dates;
+    }
+
+    /**
+     * Check if a meeting overlaps any of the holidays.
+     *
+     * @param meeting  The time of the meeting
+     * @return         True if it overlaps at least one holiday
+     */
+    public boolean isBlocked(Interval meeting) {
+        long start = meeting.start.toEpochSecond();
+        long end = ceilEpochSecond(meeting.end);
+        if (!mayOverlap(start, end)) {
+            return false;
+        }
+        for (int i = 0; i < this.holidayStarts.length; i++) {
+            if (overlaps(i, meeting, start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check the bitmap for any blocked minutes during a meeting. If there are none, the
+     * meeting does not overlap any holiday; if there are, it might.
+     *
+     * @param start  The start of the meeting in epoch seconds, rounded down
+     * @param end    The end of the meeting in epoch seconds, rounded up
+     * @return       False if the meeting certainly does not overlap any holiday
+     */
+    boolean mayOverlap(long start, long end) {
+        return anyMinuteSet(firstMinute(start), lastMinute(start, end));
+    }
+
+    /**
+     * Find the holidays a meeting overlaps, by checking it against each holiday around it.
+     * This should only be called if {@link #mayOverlap(long, long)} returns true.
+     *
+     * @param meeting  The exact time of the meeting
+     * @param start    The start of the meeting in epoch seconds, rounded down
+     * @param end      The end of the meeting in epoch seconds, rounded up
+     * @param action   Called with the index (into {@link #holidays()}) of each holiday the
+     *                 meeting overlaps, in order
+     */
+    void forEachOverlapping(Interval meeting, long start, long end, IntConsumer action) {
+        for (int i = 0; i < this.holidayStarts.length; i++) {
+            if (overlaps(i, meeting, start, end)) {
+                action.accept(i);
+            }
+        }
+    }
+
+    /**
+     * Check if a meeting overlaps a holiday.
+     *
+     * @param holiday  The index of the holiday
+     * @param meeting  The exact time of the meeting
+     * @param start    The start of the meeting in epoch seconds, rounded down
+     * @param end      The end of the meeting in epoch seconds, rounded up
+     * @return         True if they overlap
+     */
+    private boolean overlaps(int holiday, Interval meeting, long start, long end) {
+        return this.holidayStarts[holiday] <= end && this.holidayEnds[holiday] >= start
+                && this.holidays.get(holiday).interval.overlaps(meeting);
+    }
+
+    /**
+     * Returns the index of the minute containing a time, which may be outside the index.
+     *
+     * @param epochSecond  The time, in epoch seconds
+     * @return             The minute
+     */
+    private long firstMinute(long epochSecond) {
+        return Math.floorDiv(epochSecond - this.origin, 60);
+    }
+
+    /**
+     * Returns the index of the last minute overlapped by an interval: the minute before its end,
+     * or the minute containing it if it is empty.
+     *
+     * @param start  The start of the interval, in epoch seconds
+     * @param end    The end of the interval, in epoch seconds
+     * @return       The minute
+     */
+    private long lastMinute(long start, long end) {
+        if (end <= start) {
+            return firstMinute(start);
+        }
+        return Math.floorDiv(end - this.origin + 59, 60) - 1;
+    }
+
+    /**
+     * Set the bits of a range of minutes, ignoring any part of the range outside the index.
+     *
+     * @param first  The first minute, inclusive
+     * @param last   The last minute, inclusive
+     */
+    private void setMinutes(long first, long last) {
+        first = Math.max(first, 0);
+        last = Math.min(last, this.minutes - 1);
+        for (long m = first; m <= last; ) {
+            int word = (int) (m >>> 6);
+            long wordEnd = Math.min(last, ((long) word << 6) + 63);
+            this.bits[word] |= mask((int) (m & 63), (int) (wordEnd & 63));
+            m = wordEnd + 1;
+        }
+    }
+
+    /**
+     * Check if any bit in a range of minutes is set, ignoring any part of the range outside the
+     * index.
+     *
+     * @param first  The first minute, inclusive
+     * @param last   The last minute, inclusive
+     * @return       True if any of the minutes is blocked
+     */
+    private boolean anyMinuteSet(long first, long last) {
+        first = Math.max(first, 0);
+        last = Math.min(last, this.minutes - 1);
+        for (long m = first; m <= last; ) {
+            int word = (int) (m >>> 6);
+            long wordEnd = Math.min(last, ((long) word << 6) + 63);
+            if ((this.bits[word] & mask((int) (m & 63), (int) (wordEnd & 63))) != 0) {
+                return true;
+            }
+            m = wordEnd + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a mask of the bits from one bit to another within a word.
+     *
+     * @param from  The first bit, inclusive
+     * @param to    The last bit, inclusive
+     * @return      The mask
+     */
+    private static long mask(int from, int to) {
+        return (-1L << from) & (-1L >>> (63 - to));
+    }
+
+    /**
+     * Round a date-time up to a whole epoch second.
+     *
+     * @param dateTime  The date-time
+     * @return          The epoch second, rounded up
+     */
+    private static long ceilEpochSecond(ZonedDateTime dateTime) {
+        return dateTime.toEpochSecond() + (dateTime.getNano() > 0 ? 1 : 0);
+    }
+}
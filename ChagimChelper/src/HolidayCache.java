@@ -0,0 +1,183 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A persistent, on-disk cache of holiday API responses, so that repeated runs for the same
+ * location and date range do not need to make any network requests.
+ * Each entry is stored in its own small binary file, named after the location and date range.
+ * <p>
+ * The cache is configured with the following system properties:
+ * <ul>
+ *     <li>{@code chagimchelper.cache.dir}: the directory to store the cache in
+ *         (default: ".chagimchelper/holidays" in the user's home directory)</li>
+ *     <li>{@code chagimchelper.cache.ttlDays}: how many days an entry which includes
+ *         future dates stays valid for (default: 30). Entries which lie entirely in the past
+ *         never expire, since holiday times for past dates never change.</li>
+ *     <li>{@code chagimchelper.cache.disabled}: set to "true" to bypass the cache entirely</li>
+ *     <li>{@code chagimchelper.offline}: set to "true" to never make requests, using expired
+ *         entries if necessary</li>
+ * </ul>
+ * This class cannot be constructed; it contains only static methods
+ */
+public class HolidayCache {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private HolidayCache() {}
+
+    /**
+     * The first four bytes of every cache file ("CCHC")
+     */
+    private static final int MAGIC = 0x43434843;
+    /**
+     * The version of the cache file format. Files with a different version are ignored
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The directory the cache is stored in
+     */
+    private static final Path CACHE_DIR = Path.of(System.getProperty("chagimchelper.cache.dir",
+            Path.of(System.getProperty("user.home"), ".chagimchelper", "holidays").toString()));
+    /**
+     * How long an entry which includes future dates stays valid for
+     */
+    private static final Duration TTL = Duration.ofDays(Long.getLong("chagimchelper.cache.ttlDays", 30));
+    /**
+     * Whether the cache is disabled
+     */
+    private static final boolean DISABLED = Boolean.getBoolean("chagimchelper.cache.disabled");
+    /**
+     * Whether requests to the holiday API are forbidden
+     */
+    private static final boolean OFFLINE = Boolean.getBoolean("chagimchelper.offline");
+
+    /**
+     * Check if the program is running in offline mode, in which case holidays must come from the cache.
+     *
+     * @return  True if requests to the holiday API are forbidden
+     */
+    public static boolean isOffline() {
+        return OFFLINE;
+    }
+
+    /**
+     * Get the cached holidays for a location and date range, if there are any.
+     *
+     * @param geo        A string identifying the location, e.g. "geo=zip&zip=19104"
+     * @param startDate  The starting date of the range
+     * @param endDate    The ending date of the range
+     * @return           The cached holidays, or null if there is no valid cache entry
+     */
+    public static List<HebCalAPI.HolidayInterval> get(String geo, LocalDate startDate, LocalDate endDate) {
+        if (DISABLED) {
+            return null;
+        }
+        Path path = pathFor(geo, startDate, endDate);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            Instant fetchedAt = Instant.ofEpochSecond(in.readLong());
+            if (!OFFLINE && isExpired(fetchedAt, endDate)) {
+                return null;
+            }
+
+            int count = in.readInt();
+            List<HebCalAPI.HolidayInterval> rtn = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String eventName = in.readUTF();
+                ZonedDateTime start = Instant.ofEpochSecond(in.readLong()).atZone(Utils.PENN_ZONEID);
+                ZonedDateTime end = Instant.ofEpochSecond(in.readLong()).atZone(Utils.PENN_ZONEID);
+                rtn.add(new HebCalAPI.HolidayInterval(eventName, new Interval(start, end)));
+            }
+            return rtn;
+        } catch (IOException e) {
+            // A corrupt or truncated entry is treated the same as a missing one
+            return null;
+        }
+    }
+
+    /**
+     * Store holidays for a location and date range in the cache. Failures to write are ignored,
+     * since the cache is only an optimization.
+     *
+     * @param geo        A string identifying the location, e.g. "geo=zip&zip=19104"
+     * @param startDate  The starting date of the range
+     * @param endDate    The ending date of the range
+     * @param holidays   The holidays to store
+     */
+    public static void put(String geo, LocalDate startDate, LocalDate endDate, List<HebCalAPI.HolidayInterval> holidays) {
+        if (DISABLED) {
+            return;
+        }
+        Path path = pathFor(geo, startDate, endDate);
+        try {
+            Files.createDirectories(CACHE_DIR);
+            Path tempPath = Files.createTempFile(CACHE_DIR, path.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(Instant.now().getEpochSecond());
+                out.writeInt(holidays.size());
+                for (var h : holidays) {
+                    out.writeUTF(h.eventName);
+                    out.writeLong(h.interval.start.toEpochSecond());
+                    out.writeLong(h.interval.end.toEpochSecond());
+                }
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Ignore, the holidays will just be requested again next time
+        }
+    }
+
+    /**
+     * Remove every entry from the cache.
+     */
+    public static void invalidateAll() {
+        if (!Files.isDirectory(CACHE_DIR)) {
+            return;
+        }
+        try (var files = Files.list(CACHE_DIR)) {
+            for (Path p : files.toList()) {
+                Files.deleteIfExists(p);
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while clearing the holiday cache at " + CACHE_DIR);
+        }
+    }
+
+    /**
+     * Check if a cache entry has expired.
+     *
+     * @param fetchedAt  The time the entry was requested from the API
+     * @param endDate    The ending date of the entry's range
+     * @return           True if the entry should be requested again
+     */
+    private static boolean isExpired(Instant fetchedAt, LocalDate endDate) {
+        if (fetchedAt.atZone(Utils.PENN_ZONEID).toLocalDate().isAfter(endDate)) {
+            return false;
+        }
+        return fetchedAt.plus(TTL).isBefore(Instant.now());
+    }
+
+    /**
+     * Get the path of the cache file for a location and date range.
+     *
+     * @param geo        A string identifying the location, e.g. "geo=zip&zip=19104"
+     * @param startDate  The starting date of the range
+     * @param endDate    The ending date of the range
+     * @return           The path of the cache file
+     */
+    private static Path pathFor(String geo, LocalDate startDate, LocalDate endDate) {
+        String cleanGeo = CachedRegex.UNSAFE_CACHE_KEY_CHAR.matcher(geo).replaceAll("_");
+        return CACHE_DIR.resolve(cleanGeo + "_" + startDate + "_" + endDate + ".bin");
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * An exception thrown when holiday information cannot be retrieved or parsed.
+ * The message is suitable for showing directly to the user.
+ */
+public class HolidayException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public HolidayException(String message) {
+        super(message);
+    }
+
+    public HolidayException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,260 @@
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable index of the holidays at a location over a span of several years, which is
+ * loaded once and then shared by every analysis. The holidays are sorted by their start, and
+ * kept in primitive arrays of their start and end times along with a table of their names, so
+ * looking up the holidays in a date range is two binary searches, with no requests and no
+ * locking. Ranges which are not inside the span are passed on to a fallback provider.
+ * <p>
+ * The span of the shared indexes (see {@link #forLocation}) is set with the system properties
+ * {@code chagimchelper.holidayIndex.firstYear} and {@code chagimchelper.holidayIndex.lastYear},
+ * which default to last year and next year, so that past, current and upcoming semesters can
+ * be analyzed together.
+ * <p>
+ * An index is never modified after it is built, so it can be shared between threads freely.
+ */
+public final class HolidayIndex implements HolidayProvider {
+    /**
+     * The first year of the span of the shared indexes
+     */
+    private static final int FIRST_YEAR = Integer.getInteger("chagimchelper.holidayIndex.firstYear",
+            Year.now(Utils.PENN_ZONEID).getValue() - 1);
+    /**
+     * The last year of the span of the shared indexes
+     */
+    private static final int LAST_YEAR = Integer.getInteger("chagimchelper.holidayIndex.lastYear",
+            Year.now(Utils.PENN_ZONEID).getValue() + 1);
+
+    /**
+     * The indexes shared by the whole program, keyed by location
+     */
+    private static final Map<Location, HolidayIndex> SHARED = new ConcurrentHashMap<>();
+
+    /**
+     * The provider used for ranges which are not inside the span
+     */
+    private final HolidayProvider fallback;
+    /**
+     * The first date of the span, or null if the index is empty
+     */
+    private final LocalDate firstDate;
+    /**
+     * The last date of the span (inclusive), or null if the index is empty
+     */
+    private final LocalDate lastDate;
+    /**
+     * The start of each holiday in epoch seconds, in increasing order
+     */
+    private final long[] starts;
+    /**
+     * The end of each holiday in epoch seconds
+     */
+    private final long[] ends;
+    /**
+     * The index of each holiday's name in {@link #names}
+     */
+    private final int[] nameIds;
+    /**
+     * The distinct names of the holidays
+     */
+    private final String[] names;
+    /**
+     * The holidays themselves, in the same order, as a read-only list
+     */
+    private final List<HebCalAPI.HolidayInterval> holidays;
+    /**
+     * The length of the longest holiday in seconds, used to find the holidays which started
+     * before a span of time but are still going on during it
+     */
+    private final long maxDuration;
+
+    /**
+     * Load an index of the holidays in a span of dates.
+     *
+     * @param source     The provider to load the holidays from, which is also used for ranges
+     *                   which are not inside the span
+     * @param firstDate  The first date of the span
+     * @param lastDate   The last date of the span, inclusive
+     * @throws HolidayException  If the holidays cannot be loaded
+     */
+    public HolidayIndex(HolidayProvider source, LocalDate firstDate, LocalDate lastDate) {
+        List<HebCalAPI.HolidayInterval> loaded = new ArrayList<>(source.getHolidays(firstDate, lastDate));
+        loaded.sort(Comparator.comparingLong(h -> h.interval.start.toEpochSecond()));
+
+        this.fallback = source;
+        this.firstDate = firstDate;
+        this.lastDate = lastDate;
+        this.starts = new long[loaded.size()];
+        this.ends = new long[loaded.size()];
+        this.nameIds = new int[loaded.size()];
+        Map<String, Integer> nameTable = new LinkedHashMap<>();
+        long longest = 0;
+        for (int i = 0; i < loaded.size(); i++) {
+            HebCalAPI.HolidayInterval h = loaded.get(i);
+            this.starts[i] = h.interval.start.toEpochSecond();
+            this.ends[i] = h.interval.end.toEpochSecond() + (h.interval.end.getNano() > 0 ? 1 : 0);
+            this.nameIds[i] = nameTable.computeIfAbsent(h.eventName, n -> nameTable.size());
+            longest = Math.max(longest, this.ends[i] - this.starts[i]);
+        }
+        this.names = nameTable.keySet().toArray(new String[0]);
+        this.holidays = Collections.unmodifiableList(Arrays.asList(loaded.toArray(new HebCalAPI.HolidayInterval[0])));
+        this.maxDuration = longest;
+    }
+
+    /**
+     * Construct an empty index, which passes every range on to its fallback.
+     *
+     * @param fallback  The provider to use for every range
+     */
+    private HolidayIndex(HolidayProvider fallback) {
+        this.fallback = fallback;
+        this.firstDate = null;
+        this.lastDate = null;
+        this.starts = new long[0];
+        this.ends = new long[0];
+        this.nameIds = new int[0];
+        this.names = new String[0];
+        this.holidays = List.of();
+        this.maxDuration = 0;
+    }
+
+    /**
+     * Return the index shared by the whole program for Penn's location.
+     *
+     * @return  The shared index
+     */
+    public static HolidayIndex shared() {
+        return forLocation(Location.PENN);
+    }
+
+    /**
+     * Return the index shared by the whole program for a location, loading it from the
+     * location's {@link HolidayStore} the first time it is needed. If the span cannot be loaded
+     * (for example, when running offline without it in the cache), the index is left empty and
+     * every range is requested from the store instead, which reports an error only if the
+     * range actually needed is unavailable.
+     *
+     * @param location  The location
+     * @return          The shared index for the location
+     */
+    public static HolidayIndex forLocation(Location location) {
+        return SHARED.computeIfAbsent(location, l -> {
+            HolidayStore store = HolidayStore.forLocation(l);
+            try {
+                return new HolidayIndex(store, LocalDate.of(FIRST_YEAR, 1, 1), LocalDate.of(LAST_YEAR, 12, 31));
+            } catch (HolidayException e) {
+                return new HolidayIndex(store);
+            }
+        });
+    }
+
+    /**
+     * Get the holidays which start between two dates. Ranges inside the span are answered from
+     * the index; others are requested from the fallback provider.
+     *
+     * @param startDate  The starting date, in Penn's timezone
+     * @param endDate    The ending date (inclusive), in Penn's timezone
+     * @return           The holidays, in order of their start. The list may be read-only.
+     */
+    @Override
+    public List<HebCalAPI.HolidayInterval> getHolidays(LocalDate startDate, LocalDate endDate) {
+        if (this.firstDate == null || startDate.isBefore(this.firstDate) || endDate.isAfter(this.lastDate)) {
+            return this.fallback.getHolidays(startDate, endDate);
+        }
+        long from = startDate.atStartOfDay(Utils.PENN_ZONEID).toEpochSecond();
+        long to = endDate.plusDays(1).atStartOfDay(Utils.PENN_ZONEID).toEpochSecond();
+        return this.holidays.subList(firstStartingAtOrAfter(from), firstStartingAtOrAfter(to));
+    }
+
+    /**
+     * Get the holidays in the index which overlap a span of time, including those which
+     * started before it. Holidays which only touch the span may be included as well.
+     *
+     * @param from  The start of the span, in epoch seconds
+     * @param to    The end of the span, in epoch seconds
+     * @return      The holidays, in order of their start
+     */
+    public List<HebCalAPI.HolidayInterval> holidaysDuring(long from, long to) {
+        List<HebCalAPI.HolidayInterval> rtn = new ArrayList<>();
+        // No holiday which starts before this can reach the span
+        for (int i = firstStartingAtOrAfter(from - this.maxDuration); i < this.starts.length && this.starts[i] <= to; i++) {
+            if (this.ends[i] >= from) {
+                rtn.add(this.holidays.get(i));
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Find the first holiday which starts at or after a given time.
+     *
+     * @param epochSecond  The time, in epoch seconds
+     * @return             The index of the holiday, or {@link #size()} if there is none
+     */
+    public int firstStartingAtOrAfter(long epochSecond) {
+        int lo = 0;
+        int hi = this.starts.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.starts[mid] < epochSecond) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the number of holidays in the index
+     *
+     * @return  The number of holidays
+     */
+    public int size() {
+        return this.starts.length;
+    }
+
+    /**
+     * Returns the start of a holiday
+     *
+     * @param i  The index of the holiday
+     * @return   The start of the holiday, in epoch seconds
+     */
+    public long start(int i) {
+        return this.starts[i];
+    }
+
+    /**
+     * Returns the end of a holiday
+     *
+     * @param i  The index of the holiday
+     * @return   The end of the holiday in epoch seconds, rounded up
+     */
+    public long end(int i) {
+        return this.ends[i];
+    }
+
+    /**
+     * Returns the name of a holiday
+     *
+     * @param i  The index of the holiday
+     * @return   The name of the holiday, e.g. "Yom Kippur"
+     */
+    public String name(int i) {
+        return this.names[this.nameIds[i]];
+    }
+
+    /**
+     * Returns a holiday
+     *
+     * @param i  The index of the holiday
+     * @return   The holiday
+     */
+    public HebCalAPI.HolidayInterval holiday(int i) {
+        return this.holidays.get(i);
+    }
+}
@@ -0,0 +1,17 @@
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * A source of holiday information, such as the HebCal API (see {@link HebCalAPI#getHolidays})
+ */
+@FunctionalInterface
+public interface HolidayProvider {
+    /**
+     * Get all the holidays which begin between the given start and end dates
+     *
+     * @param startDate  The starting date, assumed to be in Penn's timezone
+     * @param endDate    The ending date, assumed to be in Penn's timezone
+     * @return           A list of holidays in the given time period, in chronological order
+     */
+    List<HebCalAPI.HolidayInterval> getHolidays(LocalDate startDate, LocalDate endDate);
+}
@@ -0,0 +1,179 @@
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory store of holidays, which remembers which date ranges it has already fetched.
+ * Requests which fall inside ranges that have already been fetched are answered from memory,
+ * and requests which only partly overlap them only fetch the missing gaps. This way, analyzing
+ * many schedules with slightly different date ranges only needs one or two requests.
+ * <p>
+ * Holiday times depend on the location, so the program shares one store per location (see
+ * {@link #forLocation}). Each store has its own lock, so stores for different locations can
+ * fetch at the same time.
+ */
+public class HolidayStore implements HolidayProvider {
+    /**
+     * How many extra days are fetched on either side of a gap, so that holidays which span the
+     * edge of the gap are fetched completely (with both their candle lighting and havdalah)
+     */
+    private static final int PADDING_DAYS = 7;
+
+    /**
+     * Whether holidays are computed locally rather than requested from the HebCal API
+     */
+    private static final boolean LOCAL_SOURCE = "local".equals(System.getProperty("chagimchelper.holidaySource"));
+
+    /**
+     * The stores shared by the whole program, keyed by location
+     */
+    private static final Map<Location, HolidayStore> SHARED = new ConcurrentHashMap<>();
+
+    /**
+     * The provider used to fetch missing ranges
+     */
+    private final HolidayProvider provider;
+    /**
+     * The ranges which have been fetched, as a map from the first date to the last date
+     * (inclusive) of each range. The ranges are merged, so they never overlap or touch.
+     */
+    private final TreeMap<LocalDate, LocalDate> covered = new TreeMap<>();
+    /**
+     * All the holidays which have been fetched, keyed by their start time in epoch seconds
+     */
+    private final TreeMap<Long, HebCalAPI.HolidayInterval> holidays = new TreeMap<>();
+
+    /**
+     * Construct an empty store.
+     *
+     * @param provider  The provider used to fetch ranges which are not in the store yet
+     */
+    public HolidayStore(HolidayProvider provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * Return the store shared by the whole program for Penn's location.
+     *
+     * @return  The shared store
+     */
+    public static HolidayStore shared() {
+        return forLocation(Location.PENN);
+    }
+
+    /**
+     * Return the store shared by the whole program for a location. The stores are backed by
+     * the HebCal API, unless the system property {@code chagimchelper.holidaySource} is set to
+     * "local", in which case the holidays are computed locally (see {@link LocalHolidayProvider}).
+     *
+     * @param location  The location
+     * @return          The shared store for the location
+     */
+    public static HolidayStore forLocation(Location location) {
+        return SHARED.computeIfAbsent(location, l -> new HolidayStore(providerFor(l)));
+    }
+
+    /**
+     * Create the provider for a location's store.
+     *
+     * @param location  The location
+     * @return          The provider
+     */
+    private static HolidayProvider providerFor(Location location) {
+        if (!LOCAL_SOURCE) {
+            return (startDate, endDate) -> HebCalAPI.getHolidays(location, startDate, endDate);
+        }
+        if (!location.hasCoordinates()) {
+            return (startDate, endDate) -> {
+                throw new HolidayException("Holidays can only be computed locally for locations with known coordinates, not " + location.geoParameters());
+            };
+        }
+        return new LocalHolidayProvider(location.latitude(), location.longitude(), location.zone());
+    }
+
+    @Override
+    public synchronized List<HebCalAPI.HolidayInterval> getHolidays(LocalDate startDate, LocalDate endDate) {
+        for (var gap : missingRanges(startDate, endDate)) {
+            fetch(gap[0], gap[1]);
+        }
+
+        long from = startDate.atStartOfDay(Utils.PENN_ZONEID).toEpochSecond();
+        long to = endDate.plusDays(1).atStartOfDay(Utils.PENN_ZONEID).toEpochSecond();
+        return new ArrayList<>(holidays.subMap(from, to).values());
+    }
+
+    /**
+     * Find the parts of a date range which have not been fetched yet.
+     *
+     * @param startDate  The first date of the range
+     * @param endDate    The last date of the range, inclusive
+     * @return           A list of [start, end] pairs (inclusive) of the missing ranges, in order
+     */
+    private List<LocalDate[]> missingRanges(LocalDate startDate, LocalDate endDate) {
+        List<LocalDate[]> rtn = new ArrayList<>();
+        LocalDate cursor = startDate;
+
+        var before = covered.floorEntry(startDate);
+        if (before != null && !before.getValue().isBefore(startDate)) {
+            cursor = before.getValue().plusDays(1);
+        }
+        for (var range : covered.subMap(startDate, false, endDate, true).entrySet()) {
+            if (cursor.isAfter(endDate)) {
+                break;
+            }
+            if (cursor.isBefore(range.getKey())) {
+                rtn.add(new LocalDate[] {cursor, range.getKey().minusDays(1)});
+            }
+            if (!range.getValue().isBefore(cursor)) {
+                cursor = range.getValue().plusDays(1);
+            }
+        }
+        if (!cursor.isAfter(endDate)) {
+            rtn.add(new LocalDate[] {cursor, endDate});
+        }
+        return rtn;
+    }
+
+    /**
+     * Fetch a missing range from the provider, and add it to the store.
+     *
+     * @param startDate  The first date of the range
+     * @param endDate    The last date of the range, inclusive
+     */
+    private void fetch(LocalDate startDate, LocalDate endDate) {
+        for (var h : provider.getHolidays(startDate.minusDays(PADDING_DAYS), endDate.plusDays(PADDING_DAYS))) {
+            // Only holidays which start inside the gap are kept. Holidays in the padding may have
+            // been cut off by the edges of the fetched range (missing their first candle lighting
+            // or their havdalah); they are fetched completely along with the range they start in.
+            LocalDate holidayStart = h.interval.start.toLocalDate();
+            if (!holidayStart.isBefore(startDate) && !holidayStart.isAfter(endDate)) {
+                holidays.put(h.interval.start.toEpochSecond(), h);
+            }
+        }
+        addCovered(startDate, endDate);
+    }
+
+    /**
+     * Mark a date range as fetched, merging it with any ranges it overlaps or touches.
+     *
+     * @param startDate  The first date of the range
+     * @param endDate    The last date of the range, inclusive
+     */
+    private void addCovered(LocalDate startDate, LocalDate endDate) {
+        var before = covered.floorEntry(startDate);
+        if (before != null && !before.getValue().isBefore(startDate.minusDays(1))) {
+            startDate = before.getKey();
+            if (before.getValue().isAfter(endDate)) {
+                endDate = before.getValue();
+            }
+        }
+        var overlapping = covered.subMap(startDate, true, endDate.plusDays(1), true);
+        for (var range : overlapping.values()) {
+            if (range.isAfter(endDate)) {
+                endDate = range;
+            }
+        }
+        overlapping.clear();
+        covered.put(startDate, endDate);
+    }
+}
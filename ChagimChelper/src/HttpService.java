@@ -0,0 +1,462 @@
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The HTTP layer shared by everything that makes requests (the HebCal API and schedule urls).
+ * All requests go through a single HTTP/2 client, so connections and TLS sessions are reused,
+ * and the number of requests in flight at once is bounded. A request stays in flight until its
+ * body has been received in full, or the body stream has been closed. Requests over the bound
+ * wait in a queue, and requests to each host can also be rate limited with a {@link TokenBucket}
+ * (see {@link #setRateLimit}); either way the request is delayed, without blocking the caller.
+ * A process which fetches urls on behalf of others can also restrict requests to public hosts
+ * (see {@link #restrictToPublicHosts}).
+ * <p>
+ * The layer is configured with the following system properties:
+ * <ul>
+ *     <li>{@code chagimchelper.http.connectTimeoutSeconds}: the connect timeout (default: 10)</li>
+ *     <li>{@code chagimchelper.http.requestTimeoutSeconds}: the timeout for receiving a
+ *         response's headers (default: 30)</li>
+ *     <li>{@code chagimchelper.http.maxInFlight}: the maximum number of requests in flight
+ *         at once (default: 16)</li>
+ *     <li>{@code chagimchelper.http.requestsPerSecond}: the rate limit for each host which
+ *         does not have its own (default: none)</li>
+ * </ul>
+ * This class cannot be constructed; it contains only static methods
+ */
+public class HttpService {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private HttpService() {}
+
+    /**
+     * The timeout for establishing a connection
+     */
+    private static final Duration CONNECT_TIMEOUT =
+            Duration.ofSeconds(Long.getLong("chagimchelper.http.connectTimeoutSeconds", 10));
+    /**
+     * The timeout for receiving a response's headers
+     */
+    private static final Duration REQUEST_TIMEOUT =
+            Duration.ofSeconds(Long.getLong("chagimchelper.http.requestTimeoutSeconds", 30));
+    /**
+     * The number of requests which may be sent before one in flight completes. Guarded by
+     * {@link #WAITING}.
+     */
+    private static int permits = Integer.getInteger("chagimchelper.http.maxInFlight", 16);
+    /**
+     * The requests waiting for a request in flight to complete, in the order they were sent
+     */
+    private static final Queue<CompletableFuture<Void>> WAITING = new ArrayDeque<>();
+
+    /**
+     * The rate limit for hosts which do not have their own, in requests per second, or 0 for none
+     */
+    private static final double DEFAULT_RATE =
+            Double.parseDouble(System.getProperty("chagimchelper.http.requestsPerSecond", "0"));
+
+    /**
+     * The rate limits of each host, keyed by host name
+     */
+    private static final Map<String, TokenBucket> RATE_LIMITS = new ConcurrentHashMap<>();
+
+    /**
+     * The most redirects followed for a single request when only public hosts may be requested
+     */
+    private static final int MAX_REDIRECTS = 5;
+
+    /**
+     * Whether requests are restricted to https urls on public hosts
+     */
+    private static volatile boolean publicHostsOnly = false;
+
+    /**
+     * The shared client. Redirects are always followed, since calendar links are often
+     * redirected (for example from http to https).
+     */
+    private static final HttpClient CLIENT = newClient(HttpClient.Redirect.ALWAYS);
+
+    /**
+     * The client used when requests are restricted to public hosts. It does not follow
+     * redirects itself, so that each redirect can be checked first. It is only created if it is
+     * needed.
+     */
+    private static class PublicClient {
+        private static final HttpClient CLIENT = newClient(HttpClient.Redirect.NEVER);
+    }
+
+    /**
+     * Create an HTTP/2 client with the connect timeout.
+     *
+     * @param redirects  The client's redirect policy
+     * @return           The client
+     */
+    private static HttpClient newClient(HttpClient.Redirect redirects) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(redirects)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .build();
+    }
+
+    /**
+     * Create a GET request builder for a url, with the default request timeout.
+     *
+     * @param url  The url to request
+     * @return     A request builder, which may be customized further
+     */
+    public static HttpRequest.Builder newRequest(URI url) {
+        return HttpRequest.newBuilder().uri(url).timeout(REQUEST_TIMEOUT).GET();
+    }
+
+    /**
+     * Set the rate limit for requests to a host, replacing any previous limit.
+     *
+     * @param host       The host name, e.g. "www.hebcal.com"
+     * @param perSecond  The number of requests allowed per second, on average
+     * @param burst      The number of requests allowed at once, after the host has been idle
+     */
+    public static void setRateLimit(String host, double perSecond, int burst) {
+        RATE_LIMITS.put(host, new TokenBucket(perSecond, burst));
+    }
+
+    /**
+     * Restrict all further requests to https urls on public hosts, including the targets of
+     * redirects (see {@link #checkPublicUrl}). This is meant for a server which fetches urls it
+     * is given, so that it cannot easily be used to make requests to its own machine or network.
+     * <p>
+     * The restriction is best-effort. Each url is checked by resolving its host, but the client
+     * resolves the host again when it connects, and the client cannot be made to connect to the
+     * checked address while keeping the url's Host header and TLS server name. Both lookups
+     * usually share the JVM's address cache, but a host whose DNS answer changes between them
+     * (DNS rebinding) can still reach a private address, so a server on a network with private
+     * services should also block them with a firewall.
+     */
+    public static void restrictToPublicHosts() {
+        publicHostsOnly = true;
+    }
+
+    /**
+     * Check that a url is an https url on a public host: every address its host resolves to
+     * must not be a loopback, link-local, private (site-local or unique local), shared
+     * (100.64.0.0/10), wildcard or multicast address. The host is resolved when the url is
+     * checked, not when it is requested, so this cannot detect DNS rebinding (see
+     * {@link #restrictToPublicHosts}).
+     *
+     * @param url  The url to check
+     * @throws IOException  If the url is not an https url on a public host, or its host cannot be resolved
+     */
+    public static void checkPublicUrl(URI url) throws IOException {
+        if (!"https".equalsIgnoreCase(url.getScheme()) || url.getHost() == null) {
+            throw new IOException("Only https urls may be requested, but got '" + url + "'");
+        }
+        for (InetAddress address : InetAddress.getAllByName(url.getHost())) {
+            if (!isPublic(address)) {
+                throw new IOException("The host of '" + url + "' is not a public address");
+            }
+        }
+    }
+
+    /**
+     * Check if an address is on the public internet.
+     *
+     * @param address  The address to check
+     * @return         True if the address is not a loopback, link-local, private, shared,
+     *                 wildcard or multicast address
+     */
+    private static boolean isPublic(InetAddress address) {
+        if (address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress()
+                || address.isSiteLocalAddress() || address.isMulticastAddress()) {
+            return false;
+        }
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet4Address) {
+            // 0.0.0.0/8 ("this network") and 100.64.0.0/10 (carrier-grade NAT)
+            return bytes[0] != 0 && !(bytes[0] == 100 && (bytes[1] & 0xc0) == 64);
+        }
+        // fc00::/7 (unique local addresses)
+        return !(address instanceof Inet6Address) || (bytes[0] & 0xfe) != 0xfc;
+    }
+
+    /**
+     * Find the rate limit for a host.
+     *
+     * @param host  The host name
+     * @return      The host's rate limit, or null if it has none
+     */
+    private static TokenBucket rateLimit(String host) {
+        TokenBucket bucket = RATE_LIMITS.get(host);
+        if (bucket == null && DEFAULT_RATE > 0) {
+            bucket = RATE_LIMITS.computeIfAbsent(host, h -> new TokenBucket(DEFAULT_RATE, (int) Math.ceil(DEFAULT_RATE)));
+        }
+        return bucket;
+    }
+
+    /**
+     * Send a request asynchronously. If the host's rate limit has been reached, the request is
+     * sent once it allows another request, without blocking the caller. If the maximum number of
+     * requests are already in flight, the request is sent once one of them completes.
+     *
+     * @param request      The request to send
+     * @param bodyHandler  The handler for the response body
+     * @param <T>          The type of the response body
+     * @return             A future which completes with the response
+     */
+    public static <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        if (publicHostsOnly) {
+            return sendPublic(request, bodyHandler, 0);
+        }
+        return sendLimited(CLIENT, request, bodyHandler);
+    }
+
+    /**
+     * Send a request to a public host asynchronously, following redirects to other public hosts.
+     * The body of a redirect response is discarded.
+     *
+     * @param request      The request to send
+     * @param bodyHandler  The handler for the body of the final response
+     * @param redirects    The number of redirects which have been followed to reach this request
+     * @param <T>          The type of the response body
+     * @return             A future which completes with the final response, or with an
+     *                     IOException if a url is not an https url on a public host
+     */
+    private static <T> CompletableFuture<HttpResponse<T>> sendPublic(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, int redirects) {
+        try {
+            checkPublicUrl(request.uri());
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        HttpResponse.BodyHandler<T> handler = info -> isRedirect(info.statusCode(), info.headers())
+                ? HttpResponse.BodySubscribers.replacing(null)
+                : bodyHandler.apply(info);
+        return sendLimited(PublicClient.CLIENT, request, handler).thenCompose(response -> {
+            if (!isRedirect(response.statusCode(), response.headers())) {
+                return CompletableFuture.completedFuture(response);
+            }
+            if (redirects >= MAX_REDIRECTS) {
+                return CompletableFuture.failedFuture(new IOException("Too many redirects from " + request.uri()));
+            }
+            URI next;
+            try {
+                next = request.uri().resolve(response.headers().firstValue("Location").orElseThrow());
+            } catch (IllegalArgumentException e) {
+                return CompletableFuture.failedFuture(new IOException("Invalid redirect from " + request.uri(), e));
+            }
+            return sendPublic(HttpRequest.newBuilder(request, (name, value) -> true).uri(next).build(), bodyHandler, redirects + 1);
+        });
+    }
+
+    /**
+     * Check if a response redirects to another url.
+     *
+     * @param status   The status code of the response
+     * @param headers  The headers of the response
+     * @return         True if the response is a redirect with a Location header
+     */
+    private static boolean isRedirect(int status, HttpHeaders headers) {
+        return (status == 301 || status == 302 || status == 303 || status == 307 || status == 308)
+                && headers.firstValue("Location").isPresent();
+    }
+
+    /**
+     * Send a request asynchronously, once the host's rate limit allows it.
+     *
+     * @param client       The client to send the request with
+     * @param request      The request to send
+     * @param bodyHandler  The handler for the response body
+     * @param <T>          The type of the response body
+     * @return             A future which completes with the response
+     */
+    private static <T> CompletableFuture<HttpResponse<T>> sendLimited(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        TokenBucket bucket = (request.uri().getHost() == null) ? null : rateLimit(request.uri().getHost());
+        long delay = (bucket == null) ? 0 : bucket.reserve();
+        if (delay > 0) {
+            return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS))
+                    .thenCompose(v -> sendNow(client, request, bodyHandler));
+        }
+        return sendNow(client, request, bodyHandler);
+    }
+
+    /**
+     * Send a request asynchronously once it may be in flight, without checking the host's rate
+     * limit. Its permit is given back once the response body has been received in full, or the
+     * body has been cancelled (for example by closing the stream of {@code ofInputStream}).
+     *
+     * @param client       The client to send the request with
+     * @param request      The request to send
+     * @param bodyHandler  The handler for the response body
+     * @param <T>          The type of the response body
+     * @return             A future which completes with the response
+     */
+    private static <T> CompletableFuture<HttpResponse<T>> sendNow(HttpClient client, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        Permit permit = new Permit();
+        return acquirePermit().thenCompose(v -> {
+            CompletableFuture<HttpResponse<T>> future;
+            try {
+                future = client.sendAsync(request, info -> new ReleasingSubscriber<>(bodyHandler.apply(info), permit));
+            } catch (RuntimeException e) {
+                permit.release();
+                throw e;
+            }
+            // Without an error the body subscriber gives the permit back; with one there may be no body
+            return future.whenComplete((response, error) -> {
+                if (error != null) {
+                    permit.release();
+                }
+            });
+        });
+    }
+
+    /**
+     * Take a permit to send a request, waiting in line if none are left.
+     *
+     * @return  A future which completes once the caller holds a permit
+     */
+    private static CompletableFuture<Void> acquirePermit() {
+        synchronized (WAITING) {
+            if (permits > 0) {
+                permits--;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            WAITING.add(waiter);
+            return waiter;
+        }
+    }
+
+    /**
+     * Give a permit back, handing it to the request which has waited longest, if any.
+     */
+    private static void releasePermit() {
+        CompletableFuture<Void> next;
+        synchronized (WAITING) {
+            next = WAITING.poll();
+            if (next == null) {
+                permits++;
+                return;
+            }
+        }
+        next.complete(null);
+    }
+
+    /**
+     * A permit held by a single request, which can be given back only once
+     */
+    private static final class Permit {
+        /**
+         * Whether the permit has been given back
+         */
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * Give the permit back, if it has not been given back already.
+         */
+        private void release() {
+            if (this.released.compareAndSet(false, true)) {
+                releasePermit();
+            }
+        }
+    }
+
+    /**
+     * A body subscriber which gives back its request's permit once the body has been received
+     * in full, has failed, or has been cancelled, and otherwise passes everything through.
+     *
+     * @param <T>  The type of the response body
+     */
+    private static final class ReleasingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        /**
+         * The subscriber which handles the body
+         */
+        private final HttpResponse.BodySubscriber<T> delegate;
+        /**
+         * The permit of the request
+         */
+        private final Permit permit;
+
+        private ReleasingSubscriber(HttpResponse.BodySubscriber<T> delegate, Permit permit) {
+            this.delegate = delegate;
+            this.permit = permit;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return this.delegate.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.delegate.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    ReleasingSubscriber.this.permit.release();
+                    subscription.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            this.delegate.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.permit.release();
+            this.delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            this.permit.release();
+            this.delegate.onComplete();
+        }
+    }
+
+    /**
+     * Send a request, and wait for the response.
+     *
+     * @param request      The request to send
+     * @param bodyHandler  The handler for the response body
+     * @param <T>          The type of the response body
+     * @return             The response
+     * @throws IOException           If the request fails or times out
+     * @throws InterruptedException  If the thread is interrupted while waiting
+     */
+    public static <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException, InterruptedException {
+        try {
+            return sendAsync(request, bodyHandler).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw new IOException("Request to " + request.uri() + " failed", e.getCause());
+        }
+    }
+}
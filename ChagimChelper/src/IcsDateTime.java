@@ -0,0 +1,130 @@
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A class for decoding the date and date-time values of a .ics file (RFC 5545 section 3.3.4
+ * and 3.3.5), which have the fixed-width forms yyyyMMdd and yyyyMMdd'T'HHmmss. The digits are
+ * read directly from the text, without a DateTimeFormatter or any intermediate strings, and
+ * the time zones named by TZID parameters are resolved once and cached.
+ * This class cannot be constructed; it contains only static methods
+ */
+public class IcsDateTime {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private IcsDateTime() {}
+
+    /**
+     * The length of a date value, yyyyMMdd
+     */
+    public static final int DATE_LENGTH = 8;
+    /**
+     * The length of a date-time value without the "Z" suffix, yyyyMMdd'T'HHmmss
+     */
+    public static final int DATE_TIME_LENGTH = 15;
+
+    /**
+     * The time zones which have already been resolved, keyed by their ids. ZoneId caches its
+     * ZoneRules, so this also avoids looking up the rules again.
+     */
+    private static final Map<String, ZoneId> zones = new ConcurrentHashMap<>();
+
+    /**
+     * Resolve a time zone id, such as the value of a TZID parameter, or "Z" for UTC.
+     *
+     * @param zoneId  The id of the time zone
+     * @return        The time zone
+     * @throws IllegalArgumentException  If the id is not a valid time zone
+     */
+    public static ZoneId zone(String zoneId) {
+        ZoneId zone = zones.get(zoneId);
+        if (zone == null) {
+            try {
+                zone = ZoneId.of(zoneId);
+            } catch (DateTimeException e) {
+                throw new IllegalArgumentException("Invalid time zone: '" + zoneId + "'", e);
+            }
+            zones.putIfAbsent(zoneId, zone);
+        }
+        return zone;
+    }
+
+    /**
+     * Decode a date value of the form yyyyMMdd.
+     *
+     * @param s      The text containing the value
+     * @param start  The index of the first character of the value
+     * @param end    The index after the last character of the value
+     * @return       The date
+     * @throws IllegalArgumentException  If the text is not a valid date
+     */
+    public static LocalDate parseDate(CharSequence s, int start, int end) {
+        if (end - start != DATE_LENGTH) {
+            throw invalid(s, start, end);
+        }
+        try {
+            return LocalDate.of(digits(s, start, 4), digits(s, start + 4, 2), digits(s, start + 6, 2));
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid date: '" + s.subSequence(start, end) + "'", e);
+        }
+    }
+
+    /**
+     * Decode a date-time value of the form yyyyMMdd'T'HHmmss. A trailing "Z" must already have
+     * been removed.
+     *
+     * @param s      The text containing the value
+     * @param start  The index of the first character of the value
+     * @param end    The index after the last character of the value
+     * @return       The local date-time
+     * @throws IllegalArgumentException  If the text is not a valid date-time
+     */
+    public static LocalDateTime parseDateTime(CharSequence s, int start, int end) {
+        if (end - start != DATE_TIME_LENGTH || s.charAt(start + DATE_LENGTH) != 'T') {
+            throw invalid(s, start, end);
+        }
+        try {
+            return LocalDateTime.of(digits(s, start, 4), digits(s, start + 4, 2), digits(s, start + 6, 2),
+                    digits(s, start + 9, 2), digits(s, start + 11, 2), digits(s, start + 13, 2));
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid date-time: '" + s.subSequence(start, end) + "'", e);
+        }
+    }
+
+    /**
+     * Read a fixed number of decimal digits.
+     *
+     * @param s      The text containing the digits
+     * @param start  The index of the first digit
+     * @param count  The number of digits
+     * @return       The value of the digits
+     * @throws IllegalArgumentException  If any of the characters is not a digit
+     */
+    private static int digits(CharSequence s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Invalid digit '" + s.charAt(i) + "' in '" + s + "'");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Create the exception thrown for a value of the wrong form.
+     *
+     * @param s      The text containing the value
+     * @param start  The index of the first character of the value
+     * @param end    The index after the last character of the value
+     * @return       The exception
+     */
+    private static IllegalArgumentException invalid(CharSequence s, int start, int end) {
+        return new IllegalArgumentException("Invalid date or date-time: '" + s.subSequence(start, end) + "'");
+    }
+}
@@ -0,0 +1,153 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A class which reads the logical lines of a .ics file from a stream of characters.
+ * Folded lines (a line break followed by a space or tab, see RFC 5545 section 3.1) are
+ * unfolded as they are read, so the whole file never has to be held in memory at once.
+ */
+public class IcsLineReader implements Closeable {
+    /**
+     * The underlying reader
+     */
+    private final Reader reader;
+    /**
+     * A buffer of characters read from the underlying reader
+     */
+    private final char[] buffer = new char[8192];
+    /**
+     * The position of the next unread character in the buffer
+     */
+    private int position = 0;
+    /**
+     * The number of valid characters in the buffer
+     */
+    private int limit = 0;
+    /**
+     * The builder used to accumulate the current line
+     */
+    private final StringBuilder line = new StringBuilder(128);
+
+    /**
+     * Construct a line reader over the given character stream.
+     *
+     * @param reader  The reader to read the .ics text from
+     */
+    public IcsLineReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Construct a line reader over the given byte stream, which is assumed to be UTF-8.
+     *
+     * @param stream  The stream to read the .ics text from
+     */
+    public IcsLineReader(InputStream stream) {
+        this(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Construct a line reader over the given file, which is assumed to be UTF-8.
+     *
+     * @param filePath  The path of the file to read
+     * @throws IOException  If the file cannot be opened
+     */
+    public IcsLineReader(Path filePath) throws IOException {
+        this(Files.newBufferedReader(filePath, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read the next unfolded line of the file.
+     *
+     * @return  The next line, without its line terminator, or null if the end of the file was reached
+     * @throws IOException  If the underlying reader throws
+     */
+    public String readLine() throws IOException {
+        line.setLength(0);
+        int c = read();
+        if (c == -1) {
+            return null;
+        }
+        while (c != -1) {
+            if (isLineBreak(c)) {
+                if (c == '\r' && peek() == '\n') {
+                    position++;
+                }
+                int next = peek();
+                if (next == ' ' || next == '\t') {
+                    // A folded line; skip the line break and the single whitespace character
+                    position++;
+                } else {
+                    return line.toString();
+                }
+            } else {
+                line.append((char) c);
+            }
+            c = read();
+        }
+        return line.toString();
+    }
+
+    /**
+     * Check if a character is a line break, using the same characters as the regex "\R"
+     *
+     * @param c  The character to check
+     * @return   True if c is a line break character
+     */
+    private static boolean isLineBreak(int c) {
+        return c == '\n' || c == '\r' || c == '\u000B' || c == '\u000C'
+                || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Read a single character, refilling the buffer if needed.
+     *
+     * @return  The character read, or -1 at the end of the stream
+     * @throws IOException  If the underlying reader throws
+     */
+    private int read() throws IOException {
+        if (position >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Return the next character without consuming it, refilling the buffer if needed.
+     *
+     * @return  The next character, or -1 at the end of the stream
+     * @throws IOException  If the underlying reader throws
+     */
+    private int peek() throws IOException {
+        if (position >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Refill the buffer from the underlying reader.
+     *
+     * @return  False if the end of the stream was reached, true otherwise
+     * @throws IOException  If the underlying reader throws
+     */
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = reader.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
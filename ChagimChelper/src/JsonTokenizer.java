@@ -0,0 +1,423 @@
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A minimal streaming (pull) tokenizer for JSON text. Values are read one at a time, directly
+ * from the underlying reader, so the document never has to be held in memory at once, and
+ * values the caller is not interested in can be skipped without allocating anything.
+ * <p>
+ * Commas and colons are consumed automatically; the caller only needs to ask for the values
+ * and names it expects, using {@link #peek()} to look at the type of the next token.
+ */
+public class JsonTokenizer {
+    /**
+     * The types of tokens in a JSON document
+     */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    /**
+     * The underlying reader
+     */
+    private final Reader reader;
+    /**
+     * A buffer of characters read from the underlying reader
+     */
+    private final char[] buffer = new char[8192];
+    /**
+     * The position of the next unread character in the buffer
+     */
+    private int position = 0;
+    /**
+     * The number of valid characters in the buffer
+     */
+    private int limit = 0;
+    /**
+     * The builder used to accumulate strings
+     */
+    private final StringBuilder builder = new StringBuilder();
+    /**
+     * For each level of nesting, whether it is an object (as opposed to an array)
+     */
+    private boolean[] inObject = new boolean[32];
+    /**
+     * The current level of nesting; 0 is the top level of the document
+     */
+    private int depth = 0;
+    /**
+     * Whether the next token in the current object is a name (as opposed to a value)
+     */
+    private boolean expectingName = false;
+    /**
+     * The type of the next token, or null if it has not been peeked yet
+     */
+    private Token peeked = null;
+
+    /**
+     * Construct a tokenizer over the given JSON text.
+     *
+     * @param reader  The reader to read the JSON text from
+     */
+    public JsonTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Return the type of the next token, without consuming it.
+     *
+     * @return  The type of the next token
+     * @throws IOException  If the underlying reader throws, or the JSON is malformed
+     */
+    public Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int c = nextNonWhitespace();
+        if (c == ',') {
+            c = nextNonWhitespace();
+        }
+        if (c == -1) {
+            return peeked = Token.END_DOCUMENT;
+        }
+        if (depth > 0 && inObject[depth] && expectingName && c != '}') {
+            if (c != '"') {
+                throw syntaxError("Expected a name");
+            }
+            position--;
+            return peeked = Token.NAME;
+        }
+        position--;
+        return peeked = switch (c) {
+            case '{' -> Token.BEGIN_OBJECT;
+            case '}' -> Token.END_OBJECT;
+            case '[' -> Token.BEGIN_ARRAY;
+            case ']' -> Token.END_ARRAY;
+            case '"' -> Token.STRING;
+            case 't', 'f' -> Token.BOOLEAN;
+            case 'n' -> Token.NULL;
+            default -> {
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    yield Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+            }
+        };
+    }
+
+    /**
+     * Consume the start of an object.
+     *
+     * @throws IOException  If the underlying reader throws, or the next token is not the start of an object
+     */
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        position++;
+        push(true);
+    }
+
+    /**
+     * Consume the end of an object.
+     *
+     * @throws IOException  If the underlying reader throws, or the next token is not the end of an object
+     */
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        position++;
+        pop();
+    }
+
+    /**
+     * Consume the start of an array.
+     *
+     * @throws IOException  If the underlying reader throws, or the next token is not the start of an array
+     */
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        position++;
+        push(false);
+    }
+
+    /**
+     * Consume the end of an array.
+     *
+     * @throws IOException  If the underlying reader throws, or the next token is not the end of an array
+     */
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        position++;
+        pop();
+    }
+
+    /**
+     * Check if the current object or array has more elements.
+     *
+     * @return  True if the next token is not the end of an object or array
+     * @throws IOException  If the underlying reader throws, or the JSON is malformed
+     */
+    public boolean hasNext() throws IOException {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+    }
+
+    /**
+     * Consume the name of the next key-value pair in an object.
+     *
+     * @return  The name
+     * @throws IOException  If the underlying reader throws, or the next token is not a name
+     */
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        String name = readString();
+        if (nextNonWhitespace() != ':') {
+            throw syntaxError("Expected ':'");
+        }
+        expectingName = false;
+        return name;
+    }
+
+    /**
+     * Consume a string, number, boolean or null value, and return it as a string.
+     *
+     * @return  The value as a string, or null if the value was null
+     * @throws IOException  If the underlying reader throws, or the next token is not a primitive value
+     */
+    public String nextString() throws IOException {
+        Token t = peek();
+        String rtn = switch (t) {
+            case STRING -> readString();
+            case NUMBER, BOOLEAN -> readLiteral();
+            case NULL -> {
+                readLiteral();
+                yield null;
+            }
+            default -> throw syntaxError("Expected a value but was " + t);
+        };
+        valueConsumed();
+        return rtn;
+    }
+
+    /**
+     * Skip the next value, including any objects or arrays nested inside it. Strings that are
+     * skipped are not decoded.
+     *
+     * @throws IOException  If the underlying reader throws, or the JSON is malformed
+     */
+    public void skipValue() throws IOException {
+        int startDepth = depth;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT -> beginObject();
+                case BEGIN_ARRAY -> beginArray();
+                case END_OBJECT -> endObject();
+                case END_ARRAY -> endArray();
+                case NAME -> nextName();
+                case STRING -> {
+                    skipString();
+                    valueConsumed();
+                }
+                case NUMBER, BOOLEAN, NULL -> {
+                    readLiteral();
+                    valueConsumed();
+                }
+                case END_DOCUMENT -> throw syntaxError("Unexpected end of document");
+            }
+        } while (depth > startDepth);
+    }
+
+    /**
+     * Throw an exception if the next token is not of the given type.
+     *
+     * @param expected  The expected type of the next token
+     * @throws IOException  If the underlying reader throws, or the next token is of a different type
+     */
+    private void expect(Token expected) throws IOException {
+        Token t = peek();
+        if (t != expected) {
+            throw syntaxError("Expected " + expected + " but was " + t);
+        }
+        peeked = null;
+    }
+
+    /**
+     * Enter a new object or array.
+     *
+     * @param isObject  True for an object, false for an array
+     */
+    private void push(boolean isObject) {
+        if (++depth == inObject.length) {
+            inObject = java.util.Arrays.copyOf(inObject, inObject.length * 2);
+        }
+        inObject[depth] = isObject;
+        expectingName = isObject;
+    }
+
+    /**
+     * Leave the current object or array; the object or array itself counts as a consumed value.
+     */
+    private void pop() {
+        depth--;
+        valueConsumed();
+    }
+
+    /**
+     * Update the state after a value has been consumed.
+     */
+    private void valueConsumed() {
+        peeked = null;
+        expectingName = depth > 0 && inObject[depth];
+    }
+
+    /**
+     * Read a string token, decoding any escape sequences.
+     *
+     * @return  The decoded string
+     * @throws IOException  If the underlying reader throws, or the string is malformed
+     */
+    private String readString() throws IOException {
+        peeked = null;
+        read(); // The opening quote
+        builder.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw syntaxError("Unterminated string");
+            } else if (c == '"') {
+                return builder.toString();
+            } else if (c == '\\') {
+                int e = read();
+                switch (e) {
+                    case '"', '\\', '/' -> builder.append((char) e);
+                    case 'b' -> builder.append('\b');
+                    case 'f' -> builder.append('\f');
+                    case 'n' -> builder.append('\n');
+                    case 'r' -> builder.append('\r');
+                    case 't' -> builder.append('\t');
+                    case 'u' -> {
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(read(), 16);
+                            if (digit < 0) {
+                                throw syntaxError("Invalid unicode escape");
+                            }
+                            code = (code << 4) | digit;
+                        }
+                        builder.append((char) code);
+                    }
+                    default -> throw syntaxError("Invalid escape sequence");
+                }
+            } else {
+                builder.append((char) c);
+            }
+        }
+    }
+
+    /**
+     * Skip a string token without decoding it.
+     *
+     * @throws IOException  If the underlying reader throws, or the string is unterminated
+     */
+    private void skipString() throws IOException {
+        peeked = null;
+        read(); // The opening quote
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw syntaxError("Unterminated string");
+            } else if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                read();
+            }
+        }
+    }
+
+    /**
+     * Read a number, boolean or null token.
+     *
+     * @return  The text of the token
+     * @throws IOException  If the underlying reader throws
+     */
+    private String readLiteral() throws IOException {
+        peeked = null;
+        builder.setLength(0);
+        while (true) {
+            int c = peekChar();
+            if (c == -1 || c == ',' || c == '}' || c == ']' || c == ':' || Character.isWhitespace(c)) {
+                return builder.toString();
+            }
+            builder.append((char) c);
+            position++;
+        }
+    }
+
+    /**
+     * Read characters until one that is not whitespace is found.
+     *
+     * @return  The first character that is not whitespace, or -1 at the end of the stream
+     * @throws IOException  If the underlying reader throws
+     */
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    /**
+     * Read a single character, refilling the buffer if needed.
+     *
+     * @return  The character read, or -1 at the end of the stream
+     * @throws IOException  If the underlying reader throws
+     */
+    private int read() throws IOException {
+        if (position >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Return the next character without consuming it, refilling the buffer if needed.
+     *
+     * @return  The next character, or -1 at the end of the stream
+     * @throws IOException  If the underlying reader throws
+     */
+    private int peekChar() throws IOException {
+        if (position >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Refill the buffer from the underlying reader. Only called when every character in the
+     * buffer has been consumed, so a single character can always be "unread" afterwards.
+     *
+     * @return  False if the end of the stream was reached, true otherwise
+     * @throws IOException  If the underlying reader throws
+     */
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = reader.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    /**
+     * Create an exception describing malformed JSON.
+     *
+     * @param message  A description of the problem
+     * @return         The exception
+     */
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed JSON: " + message);
+    }
+}
@@ -0,0 +1,199 @@
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A minimal streaming writer for JSON text, the counterpart of {@link JsonTokenizer}.
+ * Values are written directly to the underlying writer as they are given, and commas
+ * and colons are inserted automatically. Several values may be written at the top level
+ * (for example, one per line for newline-delimited JSON).
+ */
+public class JsonWriter {
+    /**
+     * The underlying writer
+     */
+    private final Writer out;
+    /**
+     * For each level of nesting, whether a value has already been written at that level
+     */
+    private boolean[] hasValue = new boolean[32];
+    /**
+     * The current level of nesting; 0 is the top level of the document
+     */
+    private int depth = 0;
+    /**
+     * Whether a name has just been written, so the next value should not be preceded by a comma
+     */
+    private boolean afterName = false;
+
+    /**
+     * Construct a writer which writes JSON text to the given writer.
+     *
+     * @param out  The writer to write to
+     */
+    public JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Begin an object.
+     *
+     * @return  This writer
+     * @throws IOException  If the underlying writer throws
+     */
+    public JsonWriter beginObject() throws IOException {
+        beforeValue();
+        out.write('{');
+        push();
+        return this;
+    }
+
+    /**
+     * End the current object.
+     *
+     * @return  This writer
+     * @throws IOException  If the underlying writer throws
+     */
+    public JsonWriter endObject() throws IOException {
+        depth--;
+        out.write('}');
+        return this;
+    }
+
+    /**
+     * Begin an array.
+     *
+     * @return  This writer
+     * @throws IOException  If the underlying writer throws
+     */
+    public JsonWriter beginArray() throws IOException {
+        beforeValue();
+        out.write('[');
+        push();
+        return this;
+    }
+
+    /**
+     * End the current array.
+     *
+     * @return  This writer
+     * @throws IOException  If the underlying writer throws
+     */
+    public JsonWriter endArray() throws IOException {
+        depth--;
+        out.write(']');
+        return this;
+    }
+
+    /**
+     * Write the name of the next key-value pair in the current object.
+     *
+     * @param name  The name
+     * @return      This writer
+     * @throws IOException  If the underlying writer throws
+     */
+    public JsonWriter name(String name) throws IOException {
+        beforeValue();
+        writeString(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * Write a string value, or null.
+     *
+     * @param value  The value to write
+     * @return       This writer
+     * @throws IOException  If the underlying writer throws
+     */
+    public JsonWriter value(String value) throws IOException {
+        beforeValue();
+        if (value == null) {
+            out.write("null");
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    /**
+     * Write a number value.
+     *
+     * @param value  The value to write
+     * @return       This writer
+     * @throws IOException  If the underlying writer throws
+     */
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Write a boolean value.
+     *
+     * @param value  The value to write
+     * @return       This writer
+     * @throws IOException  If the underlying writer throws
+     */
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Write a comma if needed before a value or name.
+     *
+     * @throws IOException  If the underlying writer throws
+     */
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0 && hasValue[depth]) {
+            out.write(',');
+        }
+        hasValue[depth] = true;
+    }
+
+    /**
+     * Enter a new object or array.
+     */
+    private void push() {
+        if (++depth == hasValue.length) {
+            hasValue = java.util.Arrays.copyOf(hasValue, hasValue.length * 2);
+        }
+        hasValue[depth] = false;
+    }
+
+    /**
+     * Write a quoted string, escaping any characters which cannot appear in JSON strings.
+     *
+     * @param s  The string to write
+     * @throws IOException  If the underlying writer throws
+     */
+    private void writeString(String s) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String escape = switch (c) {
+                case '"' -> "\\\"";
+                case '\\' -> "\\\\";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                case '\t' -> "\\t";
+                default -> (c < 0x20 || c == '\u2028' || c == '\u2029') ? String.format("\\u%04x", (int) c) : null;
+            };
+            if (escape != null) {
+                out.write(s, start, i - start);
+                out.write(escape);
+                start = i + 1;
+            }
+        }
+        out.write(s, start, s.length() - start);
+        out.write('"');
+    }
+}
@@ -0,0 +1,283 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * A holiday provider which computes the holidays locally, without the HebCal API.
+ * Yom tov dates come from {@link HebrewCalendar}, and candle lighting and havdalah times from
+ * {@link SolarCalculator}, using the same defaults as the HebCal API: candle lighting 18 minutes
+ * before sunset, and havdalah when the sun is 8.5 degrees below the horizon.
+ * <p>
+ * As with the API, each holiday runs from the candle lighting before a run of consecutive
+ * Shabbat and yom tov days until the havdalah after it. Far from the equator the sun may not get
+ * 8.5 degrees below the horizon in summer, in which case havdalah is a fixed time after sunset.
+ */
+public class LocalHolidayProvider implements HolidayProvider {
+    /**
+     * The latitude of Penn's zip code (19104), in degrees north
+     */
+    public static final double PENN_LATITUDE = 39.96;
+    /**
+     * The longitude of Penn's zip code (19104), in degrees east
+     */
+    public static final double PENN_LONGITUDE = -75.19;
+
+    /**
+     * How many minutes before sunset candle lighting is
+     */
+    private static final int CANDLE_LIGHTING_MINUTES = 18;
+    /**
+     * The zenith angle of the sun at havdalah (8.5 degrees below the horizon)
+     */
+    private static final double HAVDALAH_ZENITH = 98.5;
+    /**
+     * How many minutes after sunset havdalah is, on dates when the sun does not reach {@link #HAVDALAH_ZENITH}
+     */
+    private static final int HAVDALAH_FALLBACK_MINUTES = 50;
+    /**
+     * The list of recorded HebCal API responses checked by {@link #main} if no others are given
+     */
+    private static final String DEFAULT_FIXTURES = "ChagimChelper/fixtures/hebcal/fixtures.txt";
+
+    /**
+     * The latitude of the location, in degrees north
+     */
+    private final double latitude;
+    /**
+     * The longitude of the location, in degrees east
+     */
+    private final double longitude;
+    /**
+     * The timezone of the location
+     */
+    private final ZoneId zone;
+
+    /**
+     * Construct a provider for the given location.
+     *
+     * @param latitude   The latitude of the location, in degrees north
+     * @param longitude  The longitude of the location, in degrees east
+     * @param zone       The timezone of the location
+     */
+    public LocalHolidayProvider(double latitude, double longitude, ZoneId zone) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.zone = zone;
+    }
+
+    /**
+     * Construct a provider for Penn's location.
+     */
+    public LocalHolidayProvider() {
+        this(PENN_LATITUDE, PENN_LONGITUDE, Utils.PENN_ZONEID);
+    }
+
+    /**
+     * Get all the holidays between the given start and end dates. As with the HebCal API, a
+     * holiday is included if a candle lighting falls between the dates, and holidays whose
+     * havdalah falls after the end date are given no end time (see {@link HebCalAPI.HolidayInterval}).
+     *
+     * @param startDate  The starting date, assumed to be in the location's timezone
+     * @param endDate    The ending date, assumed to be in the location's timezone
+     * @return           A list of holidays in the given time period, in chronological order
+     * @throws HolidayException  If the sun does not set at the location on a date candles are lit
+     */
+    @Override
+    public List<HebCalAPI.HolidayInterval> getHolidays(LocalDate startDate, LocalDate endDate) {
+        TreeMap<LocalDate, String> yomTov = HebrewCalendar.yomTovDays(startDate, endDate.plusDays(7));
+        List<HebCalAPI.HolidayInterval> rtn = new ArrayList<>();
+
+        LocalDate date = startDate;
+        while (!date.isAfter(endDate)) {
+            // Candles are lit on every day which is followed by Shabbat or yom tov
+            if (!isBlocked(date.plusDays(1), yomTov)) {
+                date = date.plusDays(1);
+                continue;
+            }
+
+            LocalDate last = date.plusDays(1);
+            while (isBlocked(last.plusDays(1), yomTov)) {
+                last = last.plusDays(1);
+            }
+
+            List<String> eventNames = new ArrayList<>();
+            LocalDate lastName = last.isAfter(endDate) ? endDate : last;
+            if (lastName.isAfter(date)) {
+                eventNames.addAll(yomTov.subMap(date, false, lastName, true).values());
+            }
+
+            // If the range starts partway through the holiday, the first candle lighting in the
+            // range is on the night between two days of yom tov, which is after nightfall
+            // (unless it is the start of Shabbat).
+            ZonedDateTime start = (isBlocked(date, yomTov) && date.getDayOfWeek() != DayOfWeek.FRIDAY)
+                    ? havdalah(date)
+                    : candleLighting(date);
+            ZonedDateTime end = last.isAfter(endDate) ? null : havdalah(last);
+            rtn.add(new HebCalAPI.HolidayInterval(eventNames, start, end));
+
+            date = last.plusDays(1);
+        }
+        return rtn;
+    }
+
+    /**
+     * Check if a date is Shabbat or yom tov.
+     *
+     * @param date    The date to check
+     * @param yomTov  The yom tov days around the date
+     * @return        True if work is forbidden on that date
+     */
+    private static boolean isBlocked(LocalDate date, TreeMap<LocalDate, String> yomTov) {
+        return date.getDayOfWeek() == DayOfWeek.SATURDAY || yomTov.containsKey(date);
+    }
+
+    /**
+     * Calculate the candle lighting time on a date.
+     *
+     * @param date  The date (the day before Shabbat or yom tov)
+     * @return      The candle lighting time, rounded to the nearest minute
+     * @throws HolidayException  If the sun does not set on that date
+     */
+    ZonedDateTime candleLighting(LocalDate date) {
+        Instant sunset = sunset(date);
+        return roundToMinute(sunset.minus(CANDLE_LIGHTING_MINUTES, ChronoUnit.MINUTES));
+    }
+
+    /**
+     * Calculate the havdalah time on a date.
+     *
+     * @param date  The date (the last day of Shabbat or yom tov)
+     * @return      The havdalah time, rounded to the nearest minute
+     * @throws HolidayException  If the sun does not set on that date
+     */
+    ZonedDateTime havdalah(LocalDate date) {
+        Instant havdalah = SolarCalculator.setting(date, latitude, longitude, HAVDALAH_ZENITH);
+        if (havdalah == null) {
+            havdalah = sunset(date).plus(HAVDALAH_FALLBACK_MINUTES, ChronoUnit.MINUTES);
+        }
+        return roundToMinute(havdalah);
+    }
+
+    /**
+     * Calculate the time of sunset on a date.
+     *
+     * @param date  The date
+     * @return      The instant of sunset
+     * @throws HolidayException  If the sun does not set on that date
+     */
+    private Instant sunset(LocalDate date) {
+        Instant sunset = SolarCalculator.sunset(date, latitude, longitude);
+        if (sunset == null) {
+            throw new HolidayException("The sun does not set at latitude " + latitude + " on " + date
+                    + ", so the holiday times cannot be calculated");
+        }
+        return sunset;
+    }
+
+    /**
+     * Round an instant to the nearest minute, and express it in this location's timezone.
+     *
+     * @param instant  The instant to round
+     * @return         The rounded date-time
+     */
+    private ZonedDateTime roundToMinute(Instant instant) {
+        return instant.plusSeconds(30).truncatedTo(ChronoUnit.MINUTES).atZone(zone);
+    }
+
+    /**
+     * Compare the holidays computed locally with recorded HebCal API responses, and print any
+     * differences. Times are allowed to differ by up to a minute, to allow for rounding.
+     *
+     * @param args  Triples of the path to a recorded JSON response, and the start and end dates
+     *              (in ISO format) it was requested with. With no arguments, the responses listed
+     *              in ChagimChelper/fixtures/hebcal/fixtures.txt are checked (run from the
+     *              repository root). The exit status is 1 if any differences are found.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            args = readFixtures(Path.of(DEFAULT_FIXTURES));
+        }
+        if (args.length == 0 || args.length % 3 != 0) {
+            System.out.println("Usage: [<recorded response .json> <start date> <end date> ...]");
+            System.exit(1);
+        }
+        LocalHolidayProvider provider = new LocalHolidayProvider();
+        int differences = 0;
+        for (int i = 0; i < args.length; i += 3) {
+            List<HebCalAPI.HolidayInterval> recorded;
+            try (Reader reader = Files.newBufferedReader(Path.of(args[i]), StandardCharsets.UTF_8)) {
+                recorded = HebCalAPI.parseResponse(reader);
+            } catch (IOException e) {
+                System.out.println("An error occurred while reading the recorded response " + args[i]);
+                System.exit(1);
+                throw new RuntimeException("System.exit() did not exit");
+            }
+            List<HebCalAPI.HolidayInterval> computed = provider.getHolidays(LocalDate.parse(args[i + 1]), LocalDate.parse(args[i + 2]));
+
+            for (int j = 0; j < Math.max(recorded.size(), computed.size()); j++) {
+                var r = (j < recorded.size()) ? recorded.get(j) : null;
+                var c = (j < computed.size()) ? computed.get(j) : null;
+                if (r == null || c == null || !r.eventName.equals(c.eventName)
+                        || !withinAMinute(r.interval.start, c.interval.start)
+                        || !withinAMinute(r.interval.end, c.interval.end)) {
+                    System.out.println(args[i] + ": recorded " + r + ", computed " + c);
+                    differences++;
+                }
+            }
+        }
+        System.out.println(differences + " difference(s) found");
+        if (differences > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Read a list of recorded responses. Each line which is not blank or a comment (starting
+     * with '#') holds the path to a response, relative to the list, and the start and end dates
+     * it was requested with, separated by whitespace.
+     *
+     * @param list  The path to the list
+     * @return      Triples of the path to a response, and its start and end dates, as taken by {@link #main}
+     */
+    private static String[] readFixtures(Path list) {
+        List<String> rtn = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(list, StandardCharsets.UTF_8)) {
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields.length != 3) {
+                    System.out.println("Invalid line in " + list + ": '" + line + "'");
+                    System.exit(1);
+                }
+                rtn.add(list.resolveSibling(fields[0]).toString());
+                rtn.add(fields[1]);
+                rtn.add(fields[2]);
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while reading the list of recorded responses " + list);
+            System.exit(1);
+        }
+        return rtn.toArray(String[]::new);
+    }
+
+    /**
+     * Check if two date-times are at most a minute apart.
+     *
+     * @param a  The first date-time
+     * @param b  The second date-time
+     * @return   True if the date-times are at most a minute apart
+     */
+    private static boolean withinAMinute(ZonedDateTime a, ZonedDateTime b) {
+        return Math.abs(Duration.between(a, b).toSeconds()) <= 60;
+    }
+}
@@ -0,0 +1,59 @@
+import java.time.ZoneId;
+
+/**
+ * A location to find holiday times for, such as a campus. Candle lighting and havdalah times
+ * depend on where the holiday is observed, so holidays are always fetched for a location.
+ *
+ * @param geoParameters  The location parameters passed to the HebCal API, e.g. "geo=zip&zip=19104"
+ * @param latitude       The latitude of the location in degrees north, or NaN if it is not known
+ * @param longitude      The longitude of the location in degrees east, or NaN if it is not known
+ * @param zone           The timezone of the location
+ */
+public record Location(String geoParameters, double latitude, double longitude, ZoneId zone) {
+    /**
+     * Penn's location (zip code 19104)
+     */
+    public static final Location PENN = new Location("geo=zip&zip=19104",
+            LocalHolidayProvider.PENN_LATITUDE, LocalHolidayProvider.PENN_LONGITUDE, Utils.PENN_ZONEID);
+
+    /**
+     * Create a location from a US zip code. Its coordinates are not known, so holidays for it
+     * can only be fetched from the HebCal API.
+     *
+     * @param zip  The zip code
+     * @return     The location
+     * @throws IllegalArgumentException  If the zip code is not five digits
+     */
+    public static Location zip(String zip) {
+        if (!CachedRegex.ZIP_CODE.matcher(zip).matches()) {
+            throw new IllegalArgumentException("Invalid zip code: '" + zip + "'");
+        }
+        if (zip.equals("19104")) {
+            return PENN;
+        }
+        return new Location("geo=zip&zip=" + zip, Double.NaN, Double.NaN, Utils.PENN_ZONEID);
+    }
+
+    /**
+     * Create a location from its coordinates.
+     *
+     * @param latitude   The latitude of the location, in degrees north
+     * @param longitude  The longitude of the location, in degrees east
+     * @param zone       The timezone of the location
+     * @return           The location
+     */
+    public static Location coordinates(double latitude, double longitude, ZoneId zone) {
+        return new Location("geo=pos&latitude=" + latitude + "&longitude=" + longitude + "&tzid=" + zone.getId(),
+                latitude, longitude, zone);
+    }
+
+    /**
+     * Check if the coordinates of this location are known, so its holidays can be computed
+     * locally (see {@link LocalHolidayProvider}).
+     *
+     * @return  True if the latitude and longitude are known
+     */
+    public boolean hasCoordinates() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+}
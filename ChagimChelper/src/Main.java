@@ -1,11 +1,13 @@
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
@@ -19,9 +21,38 @@ public class Main {
     /**
      * The entry point to the program
      *
-     * @param args  Does not accept any command-line arguments
+     * @param args  No arguments to run interactively, "--batch" followed by the batch
+     *              arguments described in {@link BatchRunner#main(String[])},
+     *              "--serve" optionally followed by a port to run the web service in
+     *              {@link ConflictServer}, "--headless" followed by the arguments described in
+     *              {@link HeadlessRunner#main(String[])} to stream the conflicts of schedules
+     *              given on the command line or standard input as NDJSON or CSV,
+     *              "--clear-holiday-cache" to empty the on-disk
+     *              holiday cache, or "--clear-schedule-cache" to empty the on-disk cache of
+     *              downloaded schedules and the snapshots of parsed schedules
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            ConflictServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--headless")) {
+            HeadlessRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--clear-holiday-cache")) {
+            HolidayCache.invalidateAll();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--clear-schedule-cache")) {
+            ScheduleCache.invalidateAll();
+            ScheduleSnapshot.invalidateAll();
+            return;
+        }
         try {
             Main mainObj = new Main();
             System.out.println("Welcome to Chagim Chelper: a tool to help you track which classes you may " +
@@ -37,14 +68,15 @@ public class Main {
             } else {
                 System.out.print("Okay, thank you for using Chagim Chelper!");
             }
+        } catch (ScheduleException | HolidayException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
         } catch (Exception e) {
             System.out.print("An error occurred. Please try again.");
             System.exit(1);
         }
     }
 
-    private record Conflict(HebCalAPI.HolidayInterval holiday, List<Schedule.CourseMeeting> courseMeetings) {}
-
     /**
      * Prompt the user for their calendar, then download the relevant holiday information
      * from the HebCal API, and finally calculate the conflicts in the schedule.
@@ -69,33 +101,39 @@ public class Main {
             this.schedule = new Schedule(filepath);
         }
 
-        this.holidays = HebCalAPI.getHolidays(schedule.startDate.minusDays(7), schedule.endDate.plusDays(7));
+        this.holidays = HolidayIndex.shared().getHolidays(schedule.startDate.minusDays(7), schedule.endDate.plusDays(7));
 
-        this.conflicts = new ArrayList<>();
-        for (var h : holidays) {
-            var newConflicts = schedule.meetingsInInterval(h.interval);
-            if (!newConflicts.isEmpty()) {
-                this.conflicts.add(new Conflict(h, newConflicts));
-            }
-        }
+        this.conflicts = ConflictEngine.findConflicts(schedule, holidays);
     }
 
     /**
      * Print the conflicts to the terminal.
      */
     private void printConflicts() {
+        PrintWriter out = new PrintWriter(System.out);
+        printConflicts(this.conflicts, out);
+        out.flush();
+    }
+
+    /**
+     * Print a list of conflicts, one sentence per conflicting course meeting.
+     *
+     * @param conflicts  The conflicts to print
+     * @param out        The writer to print to
+     */
+    static void printConflicts(List<Conflict> conflicts, PrintWriter out) {
         for (var c : conflicts) {
             if (!c.courseMeetings().isEmpty()) {
-                System.out.println();
+                out.println();
             }
             for (var m: c.courseMeetings()) {
-                System.out.println("The course " + m.courseName() + " meeting from " + timeSlotString(m.meetingTime())
+                out.println("The course " + m.courseName() + " meeting from " + timeSlotString(m.meetingTime())
                         + " on " + dateSlotString(m.meetingTime()) + " conflicts with the holiday of " + c.holiday().eventName + ".");
             }
         }
-        System.out.println();
+        out.println();
         if (conflicts.isEmpty()) {
-            System.out.println("There were no conflicts with your schedule");
+            out.println("There were no conflicts with your schedule");
         }
     }
 
@@ -107,67 +145,24 @@ public class Main {
     private void generateEmails() {
         System.out.println("Please enter your name: ");
         String name = (new Scanner(System.in)).nextLine();
-        FileWriter fileWriter;
+        EmailTemplate template = emailTemplate();
+        Writer fileWriter;
         try {
-            fileWriter = new FileWriter("chagimChelperEmails.txt");
+            fileWriter = Files.newBufferedWriter(Path.of("chagimChelperEmails.txt"), StandardCharsets.UTF_8);
         } catch (IOException e) {
             System.out.println("An error occurred while opening the email file 'chagimChelperEmails.txt' for writing.");
             System.exit(1);
             throw new RuntimeException("System.exit() did not exit");
         }
 
-        try {
-
-            HashMap<String, List<String>> conflictsPerCourse = new HashMap<>();
+        try (fileWriter) {
             for (var conf : this.conflicts) {
-                if (!conf.courseMeetings.isEmpty()) {
+                if (!conf.courseMeetings().isEmpty()) {
                     System.out.println();
                 }
-                for (var c : conf.courseMeetings()) {
-                    String course = c.courseName();
-                    if (conflictsPerCourse.containsKey(course)) {
-                        List<String> existingConflicts = conflictsPerCourse.get(course);
-                        existingConflicts.add("I will be missing class on " + dateSlotString(c.meetingTime()) + " for the holiday of " + conf.holiday().eventName + ".");
-                        conflictsPerCourse.put(course, existingConflicts);
-                    } else {
-                        List<String> newConflictList = new ArrayList<>();
-                        newConflictList.add("I will be missing class on " + dateSlotString(c.meetingTime()) + " for the holiday of " + conf.holiday().eventName + ".");
-                        conflictsPerCourse.put(course, newConflictList);
-                    }
-                }
-            }
-
-            for (String course : conflictsPerCourse.keySet()) {
-
-                // See if class should be plural
-                String c = "class";
-                if (conflictsPerCourse.get(course).size() > 1) {
-                    c += "es";
-                }
-                fileWriter.write("\n\n -------" + course + "-------\n");
-                fileWriter.write(" \nDear Professor, \n\n");
-                fileWriter.write("I hope this email finds you well. I am enrolled to take " + course + " with you this semester.\n\n");
-                fileWriter.write("I wanted to reach out to you now to let you know that I am an observant Jew and will have to miss some " + c + " due to conflicts with Jewish holidays.\n\n");
-                for (int i = 0; i < conflictsPerCourse.get(course).size(); i++) {
-                    fileWriter.write(conflictsPerCourse.get(course).get(i));
-                    fileWriter.write("\n");
-                }
-
-                fileWriter.write("""
-
-                        I'm looking forward to taking your class, and hope these absences will not be too much of an inconvenience.
-
-                        Thank you so much for your understanding!
-                        """);
-
-                if (name.length() > 0) {
-                    fileWriter.write("\nBest, \n" + name);
-                }
-
             }
+            template.write(this.conflicts, name, fileWriter);
             System.out.print("Email(s) generated into the file chagimChelperEmails.txt.\nThank you for using our tool!");
-
-            fileWriter.close();
         } catch (IOException e) {
             System.out.println("An error occurred while writing to the email file 'chagimChelperEmails.txt'");
             System.exit(1);
@@ -175,6 +170,50 @@ public class Main {
         }
     }
 
+    /**
+     * Return the email template to use: the file named by the system property
+     * {@code chagimchelper.email.template} if it is set, and {@link EmailTemplate#DEFAULT} otherwise.
+     *
+     * @return  The compiled template
+     */
+    static EmailTemplate emailTemplate() {
+        String path = System.getProperty("chagimchelper.email.template");
+        if (path == null) {
+            return EmailTemplate.DEFAULT;
+        }
+        try {
+            return EmailTemplate.load(Path.of(path));
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("An error occurred while reading the email template '" + path + "': " + e.getMessage());
+            System.exit(1);
+            throw new RuntimeException("System.exit() did not exit");
+        }
+    }
+
+
+    /**
+     * Write an email for each course with conflicts, listing the classes that will be missed
+     * (see {@link EmailTemplate#DEFAULT}).
+     *
+     * @param conflicts  The conflicts to write emails for
+     * @param name       The name to sign the emails with, or an empty string to leave them unsigned
+     * @param out        The writer to write the emails to
+     * @throws IOException  If the underlying writer throws
+     */
+    static void writeEmails(List<Conflict> conflicts, String name, Writer out) throws IOException {
+        EmailTemplate.DEFAULT.write(conflicts, name, out);
+    }
+
+
+    /**
+     * The format of the times of course meetings, e.g. "11:45 AM". For 24-hour clock format
+     * instead of am/pm, replace "hh:mm a" with "HH:mm"
+     */
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("hh:mm a");
+    /**
+     * The format of the dates of course meetings, e.g. "04/30"
+     */
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM/dd");
 
     /**
      * Format an interval as a time range, e.g. "11:45 AM to 12:30 PM"
@@ -182,10 +221,8 @@ public class Main {
      * @param interval  The interval to format. Only time information is taken into account
      * @return          The formatted string.
      */
-    private String timeSlotString(Interval interval) {
-        // For 24-hour clock format instead of am/pm, replace "hh:mm a" with "HH:mm"
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("hh:mm a");
-        return dtf.format(interval.start) + " to " + dtf.format(interval.end);
+    private static String timeSlotString(Interval interval) {
+        return TIME_FORMAT.format(interval.start) + " to " + TIME_FORMAT.format(interval.end);
     }
 
     /**
@@ -195,9 +232,8 @@ public class Main {
      * @return          The formatted string.
      */
     private static String dateSlotString(Interval interval) {
-        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("MM/dd");
-        String startDateString = dtf.format(interval.start);
-        String endDateString = dtf.format(interval.end);
+        String startDateString = DATE_FORMAT.format(interval.start);
+        String endDateString = DATE_FORMAT.format(interval.end);
         if (startDateString.equals(endDateString)) {
             return startDateString;
         } else {
@@ -0,0 +1,337 @@
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+/**
+ * A compact table of the expanded meetings of a schedule's courses. Rather than an
+ * {@link Interval} of two ZonedDateTimes per meeting, each row holds only the start and end of
+ * the meeting in epoch seconds and the index of its course, which is about 20 bytes per meeting.
+ * The rows can be stored in primitive arrays, or off the heap in a direct ByteBuffer.
+ * <p>
+ * The rows are sorted by start time, so the meetings during a span of time can be found with a
+ * binary search. Start times are rounded down and end times are rounded up to the second, so a
+ * row never looks shorter than its meeting; {@link #meeting(int)} rebuilds the exact meeting.
+ */
+public class MeetingTable {
+    /**
+     * The number of bytes each row takes up in a ByteBuffer: the start, the end and the course
+     */
+    private static final int ROW_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES;
+
+    /**
+     * The schedule's courses, indexed by course id
+     */
+    private final List<Schedule.Course> courses;
+    /**
+     * The name of each course, indexed by course id. Courses with the same name share the same
+     * string.
+     */
+    private final String[] courseNames;
+    /**
+     * The number of rows
+     */
+    private final int size;
+    /**
+     * The length in seconds of the longest meeting
+     */
+    private final long maxDuration;
+
+    /**
+     * The start of each meeting, in epoch seconds, or null if the rows are stored in a ByteBuffer
+     */
+    private final long[] starts;
+    /**
+     * The end of each meeting, in epoch seconds, or null if the rows are stored in a ByteBuffer
+     */
+    private final long[] ends;
+    /**
+     * The course id of each meeting, or null if the rows are stored in a ByteBuffer
+     */
+    private final int[] courseIds;
+    /**
+     * The rows, stored one after the other, or null if the rows are stored in arrays
+     */
+    private final ByteBuffer rows;
+
+    /**
+     * Construct a table from arrays of rows.
+     */
+    private MeetingTable(List<Schedule.Course> courses, String[] courseNames, int size, long maxDuration,
+                         long[] starts, long[] ends, int[] courseIds, ByteBuffer rows) {
+        this.courses = courses;
+        this.courseNames = courseNames;
+        this.size = size;
+        this.maxDuration = maxDuration;
+        this.starts = starts;
+        this.ends = ends;
+        this.courseIds = courseIds;
+        this.rows = rows;
+    }
+
+    /**
+     * Build a table of all the meetings of a schedule.
+     *
+     * @param schedule  The schedule
+     * @return          A table of the schedule's meetings
+     */
+    public static MeetingTable of(Schedule schedule) {
+        return of(schedule, schedule.startDate, schedule.endDate);
+    }
+
+    /**
+     * Build a table of the meetings of a schedule between two dates. Each meeting is included
+     * once, even if (like a multi-day singleton course) it spans several dates. The meetings are
+     * listed with {@link Schedule.Course#meetingsBetween}, so building the table takes time
+     * proportional to the number of meetings, rather than the number of days.
+     *
+     * @param schedule   The schedule
+     * @param startDate  The first date to include, inclusive
+     * @param endDate    The last date to include, inclusive
+     * @return           A table of the schedule's meetings between the dates
+     */
+    public static MeetingTable of(Schedule schedule, LocalDate startDate, LocalDate endDate) {
+        return of(schedule, new TreeMap<>(Map.of(startDate, endDate)));
+    }
+
+    /**
+     * Build a table of the meetings of a schedule in several ranges of dates. Each meeting is
+     * included once, even if it spans several dates or ranges.
+     *
+     * @param schedule    The schedule
+     * @param dateRanges  The ranges of dates to include, as a map from the first date to the
+     *                    last date (inclusive) of each range. The ranges must not overlap.
+     * @return            A table of the schedule's meetings in the ranges
+     */
+    public static MeetingTable of(Schedule schedule, NavigableMap<LocalDate, LocalDate> dateRanges) {
+        List<Schedule.Course> courses = List.copyOf(schedule.courses);
+        int courseCount = courses.size();
+        String[] courseNames = new String[courseCount];
+        Map<String, String> dictionary = new HashMap<>();
+        for (int i = 0; i < courseCount; i++) {
+            String name = courses.get(i).name();
+            courseNames[i] = dictionary.computeIfAbsent(name, n -> n);
+        }
+
+        long[] starts = new long[16];
+        long[] ends = new long[16];
+        int[] courseIds = new int[16];
+        int size = 0;
+        long maxDuration = 0;
+        for (int i = 0; i < courseCount; i++) {
+            Schedule.Course course = courses.get(i);
+            LocalDate firstDate = course.firstDate();
+            LocalDate lastDate = course.lastDate();
+            // Only the ranges which overlap the course's dates are expanded
+            LocalDate fromKey = dateRanges.floorKey(firstDate);
+            var overlapping = dateRanges.subMap((fromKey == null) ? firstDate : fromKey, true, lastDate, true);
+            Interval previous = null;
+            for (var range : overlapping.entrySet()) {
+                LocalDate startDate = range.getKey().isBefore(firstDate) ? firstDate : range.getKey();
+                LocalDate endDate = range.getValue().isAfter(lastDate) ? lastDate : range.getValue();
+                if (startDate.isAfter(endDate)) {
+                    continue;
+                }
+                Iterator<Interval> meetings = Spliterators.iterator(course.meetingsBetween(startDate, endDate));
+                while (meetings.hasNext()) {
+                    Interval meetingTime = meetings.next();
+                    // A meeting which spans two ranges is the last one from the previous range
+                    if (meetingTime == previous) {
+                        continue;
+                    }
+                    previous = meetingTime;
+                    if (size == starts.length) {
+                        starts = Arrays.copyOf(starts, size * 2);
+                        ends = Arrays.copyOf(ends, size * 2);
+                        courseIds = Arrays.copyOf(courseIds, size * 2);
+                    }
+                    starts[size] = meetingTime.start.toEpochSecond();
+                    ends[size] = ceilEpochSecond(meetingTime.end);
+                    courseIds[size] = i;
+                    maxDuration = Math.max(maxDuration, ends[size] - starts[size]);
+                    size++;
+                }
+            }
+        }
+
+        // Sort the rows by start time, then by course. Each course's rows were added after the
+        // previous course's, so ties on start time are already in course order, and the rows can
+        // be sorted as primitive keys packing the start time above the row index
+        long minStart = Long.MAX_VALUE;
+        long maxStart = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            minStart = Math.min(minStart, starts[i]);
+            maxStart = Math.max(maxStart, starts[i]);
+        }
+        int rowBits = 32 - Integer.numberOfLeadingZeros(Math.max(size - 1, 1));
+        if (size > 0 && (maxStart - minStart) >>> (63 - rowBits) != 0) {
+            throw new IllegalArgumentException("The meetings span too long a time to be sorted");
+        }
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = ((starts[i] - minStart) << rowBits) | i;
+        }
+        Arrays.sort(order);
+        long rowMask = (1L << rowBits) - 1;
+        long[] sortedStarts = new long[size];
+        long[] sortedEnds = new long[size];
+        int[] sortedCourseIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            int row = (int) (order[i] & rowMask);
+            sortedStarts[i] = starts[row];
+            sortedEnds[i] = ends[row];
+            sortedCourseIds[i] = courseIds[row];
+        }
+        return new MeetingTable(courses, courseNames, size, maxDuration, sortedStarts, sortedEnds, sortedCourseIds, null);
+    }
+
+    /**
+     * Round a date-time up to a whole epoch second.
+     *
+     * @param dateTime  The date-time
+     * @return          The smallest epoch second which is not before the date-time
+     */
+    private static long ceilEpochSecond(ZonedDateTime dateTime) {
+        return dateTime.toEpochSecond() + (dateTime.getNano() > 0 ? 1 : 0);
+    }
+
+    /**
+     * Return a copy of this table with its rows stored off the heap, in a direct ByteBuffer.
+     *
+     * @return  The copy
+     */
+    public MeetingTable offHeap() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size * ROW_BYTES);
+        for (int i = 0; i < size; i++) {
+            buffer.putLong(start(i)).putLong(end(i)).putInt(courseId(i));
+        }
+        return new MeetingTable(courses, courseNames, size, maxDuration, null, null, null, buffer);
+    }
+
+    /**
+     * Returns the number of rows in this table
+     *
+     * @return  The number of meetings
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the start of a meeting
+     *
+     * @param row  The row of the meeting
+     * @return     The start of the meeting, in epoch seconds
+     */
+    public long start(int row) {
+        return (rows == null) ? starts[row] : rows.getLong(row * ROW_BYTES);
+    }
+
+    /**
+     * Returns the end of a meeting
+     *
+     * @param row  The row of the meeting
+     * @return     The end of the meeting, in epoch seconds (rounded up)
+     */
+    public long end(int row) {
+        return (rows == null) ? ends[row] : rows.getLong(row * ROW_BYTES + Long.BYTES);
+    }
+
+    /**
+     * Returns the course of a meeting
+     *
+     * @param row  The row of the meeting
+     * @return     The index of the meeting's course in the schedule's list of courses
+     */
+    public int courseId(int row) {
+        return (rows == null) ? courseIds[row] : rows.getInt(row * ROW_BYTES + 2 * Long.BYTES);
+    }
+
+    /**
+     * Returns the name of a course
+     *
+     * @param courseId  The index of the course in the schedule's list of courses
+     * @return          The name of the course
+     */
+    public String courseName(int courseId) {
+        return courseNames[courseId];
+    }
+
+    /**
+     * Returns the date a meeting starts on
+     *
+     * @param row  The row of the meeting
+     * @return     The date the meeting starts on, in Penn's timezone
+     */
+    public LocalDate date(int row) {
+        return LocalDate.ofInstant(Instant.ofEpochSecond(start(row)), Utils.PENN_ZONEID);
+    }
+
+    /**
+     * Rebuild the exact meeting in a row, as returned by {@link Schedule.Course#meetingOnDate}, or
+     * by {@link Schedule.Course#meetingsBetween} if the course meets more than once that day.
+     *
+     * @param row  The row of the meeting
+     * @return     The meeting
+     */
+    public Schedule.CourseMeeting meeting(int row) {
+        int courseId = courseId(row);
+        Schedule.Course course = courses.get(courseId);
+        LocalDate date = date(row);
+        Interval meetingTime = course.meetingOnDate(date);
+        long start = start(row);
+        if (meetingTime == null || meetingTime.start.toEpochSecond() != start) {
+            // The course meets more than once on this date, so find the meeting which starts at this row's time
+            meetingTime = course.meetingStream(date, date)
+                    .filter(m -> m.start.toEpochSecond() == start)
+                    .findFirst()
+                    .orElse(meetingTime);
+        }
+        return new Schedule.CourseMeeting(courseNames[courseId], meetingTime);
+    }
+
+    /**
+     * Find the rows of the meetings which may overlap a span of time. Every meeting which
+     * overlaps the span is returned, but since the rows are rounded to the second, meetings
+     * which only touch the span may be returned as well.
+     *
+     * @param from  The start of the span, in epoch seconds
+     * @param to    The end of the span, in epoch seconds
+     * @return      The rows, in increasing order
+     */
+    public int[] rowsDuring(long from, long to) {
+        int[] rtn = new int[8];
+        int count = 0;
+        // No meeting which starts before this can reach the span
+        for (int row = firstStartingAtOrAfter(from - maxDuration); row < size && start(row) <= to; row++) {
+            if (end(row) >= from) {
+                if (count == rtn.length) {
+                    rtn = Arrays.copyOf(rtn, count * 2);
+                }
+                rtn[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rtn, count);
+    }
+
+    /**
+     * Find the first row whose meeting starts at or after a given time.
+     *
+     * @param epochSecond  The time, in epoch seconds
+     * @return             The index of the row, or {@link #size()} if there is none
+     */
+    public int firstStartingAtOrAfter(long epochSecond) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (start(mid) < epochSecond) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,395 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Timers and counters for the phases of an analysis, so that a slow run can be attributed to
+ * fetching the schedule, parsing it, fetching or parsing the holidays, or finding the conflicts.
+ * <p>
+ * The metrics are exposed in two ways:
+ * <ul>
+ *     <li>Through JMX, as the {@link MetricsMXBean} {@code ChagimChelper:type=Metrics}. This
+ *         can be turned off by setting the system property {@code chagimchelper.metrics.jmx}
+ *         to "false".</li>
+ *     <li>As JFR events named {@code chagimchelper.Phase}, one per timed phase, which are
+ *         recorded when the program is run with a flight recording (e.g. with
+ *         {@code -XX:StartFlightRecording}). The events cost almost nothing otherwise.</li>
+ * </ul>
+ * Timers and counters are thread-safe, and are shared by the whole program.
+ * This class cannot be constructed; it contains only static methods
+ */
+public class Metrics {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private Metrics() {}
+
+    /**
+     * A timed phase of an analysis
+     */
+    public enum Phase {
+        /**
+         * Requesting a schedule from a url, until the response headers arrive
+         */
+        SCHEDULE_FETCH("scheduleFetch"),
+        /**
+         * Reading and parsing a schedule (for urls, this includes downloading the body)
+         */
+        SCHEDULE_PARSE("scheduleParse"),
+        /**
+         * Requesting holidays from the HebCal API, until the response headers arrive
+         */
+        HOLIDAY_FETCH("holidayFetch"),
+        /**
+         * Reading and parsing a HebCal API response (this includes downloading the body)
+         */
+        HOLIDAY_PARSE("holidayParse"),
+        /**
+         * Finding the conflicts between a schedule and its holidays
+         */
+        CONFLICT_DETECTION("conflictDetection");
+
+        /**
+         * The name of the phase, as shown through JMX and in JFR events
+         */
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * A counter of the things an analysis has processed
+     */
+    public enum Counter {
+        /**
+         * The number of VEVENTs parsed from schedules
+         */
+        EVENTS_PARSED("eventsParsed"),
+        /**
+         * The number of courses in the parsed schedules
+         */
+        COURSES("courses"),
+        /**
+         * The number of holidays checked for conflicts
+         */
+        HOLIDAYS("holidays"),
+        /**
+         * The number of conflicts found
+         */
+        CONFLICTS("conflicts"),
+        /**
+         * The number of schedules read from the {@link ScheduleCache} instead of being downloaded
+         */
+        SCHEDULE_CACHE_HITS("scheduleCacheHits"),
+        /**
+         * The number of schedules loaded from a {@link ScheduleSnapshot} instead of being parsed
+         */
+        SCHEDULE_SNAPSHOT_HITS("scheduleSnapshotHits"),
+        /**
+         * The number of holiday requests answered by the {@link HolidayCache}
+         */
+        HOLIDAY_CACHE_HITS("holidayCacheHits"),
+        /**
+         * The number of {@link CachedRegex} lookups which found an already-compiled pattern (the
+         * named patterns are not counted, since they are never looked up)
+         */
+        REGEX_CACHE_HITS("regexCacheHits"),
+        /**
+         * The number of {@link CachedRegex} lookups which had to compile the pattern
+         */
+        REGEX_CACHE_MISSES("regexCacheMisses"),
+        /**
+         * The number of patterns evicted from the {@link CachedRegex} cache to keep it within its size
+         */
+        REGEX_CACHE_EVICTIONS("regexCacheEvictions");
+
+        /**
+         * The name of the counter, as shown through JMX
+         */
+        private final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * The upper bounds of the histogram buckets, in milliseconds
+     */
+    private static final double[] BUCKET_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+    /**
+     * The upper bounds of the histogram buckets, in nanoseconds
+     */
+    private static final long[] BUCKET_NANOS = new long[BUCKET_MILLIS.length];
+
+    private static final LongAdder[] counters = newAdders(Counter.values().length);
+    private static final LongAdder[] phaseCounts = newAdders(Phase.values().length);
+    private static final LongAdder[] phaseTotalNanos = newAdders(Phase.values().length);
+    private static final LongAccumulator[] phaseMaxNanos = new LongAccumulator[Phase.values().length];
+    /**
+     * The histogram of each phase, indexed by phase and then by bucket
+     */
+    private static final LongAdder[][] histograms = new LongAdder[Phase.values().length][];
+
+    /**
+     * Whether the MBean has been registered
+     */
+    private static boolean registered;
+
+    static {
+        for (int i = 0; i < BUCKET_MILLIS.length; i++) {
+            BUCKET_NANOS[i] = (long) (BUCKET_MILLIS[i] * TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        for (int i = 0; i < histograms.length; i++) {
+            phaseMaxNanos[i] = new LongAccumulator(Math::max, 0);
+            histograms[i] = newAdders(BUCKET_MILLIS.length + 1);
+        }
+        registerMBean();
+    }
+
+    /**
+     * Create an array of counters.
+     *
+     * @param length  The number of counters
+     * @return        The counters, all zero
+     */
+    private static LongAdder[] newAdders(int length) {
+        LongAdder[] rtn = new LongAdder[length];
+        for (int i = 0; i < length; i++) {
+            rtn[i] = new LongAdder();
+        }
+        return rtn;
+    }
+
+    /**
+     * Register the metrics with the platform MBean server, unless the system property
+     * {@code chagimchelper.metrics.jmx} is "false". This happens automatically the first time
+     * any metric is recorded; long-running programs can call it at startup so the metrics are
+     * visible right away. Calling it more than once has no effect.
+     */
+    public static synchronized void registerMBean() {
+        if (registered || "false".equals(System.getProperty("chagimchelper.metrics.jmx"))) {
+            return;
+        }
+        registered = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName("ChagimChelper:type=Metrics"));
+        } catch (JMException | SecurityException e) {
+            // The metrics are still recorded, and still emitted as JFR events
+            System.out.println("Could not register the metrics MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Start timing a phase. The timer should be closed when the phase is finished, usually with
+     * a try-with-resources statement.
+     *
+     * @param phase  The phase to time
+     * @return       The running timer
+     */
+    public static Timer time(Phase phase) {
+        return new Timer(phase);
+    }
+
+    /**
+     * Add to a counter.
+     *
+     * @param counter  The counter
+     * @param amount   The amount to add
+     */
+    public static void count(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    /**
+     * Record a finished run of a phase.
+     *
+     * @param phase    The phase
+     * @param elapsed  How long the run took, in nanoseconds
+     */
+    private static void record(Phase phase, long elapsed) {
+        int i = phase.ordinal();
+        phaseCounts[i].increment();
+        phaseTotalNanos[i].add(elapsed);
+        phaseMaxNanos[i].accumulate(elapsed);
+        int bucket = 0;
+        while (bucket < BUCKET_NANOS.length && elapsed > BUCKET_NANOS[bucket]) {
+            bucket++;
+        }
+        histograms[i][bucket].increment();
+    }
+
+    /**
+     * A running timer for one run of a phase, which is recorded when it is closed
+     */
+    public static final class Timer implements AutoCloseable {
+        /**
+         * The phase being timed
+         */
+        private final Phase phase;
+        /**
+         * The JFR event for this run, which is only committed if it is being recorded
+         */
+        private final PhaseEvent event = new PhaseEvent();
+        /**
+         * The value of {@link System#nanoTime()} when the timer was started
+         */
+        private final long start;
+        /**
+         * The number of items the phase processed
+         */
+        private long items;
+        /**
+         * Whether the timer has been closed
+         */
+        private boolean closed;
+
+        private Timer(Phase phase) {
+            this.phase = phase;
+            this.event.begin();
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Set the number of items the phase processed (e.g. the number of events parsed), which
+         * is included in the JFR event.
+         *
+         * @param items  The number of items
+         */
+        public void items(long items) {
+            this.items = items;
+        }
+
+        /**
+         * Stop the timer, and record the run. Closing a timer more than once has no effect.
+         */
+        @Override
+        public void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            record(this.phase, System.nanoTime() - this.start);
+            this.event.end();
+            if (this.event.shouldCommit()) {
+                this.event.phase = this.phase.label;
+                this.event.items = this.items;
+                this.event.commit();
+            }
+        }
+    }
+
+    /**
+     * The JFR event emitted for each timed run of a phase
+     */
+    @Name("chagimchelper.Phase")
+    @Label("ChagimChelper Phase")
+    @Category("ChagimChelper")
+    @Description("A timed phase of a schedule analysis")
+    static final class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Items")
+        @Description("The number of items the phase processed, e.g. events parsed or holidays checked")
+        long items;
+    }
+
+    /**
+     * The MBean which exposes the metrics through JMX
+     */
+    private static final class Bean implements MetricsMXBean {
+        @Override
+        public Map<String, Long> getCounters() {
+            Map<String, Long> rtn = new LinkedHashMap<>();
+            for (Counter c : Counter.values()) {
+                rtn.put(c.label, counters[c.ordinal()].sum());
+            }
+            return rtn;
+        }
+
+        @Override
+        public Map<String, Long> getPhaseCounts() {
+            Map<String, Long> rtn = new LinkedHashMap<>();
+            for (Phase p : Phase.values()) {
+                rtn.put(p.label, phaseCounts[p.ordinal()].sum());
+            }
+            return rtn;
+        }
+
+        @Override
+        public Map<String, Double> getPhaseTotalMillis() {
+            Map<String, Double> rtn = new LinkedHashMap<>();
+            for (Phase p : Phase.values()) {
+                rtn.put(p.label, toMillis(phaseTotalNanos[p.ordinal()].sum()));
+            }
+            return rtn;
+        }
+
+        @Override
+        public Map<String, Double> getPhaseMaxMillis() {
+            Map<String, Double> rtn = new LinkedHashMap<>();
+            for (Phase p : Phase.values()) {
+                rtn.put(p.label, toMillis(phaseMaxNanos[p.ordinal()].get()));
+            }
+            return rtn;
+        }
+
+        @Override
+        public double[] getHistogramBucketMillis() {
+            return BUCKET_MILLIS.clone();
+        }
+
+        @Override
+        public long[] getHistogram(String phase) {
+            for (Phase p : Phase.values()) {
+                if (p.label.equals(phase)) {
+                    LongAdder[] buckets = histograms[p.ordinal()];
+                    long[] rtn = new long[buckets.length];
+                    for (int i = 0; i < buckets.length; i++) {
+                        rtn[i] = buckets[i].sum();
+                    }
+                    return rtn;
+                }
+            }
+            throw new IllegalArgumentException("Unknown phase: '" + phase + "'");
+        }
+
+        @Override
+        public void reset() {
+            for (LongAdder a : counters) {
+                a.reset();
+            }
+            for (int i = 0; i < histograms.length; i++) {
+                phaseCounts[i].reset();
+                phaseTotalNanos[i].reset();
+                phaseMaxNanos[i].reset();
+                for (LongAdder a : histograms[i]) {
+                    a.reset();
+                }
+            }
+        }
+
+        /**
+         * Convert a duration to milliseconds.
+         *
+         * @param nanos  The duration, in nanoseconds
+         * @return       The duration, in milliseconds
+         */
+        private static double toMillis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+}
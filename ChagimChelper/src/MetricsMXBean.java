@@ -0,0 +1,59 @@
+import java.util.Map;
+
+/**
+ * The management interface of the program's {@link Metrics}, registered with the platform
+ * MBean server as {@code ChagimChelper:type=Metrics}, so it can be read with JConsole, VisualVM
+ * or any other JMX client.
+ */
+public interface MetricsMXBean {
+    /**
+     * Get the value of every counter.
+     *
+     * @return  A map from each counter's name (e.g. "conflicts") to its value
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * Get how many times each phase has run.
+     *
+     * @return  A map from each phase's name (e.g. "scheduleParse") to its number of runs
+     */
+    Map<String, Long> getPhaseCounts();
+
+    /**
+     * Get the total time spent in each phase.
+     *
+     * @return  A map from each phase's name to its total time, in milliseconds
+     */
+    Map<String, Double> getPhaseTotalMillis();
+
+    /**
+     * Get the longest single run of each phase.
+     *
+     * @return  A map from each phase's name to its longest run, in milliseconds
+     */
+    Map<String, Double> getPhaseMaxMillis();
+
+    /**
+     * Get the upper bounds of the histogram buckets (see {@link #getHistogram(String)}).
+     *
+     * @return  The upper bound of each bucket but the last, in milliseconds
+     */
+    double[] getHistogramBucketMillis();
+
+    /**
+     * Get the histogram of the durations of a phase. Bucket i counts the runs which took at most
+     * {@code getHistogramBucketMillis()[i]} milliseconds (and more than the previous bound), and
+     * the last bucket counts the runs which took longer than every bound.
+     *
+     * @param phase  The name of the phase, e.g. "holidayFetch"
+     * @return       The number of runs in each bucket
+     * @throws IllegalArgumentException  If there is no phase with that name
+     */
+    long[] getHistogram(String phase);
+
+    /**
+     * Reset every counter and phase to zero.
+     */
+    void reset();
+}
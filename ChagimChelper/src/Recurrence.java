@@ -0,0 +1,369 @@
+import java.nio.ByteBuffer;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * The dates a recurring .ics event takes place on, as described by its RRULE, EXDATE and DTSTART
+ * properties (RFC 5545 section 3.3.10 and 3.8.5). Daily and weekly rules are supported, with the
+ * INTERVAL, COUNT, UNTIL, BYDAY and WKST rule parts.
+ * <p>
+ * The dates are never all listed up front: {@link #next(long)} jumps straight to the next date
+ * with arithmetic, so a series with no end costs nothing until it is asked for. Excluded dates
+ * are kept in a sorted array, so they can be checked with a binary search, or skipped in order
+ * while listing the dates.
+ * <p>
+ * All dates are given as epoch days (see {@link LocalDate#toEpochDay()}) in Penn's timezone.
+ */
+public class Recurrence {
+    /**
+     * The frequencies a rule can have
+     */
+    public enum Frequency {
+        DAILY, WEEKLY
+    }
+
+    /**
+     * A day mask with every day of the week set
+     */
+    private static final int ALL_DAYS = 0x7F;
+
+    /**
+     * The frequency of the rule, or null if the event only happens on its first date
+     */
+    private final Frequency frequency;
+    /**
+     * The number of days (for a daily rule) or weeks (for a weekly rule) between each repetition
+     */
+    private final int interval;
+    /**
+     * The days of the week the event happens on, as a bitmask where bit i is set for the day
+     * whose {@link DayOfWeek#getValue()} is i + 1
+     */
+    private final int dayMask;
+    /**
+     * The first date the event can happen on, from DTSTART. As with a plain weekly course, this
+     * is only a date of the series if it matches the rule.
+     */
+    private final long firstDay;
+    /**
+     * For weekly rules, the first day of the week containing {@link #firstDay}
+     */
+    private final long firstWeekStart;
+    /**
+     * The last date the event can happen on, inclusive, or {@link Long#MAX_VALUE} if the series
+     * has no end
+     */
+    private long lastDay;
+    /**
+     * The dates excluded from the series, sorted and without duplicates
+     */
+    private final long[] excluded;
+
+    /**
+     * Construct a recurrence.
+     *
+     * @param frequency  The frequency of the rule, or null if the event only happens on its first date
+     * @param interval   The INTERVAL of the rule, which must be positive
+     * @param days       The BYDAY days of the rule, or null (or empty) to use the day of the week of the first date
+     * @param weekStart  The WKST of the rule, or null for Monday
+     * @param firstDate  The date of DTSTART
+     * @param until      The date of UNTIL, or null if there is none
+     * @param count      The COUNT of the rule, or null if there is none
+     * @param excluded   The dates from EXDATE and of overridden instances
+     * @throws IllegalArgumentException  If the interval or count is not positive
+     */
+    public Recurrence(Frequency frequency, int interval, Collection<DayOfWeek> days, DayOfWeek weekStart,
+                      LocalDate firstDate, LocalDate until, Integer count, Collection<LocalDate> excluded) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Invalid recurrence interval " + interval);
+        }
+        if (count != null && count < 1) {
+            throw new IllegalArgumentException("Invalid recurrence count " + count);
+        }
+        this.frequency = frequency;
+        this.interval = interval;
+        this.firstDay = firstDate.toEpochDay();
+
+        int mask = 0;
+        if (days != null && !days.isEmpty()) {
+            for (DayOfWeek d : days) {
+                mask |= 1 << (d.getValue() - 1);
+            }
+        } else if (frequency == Frequency.WEEKLY) {
+            mask = 1 << (firstDate.getDayOfWeek().getValue() - 1);
+        } else {
+            mask = ALL_DAYS;
+        }
+        this.dayMask = mask;
+
+        int weekStartIndex = (weekStart == null) ? 0 : weekStart.getValue() - 1;
+        this.firstWeekStart = this.firstDay - Math.floorMod(Schedule.WeeklyCourse.dayIndex(this.firstDay) - weekStartIndex, 7);
+
+        this.excluded = excluded.stream().mapToLong(LocalDate::toEpochDay).sorted().distinct().toArray();
+
+        this.lastDay = (frequency == null) ? this.firstDay : (until == null) ? Long.MAX_VALUE : until.toEpochDay();
+        if (count != null) {
+            // COUNT counts the dates of the rule, including any excluded dates
+            long day = next(this.firstDay);
+            for (int i = 1; i < count && day != Long.MAX_VALUE; i++) {
+                day = next(day + 1);
+            }
+            if (day < this.lastDay) {
+                this.lastDay = day;
+            }
+        }
+    }
+
+    /**
+     * Construct a recurrence from the fields of one which has already been built.
+     *
+     * @param frequency       The frequency of the rule, or null
+     * @param interval        The interval of the rule
+     * @param dayMask         The days of the week the event happens on
+     * @param firstDay        The first date the event can happen on
+     * @param firstWeekStart  The first day of the week containing the first date
+     * @param lastDay         The last date the event can happen on
+     * @param excluded        The excluded dates, sorted and without duplicates
+     */
+    private Recurrence(Frequency frequency, int interval, int dayMask, long firstDay, long firstWeekStart,
+                       long lastDay, long[] excluded) {
+        this.frequency = frequency;
+        this.interval = interval;
+        this.dayMask = dayMask;
+        this.firstDay = firstDay;
+        this.firstWeekStart = firstWeekStart;
+        this.lastDay = lastDay;
+        this.excluded = excluded;
+    }
+
+    /**
+     * Returns the number of bytes {@link #writeTo(ByteBuffer)} writes.
+     *
+     * @return  The size of this recurrence in a {@link ScheduleSnapshot}
+     */
+    int snapshotSize() {
+        return 1 + 4 + 1 + 3 * 8 + 4 + this.excluded.length * 8;
+    }
+
+    /**
+     * Write this recurrence to a {@link ScheduleSnapshot}.
+     *
+     * @param out  The buffer to write to, which must have {@link #snapshotSize()} bytes remaining
+     */
+    void writeTo(ByteBuffer out) {
+        out.put((byte) ((this.frequency == null) ? -1 : this.frequency.ordinal()));
+        out.putInt(this.interval);
+        out.put((byte) this.dayMask);
+        out.putLong(this.firstDay);
+        out.putLong(this.firstWeekStart);
+        out.putLong(this.lastDay);
+        out.putInt(this.excluded.length);
+        for (long day : this.excluded) {
+            out.putLong(day);
+        }
+    }
+
+    /**
+     * Read a recurrence written by {@link #writeTo(ByteBuffer)}.
+     *
+     * @param in  The buffer to read from
+     * @return    The recurrence
+     * @throws java.nio.BufferUnderflowException  If the buffer ends too early
+     * @throws IllegalArgumentException  If the recurrence is invalid
+     */
+    static Recurrence readFrom(ByteBuffer in) {
+        byte frequency = in.get();
+        int interval = in.getInt();
+        int dayMask = in.get();
+        long firstDay = in.getLong();
+        long firstWeekStart = in.getLong();
+        long lastDay = in.getLong();
+        int excludedCount = in.getInt();
+        if (excludedCount < 0 || excludedCount > in.remaining() / 8) {
+            throw new IllegalArgumentException("Invalid recurrence in snapshot");
+        }
+        long[] excluded = new long[excludedCount];
+        for (int i = 0; i < excluded.length; i++) {
+            excluded[i] = in.getLong();
+        }
+        if (frequency < -1 || frequency >= Frequency.values().length || interval < 1 || (dayMask & ~ALL_DAYS) != 0) {
+            throw new IllegalArgumentException("Invalid recurrence in snapshot");
+        }
+        return new Recurrence((frequency < 0) ? null : Frequency.values()[frequency], interval, dayMask,
+                firstDay, firstWeekStart, lastDay, excluded);
+    }
+
+    /**
+     * Returns the first date of the series
+     *
+     * @return  The epoch day of the first date
+     */
+    public long firstDay() {
+        return this.firstDay;
+    }
+
+    /**
+     * Returns the last date the series can include
+     *
+     * @return  The epoch day of the last date, or {@link Long#MAX_VALUE} if the series has no end
+     */
+    public long lastDay() {
+        return this.lastDay;
+    }
+
+    /**
+     * Returns whether the series has an end, from its UNTIL or COUNT rule part
+     *
+     * @return  True if the series has an end
+     */
+    public boolean isBounded() {
+        return this.lastDay != Long.MAX_VALUE;
+    }
+
+    /**
+     * End a series which has no end (for example, at the end of the semester). Series which
+     * already have an end are not changed.
+     *
+     * @param lastDate  The last date to include
+     */
+    public void endAt(LocalDate lastDate) {
+        if (!isBounded()) {
+            this.lastDay = lastDate.toEpochDay();
+        }
+    }
+
+    /**
+     * Check if the event happens on a date.
+     *
+     * @param epochDay  The epoch day of the date
+     * @return          True if the date is part of the series, and is not excluded
+     */
+    public boolean occursOn(long epochDay) {
+        return next(epochDay) == epochDay && !isExcluded(epochDay);
+    }
+
+    /**
+     * Check if a date is excluded from the series.
+     *
+     * @param epochDay  The epoch day of the date
+     * @return          True if the date is excluded
+     */
+    public boolean isExcluded(long epochDay) {
+        return Arrays.binarySearch(this.excluded, epochDay) >= 0;
+    }
+
+    /**
+     * Find the index of the first excluded date on or after the given date, so that excluded
+     * dates can be skipped in order.
+     *
+     * @param epochDay  The epoch day of the date
+     * @return          The index into the excluded dates
+     */
+    int excludedIndex(long epochDay) {
+        int i = Arrays.binarySearch(this.excluded, epochDay);
+        return (i >= 0) ? i : -i - 1;
+    }
+
+    /**
+     * Returns an excluded date.
+     *
+     * @param index  The index into the excluded dates
+     * @return       The excluded date, or {@link Long#MAX_VALUE} if the index is past the end
+     */
+    long excludedDay(int index) {
+        return (index < this.excluded.length) ? this.excluded[index] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Find the first date of the series on or after the given date, without taking the excluded
+     * dates into account.
+     *
+     * @param epochDay  The epoch day to start from
+     * @return          The epoch day of the first date of the series on or after it, or
+     *                  {@link Long#MAX_VALUE} if there is none
+     */
+    public long next(long epochDay) {
+        long day = Math.max(epochDay, this.firstDay);
+        long rtn;
+        if (this.frequency == Frequency.WEEKLY) {
+            rtn = nextWeekly(day);
+        } else if (this.frequency == Frequency.DAILY) {
+            rtn = nextDaily(day);
+        } else {
+            rtn = (day == this.firstDay) ? day : Long.MAX_VALUE;
+        }
+        return (rtn > this.lastDay) ? Long.MAX_VALUE : rtn;
+    }
+
+    /**
+     * Find the first date of a weekly rule on or after the given date. Weeks which are skipped
+     * by the interval are jumped over whole.
+     *
+     * @param epochDay  The epoch day to start from, not before the first date
+     * @return          The epoch day of the first date of the series on or after it
+     */
+    private long nextWeekly(long epochDay) {
+        long day = epochDay;
+        while (day <= this.lastDay) {
+            long week = Math.floorDiv(day - this.firstWeekStart, 7);
+            long skip = Math.floorMod(week, (long) this.interval);
+            if (skip != 0) {
+                // Jump to the start of the next week the rule is active in
+                day = this.firstWeekStart + (week + this.interval - skip) * 7;
+                continue;
+            }
+            long weekEnd = this.firstWeekStart + (week + 1) * 7;
+            long candidate = Schedule.WeeklyCourse.nextMaskDay(this.dayMask, day);
+            if (candidate < weekEnd) {
+                return candidate;
+            }
+            day = weekEnd;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Find the first date of a daily rule on or after the given date.
+     *
+     * @param epochDay  The epoch day to start from, not before the first date
+     * @return          The epoch day of the first date of the series on or after it
+     */
+    private long nextDaily(long epochDay) {
+        long day = this.firstDay + Math.floorDiv(epochDay - this.firstDay + this.interval - 1, this.interval) * this.interval;
+        // The days of the week repeat every 7 steps, so if none of them match, none ever will
+        for (int i = 0; i < 7 && day <= this.lastDay; i++, day += this.interval) {
+            if ((this.dayMask & (1 << Schedule.WeeklyCourse.dayIndex(day))) != 0) {
+                return day;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "Recurrence{" +
+                "frequency=" + frequency +
+                ", interval=" + interval +
+                ", dayMask=" + Integer.toBinaryString(dayMask) +
+                ", firstDate=" + LocalDate.ofEpochDay(firstDay) +
+                ", lastDate=" + (isBounded() ? LocalDate.ofEpochDay(lastDay) : null) +
+                ", excluded=" + excluded.length +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Recurrence that = (Recurrence) o;
+        return frequency == that.frequency && interval == that.interval && dayMask == that.dayMask && firstDay == that.firstDay && firstWeekStart == that.firstWeekStart && lastDay == that.lastDay && Arrays.equals(excluded, that.excluded);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hash(frequency, interval, dayMask, firstDay, firstWeekStart, lastDay) + Arrays.hashCode(excluded);
+    }
+}
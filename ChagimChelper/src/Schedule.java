@@ -1,15 +1,18 @@
-import java.io.IOException;
+import java.io.*;
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.*;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A class representing a user's course schedule.
@@ -32,75 +35,245 @@ public class Schedule {
      * Parse the user's schedule from a .ics file
      *
      * @param filePath  The path to the file, which must be in the .ics format
+     * @throws ScheduleException  If the file cannot be read or parsed
      */
     public Schedule(Path filePath) {
-        this(Schedule.getScheduleFromFile(filePath));
+        try {
+            this.parseOrLoad(() -> Files.newInputStream(filePath));
+        } catch (IOException e) {
+            throw new ScheduleException("An error occurred while reading from the schedule file.\nEnsure that the file exists and is accessible.", e);
+        }
     }
 
     /**
      * Request the user's schedule from a url
      *
      * @param url  The URL to request data from. The response must be a .ics calendar file
+     * @throws ScheduleException  If the request fails or the response cannot be parsed
      */
     public Schedule(URI url) {
-        this(Schedule.getScheduleFromURL(url));
+        ScheduleCache.Entry cached = ScheduleCache.get(url);
+        try {
+            this.read(url, cached, Schedule.getScheduleFromURL(url, cached));
+        } catch (IOException e) {
+            throw new ScheduleException("An error occurred while making a request to the given url", e);
+        }
     }
 
     /**
-     * Request the user's .ics schedule from a url
+     * Parse the user's schedule from a .ics file represented as plaintext.
      *
-     * @param url  The url to request from
-     * @return     The response body as a string
+     * @param icsText  The text of the .ics file
+     * @throws ScheduleException  If the text cannot be parsed
+     */
+    public Schedule(String icsText) {
+        this(new StringReader(icsText));
+    }
 
+    /**
+     * Parse the user's schedule from a stream of .ics text. The stream is read in a single pass,
+     * and is not closed by this constructor.
+     *
+     * @param icsReader  A reader over the text of the .ics file
+     * @throws ScheduleException  If the text cannot be read or parsed
      */
-    private static String getScheduleFromURL(URI url) {
-        HttpClient client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.ALWAYS).build();
-        HttpRequest request = HttpRequest.newBuilder().uri(url).build();
-        HttpResponse<String> response;
-        try {
-            response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            System.out.println("An error occurred while making a request to the given url");
-            System.exit(1);
-            throw new RuntimeException("System.exit() did not exit");
+    public Schedule(Reader icsReader) {
+        this.parse(new IcsLineReader(icsReader));
+    }
+
+    /**
+     * Request the user's schedule from a url asynchronously. The request is made through the
+     * shared {@link HttpService}, and the response is parsed on the given executor as it arrives.
+     * If the calendar is stored in the {@link ScheduleCache}, it is only downloaded again if it
+     * has changed.
+     *
+     * @param url            The URL to request data from. The response must be a .ics calendar file
+     * @param parseExecutor  The executor to parse the response on
+     * @return               A future which completes with the schedule, or with a ScheduleException
+     */
+    public static CompletableFuture<Schedule> fetchAsync(URI url, Executor parseExecutor) {
+        ScheduleCache.Entry cached = ScheduleCache.get(url);
+        CompletableFuture<HttpResponse<InputStream>> request;
+        if (cached != null && ScheduleCache.isOffline()) {
+            request = CompletableFuture.completedFuture(null);
+        } else {
+            Metrics.Timer timer = Metrics.time(Metrics.Phase.SCHEDULE_FETCH);
+            request = HttpService.sendAsync(ScheduleCache.newRequest(url, cached), HttpResponse.BodyHandlers.ofInputStream())
+                    .whenComplete((response, e) -> timer.close());
         }
+        return request
+                .exceptionally(e -> {
+                    throw new ScheduleException("An error occurred while making a request to the given url", e);
+                })
+                .thenApplyAsync(response -> {
+                    try {
+                        Schedule schedule = new Schedule();
+                        schedule.read(url, cached, response);
+                        return schedule;
+                    } catch (IOException e) {
+                        throw new ScheduleException("An error occurred while making a request to the given url", e);
+                    }
+                }, parseExecutor);
+    }
+
+    /**
+     * Request the user's schedule from a url without storing it: the calendar is not read from
+     * or written to the {@link ScheduleCache}, and no {@link ScheduleSnapshot} is made of it.
+     * The {@link ConflictServer} uses this for its users' schedule urls, which are secret links
+     * that the server should not keep.
+     *
+     * @param url  The URL to request data from. The response must be a .ics calendar file
+     * @return     The schedule
+     * @throws ScheduleException  If the request fails or the response cannot be parsed
+     */
+    public static Schedule fetchUncached(URI url) {
+        HttpResponse<InputStream> response = Schedule.getScheduleFromURL(url, null);
+        checkStatus(response);
+        Schedule schedule = new Schedule();
+        try (InputStream body = response.body()) {
+            schedule.parse(new IcsLineReader(body));
+        } catch (IOException e) {
+            throw new ScheduleException("An error occurred while making a request to the given url", e);
+        }
+        return schedule;
+    }
+
+    /**
+     * An empty schedule, to be filled in by {@link Schedule#parse(IcsLineReader)} or from a
+     * {@link ScheduleSnapshot}
+     */
+    private Schedule() {}
+
+    /**
+     * Request the user's .ics schedule from a url. If the calendar is stored in the
+     * {@link ScheduleCache}, it is only downloaded again if it has changed.
+     *
+     * @param url     The url to request from
+     * @param cached  The stored calendar, or null if there is none
+     * @return        The response, or null if no request was made because the program is offline
+     */
+    private static HttpResponse<InputStream> getScheduleFromURL(URI url, ScheduleCache.Entry cached) {
+        HttpResponse<InputStream> response = null;
+        if (cached == null || !ScheduleCache.isOffline()) {
+            Metrics.Timer timer = Metrics.time(Metrics.Phase.SCHEDULE_FETCH);
+            try {
+                response = HttpService.send(ScheduleCache.newRequest(url, cached), HttpResponse.BodyHandlers.ofInputStream());
+            } catch (IOException | InterruptedException e) {
+                throw new ScheduleException("An error occurred while making a request to the given url", e);
+            } finally {
+                timer.close();
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Read the user's schedule from the response to a schedule request. New calendars are
+     * stored in the {@link ScheduleCache} as they are read, and parsed as they arrive. If the
+     * calendar has not changed (or no request was made), the stored copy is read instead, and
+     * is only parsed if there is no {@link ScheduleSnapshot} of it.
+     *
+     * @param url       The url which was requested
+     * @param cached    The stored calendar the request was conditional on, or null
+     * @param response  The response to read, or null if no request was made
+     * @throws IOException  If the response body cannot be read
+     */
+    private void read(URI url, ScheduleCache.Entry cached, HttpResponse<InputStream> response) throws IOException {
+        if (cached != null && (response == null || response.statusCode() == 304)) {
+            Metrics.count(Metrics.Counter.SCHEDULE_CACHE_HITS, 1);
+            if (response != null) {
+                Utils.closeQuietly(response.body());
+                cached = ScheduleCache.revalidated(cached, response);
+            }
+            try {
+                this.parseOrLoad(cached::openBody);
+            } catch (IOException e) {
+                throw new ScheduleException("An error occurred while reading the stored copy of the schedule", e);
+            }
+            return;
+        }
+        checkStatus(response);
+        MessageDigest digest = ScheduleSnapshot.newDigest();
+        try (InputStream body = new DigestInputStream(ScheduleCache.store(url, response), digest)) {
+            this.parse(new IcsLineReader(body));
+            // Hash anything after END:VCALENDAR too, so the key matches a hash of the whole file
+            body.transferTo(OutputStream.nullOutputStream());
+        }
+        ScheduleSnapshot.store(ScheduleSnapshot.key(digest), this);
+    }
+
+    /**
+     * Check that a schedule request succeeded, closing the response body if it did not.
+     *
+     * @param response  The response to check
+     * @throws ScheduleException  If the response does not have status code 200
+     */
+    private static void checkStatus(HttpResponse<InputStream> response) {
         if (response.statusCode() != 200) {
-            System.out.println("The request to the url returned unsuccessful status code " + response.statusCode()
+            Utils.closeQuietly(response.body());
+            throw new ScheduleException("The request to the url returned unsuccessful status code " + response.statusCode()
             + ".\nIf this is a PennCoursePlan url, use your browser to check the url is valid."
             + "\nIf this is a Google Calendar url, use incognito mode to check that the link is publicly viewable");
-            System.exit(1);
-            throw new RuntimeException("System.exit() did not exit");
         }
-        return response.body();
     }
 
-    private static String getScheduleFromFile(Path filePath) {
-        try {
-            return Files.readString(filePath);
-        } catch (IOException e) {
-            System.out.println("An error occurred while reading from the schedule file.\nEnsure that the file exists and is accessible.");
-            System.exit(1);
-            throw new RuntimeException("System.exit() did not exit");
-        }
+    /**
+     * A .ics file which can be opened more than once
+     */
+    @FunctionalInterface
+    private interface IcsSource {
+        /**
+         * Open a new stream over the bytes of the file.
+         *
+         * @return  The stream, which the caller must close
+         * @throws IOException  If the file cannot be opened
+         */
+        InputStream open() throws IOException;
     }
 
     /**
-     * Parse the user's schedule from a .ics file represented as plaintext.
+     * Parse the user's schedule from a .ics file, or load it from its {@link ScheduleSnapshot}
+     * if the same file has been parsed before. The file is streamed through twice, once to hash
+     * it and once to parse it if there is no snapshot, so it is never held in memory whole.
      *
-     * @param icsText  The text of the .ics file
+     * @param source  The .ics file
+     * @throws IOException  If the file cannot be opened or hashed
      */
-    public Schedule(String icsText) {
-        try {
-            String icsTextConcat = CachedRegex.pattern("\\R[ \\t]", Pattern.UNICODE_CHARACTER_CLASS).matcher(icsText).replaceAll("");
-            String[] icsLines = CachedRegex.pattern("\\R", Pattern.UNICODE_CHARACTER_CLASS).split(icsTextConcat);
+    private void parseOrLoad(IcsSource source) throws IOException {
+        if (!ScheduleSnapshot.isEnabled()) {
+            try (InputStream in = source.open()) {
+                this.parse(new IcsLineReader(in));
+            }
+            return;
+        }
+        MessageDigest digest = ScheduleSnapshot.newDigest();
+        try (InputStream in = new DigestInputStream(source.open(), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        String key = ScheduleSnapshot.key(digest);
+        if (ScheduleSnapshot.load(key, this)) {
+            Metrics.count(Metrics.Counter.SCHEDULE_SNAPSHOT_HITS, 1);
+            return;
+        }
+        try (InputStream in = source.open()) {
+            this.parse(new IcsLineReader(in));
+        }
+        ScheduleSnapshot.store(key, this);
+    }
 
+    /**
+     * Parse the user's schedule from the lines of a .ics file, in a single pass.
+     *
+     * @param icsLines  The (unfolded) lines of the .ics file
+     */
+    private void parse(IcsLineReader icsLines) {
+        try (Metrics.Timer timer = Metrics.time(Metrics.Phase.SCHEDULE_PARSE)) {
             boolean pennLabsMode = false;
-            this.courses = new ArrayList<>();
+            List<Event> events = new ArrayList<>();
 
-            int lineNum = -1;
+            String line;
             label:
-            while (++lineNum < icsLines.length) {
-                String line = icsLines[lineNum];
+            while ((line = icsLines.readLine()) != null) {
                 switch (line) {
                     case "END:VCALENDAR":
                         break label;
@@ -108,106 +281,295 @@ public class Schedule {
                         pennLabsMode = true;
                         break;
                     case "BEGIN:VEVENT":
-                        // Process VEVENT
-                        String courseName = null;
-                        LocalDateTime startDateTimePenn = null;
-                        LocalDateTime endDateTimePenn = null;
-
-                        Set<DayOfWeek> rruleWeeklyDays = null;
-                        LocalDateTime rruleUntilPenn = null;
-
-                        while (++lineNum < icsLines.length) {
-                            line = icsLines[lineNum];
-                            if (line.equals("END:VEVENT")) {
-                                break;
-                            } else if (line.startsWith("SUMMARY:")) {
-                                courseName = line.substring(8);
-                            } else if (line.startsWith("DTSTART")) {
-                                ZonedDateTime parsedDateTime = parseDTString(line, pennLabsMode);
-                                startDateTimePenn = parsedDateTime.withZoneSameInstant(Utils.PENN_ZONEID).toLocalDateTime();
-                            } else if (line.startsWith("DTEND")) {
-                                ZonedDateTime parsedDateTime = parseDTString(line, pennLabsMode);
-                                endDateTimePenn = parsedDateTime.withZoneSameInstant(Utils.PENN_ZONEID).toLocalDateTime();
-                            } else if (line.startsWith("RRULE:")) {
-                                String[] components = CachedRegex.pattern("[:;]").split(line);
-                                for (String comp : components) {
-                                    if (comp.startsWith("UNTIL=")) {
-                                        String untilString = comp.substring(6);
-                                        ZonedDateTime parsedDateTime = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmssX")
-                                                .parse(untilString)
-                                                .query(ZonedDateTime::from);
-                                        if (pennLabsMode) {
-                                            // See https://github.com/pennlabs/penn-courses/issues/490
-                                            rruleUntilPenn = parsedDateTime.toLocalDateTime();
-                                        } else {
-                                            rruleUntilPenn = parsedDateTime.withZoneSameInstant(Utils.PENN_ZONEID).toLocalDateTime();
-                                        }
-
-                                    } else if (comp.startsWith("BYDAY=")) {
-                                        String allDaysString = comp.substring(6);
-                                        String[] dayStrings = CachedRegex.pattern(",").split(allDaysString);
-                                        rruleWeeklyDays = Arrays.stream(dayStrings)
-                                                .map(Schedule::parseDayOfWeek)
-                                                .collect(Collectors.toSet());
-                                    }
-                                }
-                            }
-                        }
-
-                        if (courseName == null || startDateTimePenn == null || endDateTimePenn == null) {
-                            System.out.println("Could not find info for a course, skipping:");
-                            System.out.println("courseName = " + courseName + ", startDateTimePenn = " + startDateTimePenn + ", endDateTimePenn = " + endDateTimePenn);
-                            continue;
-                        }
-
-                        Course course;
-                        if (rruleWeeklyDays != null) {
-                            WeeklyCourse courseW = new WeeklyCourse(courseName, rruleWeeklyDays,
-                                    startDateTimePenn.toLocalTime(), endDateTimePenn.toLocalTime(),
-                                    startDateTimePenn.toLocalDate(), (rruleUntilPenn == null) ? null : rruleUntilPenn.toLocalDate());
-                            course = courseW;
-
-                            if (this.startDate == null || (courseW.startDate != null && this.startDate.isAfter(courseW.startDate))) {
-                                this.startDate = courseW.startDate;
-                            }
-                            if (this.endDate == null || (courseW.endDate != null && this.endDate.isBefore(courseW.endDate))) {
-                                this.endDate = courseW.endDate;
-                            }
-
-                        } else {
-                            SingletonCourse courseS = new SingletonCourse(courseName, startDateTimePenn, endDateTimePenn);
-                            course = courseS;
-                            if (this.startDate == null || (courseS.interval.start != null && courseS.interval.start.toLocalDate().isBefore(this.startDate))) {
-                                this.startDate = courseS.interval.start.toLocalDate();
-                            }
-                            if (this.endDate == null || (courseS.interval.end != null && courseS.interval.end.toLocalDate().isAfter(this.endDate))) {
-                                this.endDate = courseS.interval.end.toLocalDate();
-                            }
-                        }
-                        courses.add(course);
+                        events.add(readEvent(icsLines, pennLabsMode));
                         break;
                 }
             }
 
+            this.courses = buildCourses(events, pennLabsMode);
+            timer.items(events.size());
+            Metrics.count(Metrics.Counter.EVENTS_PARSED, events.size());
+            Metrics.count(Metrics.Counter.COURSES, this.courses.size());
+            for (Course c : this.courses) {
+                LocalDate first = c.firstDate();
+                LocalDate last = c.lastDate();
+                if (this.startDate == null || (first != null && first.isBefore(this.startDate))) {
+                    this.startDate = first;
+                }
+                if (this.endDate == null || (last != null && last.isAfter(this.endDate))) {
+                    this.endDate = last;
+                }
+            }
+
             for (Course c : this.courses) {
                 if (c instanceof WeeklyCourse wc) {
                     if (wc.endDate == null) {
                         wc.endDate = this.endDate;
                     }
+                } else if (c instanceof RecurringCourse rc && this.endDate != null) {
+                    rc.endAt(this.endDate);
                 }
                 c.assertValid();
             }
         } catch (Exception e) {
-            System.out.println("An error occurred while parsing your schedule. Ensure that it is formatted correctly");
-            System.exit(1);
-            throw new RuntimeException("System.exit() did not exit");
+            throw new ScheduleException("An error occurred while parsing your schedule. Ensure that it is formatted correctly", e);
         }
 
         if (this.startDate == null || this.endDate == null || this.courses == null || this.courses.isEmpty()) {
-            System.out.println("No courses were found when parsing your schedule. Ensure that it is formatted correctly");
-            System.exit(1);
-            throw new RuntimeException("System.exit() did not exit");
+            throw new ScheduleException("No courses were found when parsing your schedule. Ensure that it is formatted correctly");
+        }
+    }
+
+    /**
+     * The properties of a VEVENT which are needed to build a course
+     *
+     * @param name          The SUMMARY of the event, or null
+     * @param start         The DTSTART of the event in Penn's timezone, or null
+     * @param end           The DTEND of the event in Penn's timezone, or null
+     * @param rrule         The RRULE line of the event, or null
+     * @param exdates       The EXDATE lines of the event
+     * @param rdates        The RDATE lines of the event
+     * @param uid           The UID of the event, or null
+     * @param recurrenceId  The RECURRENCE-ID of the event in Penn's timezone, or null if the
+     *                      event is not an overridden instance of a recurring event
+     * @param cancelled     True if the STATUS of the event is CANCELLED
+     */
+    private record Event(String name, LocalDateTime start, LocalDateTime end, String rrule,
+                         List<String> exdates, List<String> rdates, String uid,
+                         LocalDateTime recurrenceId, boolean cancelled) {}
+
+    /**
+     * Read the properties of a VEVENT, up to and including its END:VEVENT line.
+     *
+     * @param icsLines      The (unfolded) lines of the .ics file, just after the BEGIN:VEVENT line
+     * @param pennLabsMode  Set to true for files exported by Penn Labs (see {@link #parseDTString(String, boolean)})
+     * @return              The event
+     * @throws IOException  If the lines cannot be read
+     */
+    private static Event readEvent(IcsLineReader icsLines, boolean pennLabsMode) throws IOException {
+        String name = null;
+        LocalDateTime start = null;
+        LocalDateTime end = null;
+        String rrule = null;
+        List<String> exdates = new ArrayList<>();
+        List<String> rdates = new ArrayList<>();
+        String uid = null;
+        LocalDateTime recurrenceId = null;
+        boolean cancelled = false;
+
+        String line;
+        while ((line = icsLines.readLine()) != null) {
+            if (line.equals("END:VEVENT")) {
+                break;
+            } else if (line.startsWith("SUMMARY:")) {
+                name = line.substring(8);
+            } else if (line.startsWith("DTSTART")) {
+                start = toPenn(parseDTString(line, pennLabsMode));
+            } else if (line.startsWith("DTEND")) {
+                end = toPenn(parseDTString(line, pennLabsMode));
+            } else if (line.startsWith("RRULE:")) {
+                rrule = line;
+            } else if (line.startsWith("EXDATE")) {
+                exdates.add(line);
+            } else if (line.startsWith("RDATE")) {
+                rdates.add(line);
+            } else if (line.startsWith("UID:")) {
+                uid = line.substring(4);
+            } else if (line.startsWith("RECURRENCE-ID")) {
+                recurrenceId = toPenn(parseDTString(line, pennLabsMode));
+            } else if (line.equals("STATUS:CANCELLED")) {
+                cancelled = true;
+            }
+        }
+        return new Event(name, start, end, rrule, exdates, rdates, uid, recurrenceId, cancelled);
+    }
+
+    /**
+     * Convert a date-time to Penn's timezone.
+     *
+     * @param dateTime  The date-time
+     * @return          The local date-time in Penn's timezone
+     */
+    private static LocalDateTime toPenn(ZonedDateTime dateTime) {
+        return dateTime.withZoneSameInstant(Utils.PENN_ZONEID).toLocalDateTime();
+    }
+
+    /**
+     * Build the courses of a schedule from its events, in the order they appear in the file.
+     * Overridden instances of a recurring event (with a RECURRENCE-ID) are attached to the event
+     * with the same UID; cancelled events are dropped.
+     *
+     * @param events        The events of the .ics file
+     * @param pennLabsMode  Set to true for files exported by Penn Labs (see {@link #parseDTString(String, boolean)})
+     * @return              The courses
+     */
+    private static List<Course> buildCourses(List<Event> events, boolean pennLabsMode) {
+        Map<String, Event> masters = new HashMap<>();
+        Map<String, List<Event>> overrides = new HashMap<>();
+        for (Event e : events) {
+            if (e.uid() == null) {
+                continue;
+            }
+            if (e.recurrenceId() == null) {
+                masters.putIfAbsent(e.uid(), e);
+            } else {
+                overrides.computeIfAbsent(e.uid(), k -> new ArrayList<>()).add(e);
+            }
         }
+
+        List<Course> rtn = new ArrayList<>();
+        for (Event e : events) {
+            boolean isOverride = e.recurrenceId() != null;
+            if (e.cancelled() || (isOverride && e.uid() != null && masters.containsKey(e.uid()))) {
+                continue;
+            }
+            if (e.name() == null || e.start() == null || e.end() == null) {
+                System.out.println("Could not find info for a course, skipping:");
+                System.out.println("courseName = " + e.name() + ", startDateTimePenn = " + e.start() + ", endDateTimePenn = " + e.end());
+                continue;
+            }
+            if (isOverride) {
+                // An instance of an event which is not in the file is just a single meeting
+                rtn.add(new SingletonCourse(e.name(), e.start(), e.end()));
+            } else {
+                List<Event> eventOverrides = (e.uid() == null) ? List.of() : overrides.getOrDefault(e.uid(), List.of());
+                if (masters.get(e.uid()) != e) {
+                    eventOverrides = List.of();
+                }
+                rtn.add(buildCourse(e, eventOverrides, pennLabsMode));
+            }
+        }
+        return rtn;
+    }
+
+    /**
+     * Build a course from a VEVENT and its overridden instances. Events which repeat weekly with
+     * no exceptions become a {@link WeeklyCourse}, events which happen once become a
+     * {@link SingletonCourse}, and all others become a {@link RecurringCourse}. Only daily and
+     * weekly rules are supported; events with other rules are treated as happening once.
+     *
+     * @param event         The event
+     * @param overrides     The overridden instances of the event
+     * @param pennLabsMode  Set to true for files exported by Penn Labs (see {@link #parseDTString(String, boolean)})
+     * @return              The course
+     * @throws IllegalArgumentException  If the event cannot be parsed
+     */
+    private static Course buildCourse(Event event, List<Event> overrides, boolean pennLabsMode) {
+        String frequencyString = null;
+        int interval = 1;
+        Integer count = null;
+        LocalDate until = null;
+        String byDay = null;
+        DayOfWeek weekStart = null;
+        if (event.rrule() != null) {
+            for (String comp : CachedRegex.ICS_PROPERTY_SEPARATORS.split(event.rrule())) {
+                if (comp.startsWith("FREQ=")) {
+                    frequencyString = comp.substring(5);
+                } else if (comp.startsWith("INTERVAL=")) {
+                    interval = Integer.parseInt(comp.substring(9));
+                } else if (comp.startsWith("COUNT=")) {
+                    count = Integer.parseInt(comp.substring(6));
+                } else if (comp.startsWith("UNTIL=")) {
+                    until = parseUntil(comp, 6, pennLabsMode).toLocalDate();
+                } else if (comp.startsWith("BYDAY=")) {
+                    byDay = comp.substring(6);
+                } else if (comp.startsWith("WKST=")) {
+                    weekStart = parseDayOfWeek(comp.substring(5));
+                }
+            }
+        }
+
+        Recurrence.Frequency frequency = null;
+        if (frequencyString == null) {
+            // Some exports leave out the frequency of weekly rules
+            if (byDay != null) {
+                frequency = Recurrence.Frequency.WEEKLY;
+            }
+        } else if (frequencyString.equals("WEEKLY")) {
+            frequency = Recurrence.Frequency.WEEKLY;
+        } else if (frequencyString.equals("DAILY")) {
+            frequency = Recurrence.Frequency.DAILY;
+        } else {
+            System.out.println("Only daily and weekly recurrences are supported; using only the first meeting of " + event.name());
+        }
+        Set<DayOfWeek> days = null;
+        if (frequency != null && byDay != null) {
+            days = Arrays.stream(CachedRegex.COMMA.split(byDay))
+                    .map(Schedule::parseDayOfWeek)
+                    .collect(Collectors.toCollection(() -> EnumSet.noneOf(DayOfWeek.class)));
+        }
+
+        Set<LocalDate> excluded = new HashSet<>();
+        for (String line : event.exdates()) {
+            for (LocalDateTime exdate : parseDateList(line, event.start().toLocalTime(), pennLabsMode)) {
+                excluded.add(exdate.toLocalDate());
+            }
+        }
+        Set<LocalDate> exdates = Set.copyOf(excluded);
+        for (Event o : overrides) {
+            excluded.add(o.recurrenceId().toLocalDate());
+        }
+
+        if (frequency == Recurrence.Frequency.WEEKLY && interval == 1 && count == null && excluded.isEmpty()
+                && event.rdates().isEmpty()) {
+            return new WeeklyCourse(event.name(), (days == null) ? Set.of(event.start().getDayOfWeek()) : days,
+                    event.start().toLocalTime(), event.end().toLocalTime(), event.start().toLocalDate(), until);
+        }
+        if (frequency == null && excluded.isEmpty() && event.rdates().isEmpty()) {
+            return new SingletonCourse(event.name(), event.start(), event.end());
+        }
+
+        Recurrence recurrence = new Recurrence(frequency, interval, days, weekStart,
+                event.start().toLocalDate(), until, count, excluded);
+        Duration duration = Duration.between(event.start(), event.end());
+        List<Interval> extras = new ArrayList<>();
+        for (String line : event.rdates()) {
+            for (LocalDateTime rdate : parseDateList(line, event.start().toLocalTime(), pennLabsMode)) {
+                // Dates which are excluded, or which the rule already includes, are not added again
+                boolean inRule = rdate.toLocalTime().equals(event.start().toLocalTime())
+                        && recurrence.occursOn(rdate.toLocalDate().toEpochDay());
+                if (!exdates.contains(rdate.toLocalDate()) && !inRule) {
+                    extras.add(new Interval(rdate, rdate.plus(duration)));
+                }
+            }
+        }
+        for (Event o : overrides) {
+            if (!o.cancelled() && o.start() != null) {
+                extras.add(new Interval(o.start(), (o.end() == null) ? o.start().plus(duration) : o.end()));
+            }
+        }
+        return new RecurringCourse(event.name(), event.start(), event.end(), recurrence, extras);
+    }
+
+    /**
+     * Parse the values of an EXDATE or RDATE line, which is a comma-separated list of dates,
+     * date-times or (for RDATE) periods. Only the start of a period is used.
+     *
+     * @param line          The entire line
+     * @param time          The time to use for values which are dates
+     * @param pennLabsMode  Set to true for files exported by Penn Labs (see {@link #parseDTString(String, boolean)})
+     * @return              The date-times, in Penn's timezone
+     * @throws IllegalArgumentException  If the line cannot be parsed
+     */
+    private static List<LocalDateTime> parseDateList(String line, LocalTime time, boolean pennLabsMode) {
+        int colon = line.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Invalid date list: '" + line + "'");
+        }
+        String prefix = line.substring(0, colon + 1);
+        List<LocalDateTime> rtn = new ArrayList<>();
+        for (String value : CachedRegex.COMMA.split(line.substring(colon + 1))) {
+            int slash = value.indexOf('/');
+            if (slash >= 0) {
+                value = value.substring(0, slash);
+            }
+            if (value.length() == IcsDateTime.DATE_LENGTH) {
+                rtn.add(IcsDateTime.parseDate(value, 0, value.length()).atTime(time));
+            } else {
+                rtn.add(toPenn(parseDTString(prefix + value, pennLabsMode)));
+            }
+        }
+        return rtn;
     }
 
     /**
@@ -228,10 +590,9 @@ public class Schedule {
         List<CourseMeeting> rtn = new ArrayList<>();
 
         for (var c : this.courses) {
-            Interval meetingTime = c.meetingOnDate(date);
-            if (meetingTime != null) {
-                rtn.add(new CourseMeeting(c.name(), meetingTime));
-            }
+            // A course may meet more than once on a date (e.g. a moved meeting on a day it
+            // already meets), so every meeting on the date is listed
+            c.meetingsBetween(date, date).forEachRemaining(meetingTime -> rtn.add(new CourseMeeting(c.name(), meetingTime)));
         }
 
         return rtn;
@@ -287,61 +648,85 @@ public class Schedule {
      * @return A ZonedDateTime parsed from the given string.
      * @throws IllegalArgumentException  If the string cannot be parsed
      */
-    private static ZonedDateTime parseDTString(String dtString, boolean pennLabsOverride) throws IllegalArgumentException {
-        String[] colonSplit = dtString.split(":");
-        if (colonSplit.length != 2) {
-            throw new IllegalArgumentException("Invalid string split: '" + dtString + "' split into " + Arrays.toString(colonSplit));
+    static ZonedDateTime parseDTString(String dtString, boolean pennLabsOverride) throws IllegalArgumentException {
+        int colon = dtString.indexOf(':');
+        if (colon < 0 || colon == dtString.length() - 1 || dtString.indexOf(':', colon + 1) >= 0) {
+            throw new IllegalArgumentException("Invalid string split: '" + dtString + "'");
         }
-        String dateString = colonSplit[1];
-        String[] semicolonSplit = colonSplit[0].split(";");
 
+        // Read the parameters between the property name and the colon
+        int nameEnd = dtString.indexOf(';');
+        if (nameEnd < 0 || nameEnd > colon) {
+            nameEnd = colon;
+        }
         boolean dateMode = false;
         String timeZoneString = null;
-        for (int i = 1; i < semicolonSplit.length; i++) {
-            if (semicolonSplit[i].startsWith("TZID=")) {
+        for (int paramStart = nameEnd + 1; paramStart < colon; ) {
+            int paramEnd = dtString.indexOf(';', paramStart);
+            if (paramEnd < 0 || paramEnd > colon) {
+                paramEnd = colon;
+            }
+            if (dtString.startsWith("TZID=", paramStart)) {
                 if (timeZoneString != null) {
                     throw new IllegalArgumentException("Multiple time zones specified: '" + dtString + "'");
                 }
-                timeZoneString = semicolonSplit[i].substring(5);
-            } else if (semicolonSplit[i].equals("VALUE=DATE")) {
+                timeZoneString = dtString.substring(paramStart + 5, paramEnd);
+            } else if (paramEnd - paramStart == 10 && dtString.startsWith("VALUE=DATE", paramStart)) {
                 dateMode = true;
             }
+            paramStart = paramEnd + 1;
         }
 
-        if (dateString.endsWith("Z")) {
+        int valueEnd = dtString.length();
+        if (dtString.charAt(valueEnd - 1) == 'Z') {
             if (timeZoneString != null) {
                 throw new IllegalArgumentException("Multiple time zones specified (TZID and Z)");
             }
             timeZoneString = pennLabsOverride ? Utils.PENN_TIMEZONE : "Z";
-            dateString = dateString.substring(0, dateString.length() - 1);
-        }
-
-        if (timeZoneString == null) {
-            timeZoneString = Utils.PENN_TIMEZONE;
+            valueEnd--;
         }
 
-        ZoneId timeZone = ZoneId.of(timeZoneString);
+        ZoneId timeZone = (timeZoneString == null) ? Utils.PENN_ZONEID : IcsDateTime.zone(timeZoneString);
 
         if (!dateMode) {
-            LocalDateTime date = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss")
-                    .parse(dateString)
-                    .query(LocalDateTime::from);
-
+            LocalDateTime date = IcsDateTime.parseDateTime(dtString, colon + 1, valueEnd);
             return ZonedDateTime.of(date, timeZone);
         } else {
-            LocalDate date = DateTimeFormatter.ofPattern("yyyyMMdd")
-                    .parse(dateString)
-                    .query(LocalDate::from);
+            LocalDate date = IcsDateTime.parseDate(dtString, colon + 1, valueEnd);
 
-            boolean isEnd = semicolonSplit[0].equals("DTEND");
+            boolean isEnd = dtString.startsWith("DTEND") && nameEnd == 5;
             if (isEnd) {
                 return date.atTime(LocalTime.MAX).atZone(timeZone);
             } else {
                 return date.atStartOfDay(timeZone);
             }
         }
+    }
 
-
+    /**
+     * Parse the UNTIL value of an RRULE line. The value is usually a UTC date-time, but may
+     * also be a local date-time (in Penn's timezone) or a date.
+     *
+     * @param rrule         The entire RRULE component, e.g. "UNTIL=20230426T000000Z"
+     * @param start         The index of the start of the value
+     * @param pennLabsMode  Set to true to ignore the "Z" offset (see
+     *                      <a href="https://github.com/pennlabs/penn-courses/issues/490">#490</a>)
+     * @return              The local date-time in Penn's timezone
+     * @throws IllegalArgumentException  If the value cannot be parsed
+     */
+    private static LocalDateTime parseUntil(String rrule, int start, boolean pennLabsMode) throws IllegalArgumentException {
+        int end = rrule.length();
+        if (end - start == IcsDateTime.DATE_LENGTH) {
+            return IcsDateTime.parseDate(rrule, start, end).atStartOfDay();
+        }
+        if (rrule.charAt(end - 1) != 'Z') {
+            return IcsDateTime.parseDateTime(rrule, start, end);
+        }
+        LocalDateTime utc = IcsDateTime.parseDateTime(rrule, start, end - 1);
+        if (pennLabsMode) {
+            return utc;
+        }
+        return utc.atOffset(ZoneOffset.UTC).atZoneSameInstant(Utils.PENN_ZONEID).toLocalDateTime();
     }
 
     /**
@@ -376,13 +761,52 @@ public class Schedule {
         String name();
 
         /**
-         * Returns the meeting time of this course on the specified date, or null if there is none
+         * Returns the meeting time of this course on the specified date, or null if there is none.
+         * If the course meets more than once on that date, the earliest meeting is returned; use
+         * {@link #meetingsBetween(LocalDate, LocalDate)} to get all of them.
          *
          * @param date  The date to check
          * @return      The time that this course meets on that date, or null
          */
         Interval meetingOnDate(LocalDate date);
 
+        /**
+         * Returns the first date this course can meet on
+         *
+         * @return  The first date, in Penn's timezone
+         */
+        LocalDate firstDate();
+
+        /**
+         * Returns the last date this course can meet on
+         *
+         * @return  The last date, in Penn's timezone
+         */
+        LocalDate lastDate();
+
+        /**
+         * Returns the meetings of this course on the dates between the given dates, in order.
+         * Each meeting is returned once, even if it spans several dates. The meetings are
+         * computed lazily, and the spliterator can be split to expand them in parallel.
+         *
+         * @param startDate  The first date, inclusive
+         * @param endDate    The last date, inclusive
+         * @return           A spliterator over the meetings
+         */
+        Spliterator<Interval> meetingsBetween(LocalDate startDate, LocalDate endDate);
+
+        /**
+         * Returns a stream of the meetings of this course on the dates between the given dates
+         * (see {@link #meetingsBetween(LocalDate, LocalDate)}).
+         *
+         * @param startDate  The first date, inclusive
+         * @param endDate    The last date, inclusive
+         * @return           A sequential stream of the meetings, in order
+         */
+        default Stream<Interval> meetingStream(LocalDate startDate, LocalDate endDate) {
+            return StreamSupport.stream(meetingsBetween(startDate, endDate), false);
+        }
+
         /**
          * Check if a Course has all its essentially fields set
          *
@@ -418,6 +842,17 @@ public class Schedule {
             this.interval = new Interval(startDateTime, endDateTime);
         }
 
+        /**
+         * Construct a course from its meeting, as loaded from a {@link ScheduleSnapshot}.
+         *
+         * @param name      The name of the course
+         * @param interval  The time of the meeting
+         */
+        SingletonCourse(String name, Interval interval) {
+            this.name = name;
+            this.interval = interval;
+        }
+
         @Override
         public String name() {
             return this.name;
@@ -433,6 +868,24 @@ public class Schedule {
             }
         }
 
+        @Override
+        public LocalDate firstDate() {
+            return this.interval.start.toLocalDate();
+        }
+
+        @Override
+        public LocalDate lastDate() {
+            return this.interval.end.toLocalDate();
+        }
+
+        @Override
+        public Spliterator<Interval> meetingsBetween(LocalDate startDate, LocalDate endDate) {
+            if (this.interval.start.toLocalDate().isAfter(endDate) || this.interval.end.toLocalDate().isBefore(startDate)) {
+                return Spliterators.emptySpliterator();
+            }
+            return Spliterators.spliterator(new Interval[] {this.interval}, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+        }
+
         @Override
         public boolean isValid() {
             return this.name != null && this.interval != null
@@ -471,9 +924,10 @@ public class Schedule {
          */
         protected String name;
         /**
-         * The days of the week that the course meets
+         * The days of the week that the course meets, as a bitmask where bit i is set if the
+         * course meets on the day whose {@link DayOfWeek#getValue()} is i + 1
          */
-        protected Set<DayOfWeek> days;
+        protected int dayMask;
         /**
          * The start time of the course meeting
          */
@@ -493,7 +947,28 @@ public class Schedule {
 
         public WeeklyCourse(String name, Set<DayOfWeek> days, LocalTime startTime, LocalTime endTime, LocalDate startDate, LocalDate endDate) {
             this.name = name;
-            this.days = new TreeSet<>(days);
+            for (DayOfWeek d : days) {
+                this.dayMask |= dayBit(d);
+            }
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        /**
+         * Construct a course from its day mask, as loaded from a {@link ScheduleSnapshot}.
+         *
+         * @param name       The name of the course
+         * @param dayMask    The days of the week the course meets (see {@link #dayMask})
+         * @param startTime  The start time of the course meetings
+         * @param endTime    The end time of the course meetings
+         * @param startDate  The earliest date the course can meet on
+         * @param endDate    The latest date the course can meet on
+         */
+        WeeklyCourse(String name, int dayMask, LocalTime startTime, LocalTime endTime, LocalDate startDate, LocalDate endDate) {
+            this.name = name;
+            this.dayMask = dayMask;
             this.startTime = startTime;
             this.endTime = endTime;
             this.startDate = startDate;
@@ -510,23 +985,189 @@ public class Schedule {
             if (date.isBefore(this.startDate) || date.isAfter(this.endDate)) {
                 return null;
             }
-            DayOfWeek weekday = date.getDayOfWeek();
-            if (!days.contains(weekday)) {
+            if ((this.dayMask & dayBit(date.getDayOfWeek())) == 0) {
                 return null;
             }
+            return meetingAt(date);
+        }
+
+        /**
+         * Returns the meeting of this course on a date, without checking that it meets then
+         *
+         * @param date  The date
+         * @return      The time that this course meets on that date
+         */
+        private Interval meetingAt(LocalDate date) {
             return new Interval(date.atTime(this.startTime).atZone(Utils.PENN_ZONEID), date.atTime(this.endTime).atZone(Utils.PENN_ZONEID));
         }
 
+        @Override
+        public LocalDate firstDate() {
+            return this.startDate;
+        }
+
+        @Override
+        public LocalDate lastDate() {
+            return this.endDate;
+        }
+
+        @Override
+        public Spliterator<Interval> meetingsBetween(LocalDate startDate, LocalDate endDate) {
+            long first = Math.max(startDate.toEpochDay(), this.startDate.toEpochDay());
+            long last = Math.min(endDate.toEpochDay(), this.endDate.toEpochDay());
+            return new MeetingSpliterator(first, last);
+        }
+
+        /**
+         * Returns the days of the week that the course meets
+         *
+         * @return  A new set of the days
+         */
+        public Set<DayOfWeek> days() {
+            EnumSet<DayOfWeek> rtn = EnumSet.noneOf(DayOfWeek.class);
+            for (DayOfWeek d : DayOfWeek.values()) {
+                if ((this.dayMask & dayBit(d)) != 0) {
+                    rtn.add(d);
+                }
+            }
+            return rtn;
+        }
+
+        /**
+         * Returns the bit representing a day of the week in a day mask
+         *
+         * @param day  The day of the week
+         * @return     The bit
+         */
+        private static int dayBit(DayOfWeek day) {
+            return 1 << (day.getValue() - 1);
+        }
+
+        /**
+         * Returns the day of the week of an epoch day, as an index into a day mask
+         *
+         * @param epochDay  The epoch day (see {@link LocalDate#toEpochDay()})
+         * @return          The index, from 0 (Monday) to 6 (Sunday)
+         */
+        static int dayIndex(long epochDay) {
+            // The epoch, 1970-01-01, was a Thursday
+            return Math.floorMod(epochDay + 3, 7);
+        }
+
+        /**
+         * Find the first date on or after the given date whose day of the week is in a day mask.
+         * The days in between are skipped with arithmetic, rather than checked one by one.
+         *
+         * @param dayMask   The days of the week (see {@link #dayMask}), which must not be empty
+         * @param epochDay  The epoch day to start from
+         * @return          The epoch day of the first matching date on or after it
+         */
+        static long nextMaskDay(int dayMask, long epochDay) {
+            // Rotate the mask so bit 0 is the given day, then find the first set bit
+            int index = dayIndex(epochDay);
+            int rotated = ((dayMask >>> index) | (dayMask << (7 - index))) & 0x7F;
+            return epochDay + Integer.numberOfTrailingZeros(rotated);
+        }
+
+        /**
+         * Find the first date on or after the given date which the course meets on.
+         *
+         * @param epochDay  The epoch day to start from
+         * @return          The epoch day of the first meeting on or after it
+         */
+        private long nextMeetingDay(long epochDay) {
+            return nextMaskDay(this.dayMask, epochDay);
+        }
+
+        /**
+         * Count the days between two dates which the course meets on.
+         *
+         * @param first  The first epoch day, inclusive
+         * @param last   The last epoch day, inclusive
+         * @return       The number of meetings
+         */
+        private long countMeetingDays(long first, long last) {
+            if (first > last) {
+                return 0;
+            }
+            long days = last - first + 1;
+            long count = (days / 7) * Integer.bitCount(this.dayMask);
+            for (long d = first + (days / 7) * 7; d <= last; d++) {
+                if ((this.dayMask & (1 << dayIndex(d))) != 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * A spliterator over the meetings of the course in a range of dates. It jumps from each
+         * meeting straight to the next, and splits the range in half to run in parallel.
+         */
+        private final class MeetingSpliterator implements Spliterator<Interval> {
+            /**
+             * The epoch day of the next meeting, or a day after {@link #last} if there is none
+             */
+            private long next;
+            /**
+             * The last epoch day in the range, inclusive
+             */
+            private final long last;
+
+            /**
+             * Construct a spliterator over the meetings in a range of dates.
+             *
+             * @param first  The first epoch day, inclusive
+             * @param last   The last epoch day, inclusive
+             */
+            MeetingSpliterator(long first, long last) {
+                this.next = (dayMask == 0 || first > last) ? last + 1 : nextMeetingDay(first);
+                this.last = last;
+            }
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Interval> action) {
+                if (this.next > this.last) {
+                    return false;
+                }
+                action.accept(meetingAt(LocalDate.ofEpochDay(this.next)));
+                this.next = nextMeetingDay(this.next + 1);
+                return true;
+            }
+
+            @Override
+            public Spliterator<Interval> trySplit() {
+                long mid = this.next + (this.last - this.next) / 2;
+                if (mid <= this.next + 7) {
+                    return null;
+                }
+                MeetingSpliterator prefix = new MeetingSpliterator(this.next, mid - 1);
+                this.next = nextMeetingDay(mid);
+                return prefix;
+            }
+
+            @Override
+            public long estimateSize() {
+                return countMeetingDays(this.next, this.last);
+            }
+
+            @Override
+            public int characteristics() {
+                return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL
+                        | Spliterator.IMMUTABLE | Spliterator.DISTINCT;
+            }
+        }
+
         @Override
         public boolean isValid() {
-            return (name != null) && (days != null) && (startTime != null) && (endTime != null) && (startDate != null) && (endDate != null);
+            return (name != null) && (startTime != null) && (endTime != null) && (startDate != null) && (endDate != null);
         }
 
         @Override
         public String toString() {
             return "WeeklyCourse{" +
                     "name='" + name + '\'' +
-                    ", days=" + days +
+                    ", days=" + days() +
                     ", startTime=" + startTime +
                     ", endTime=" + endTime +
                     ", startDate=" + startDate +
@@ -539,12 +1180,306 @@ public class Schedule {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             WeeklyCourse course = (WeeklyCourse) o;
-            return Objects.equals(name, course.name) && Objects.equals(days, course.days) && Objects.equals(startTime, course.startTime) && Objects.equals(endTime, course.endTime) && Objects.equals(startDate, course.startDate) && Objects.equals(endDate, course.endDate);
+            return Objects.equals(name, course.name) && dayMask == course.dayMask && Objects.equals(startTime, course.startTime) && Objects.equals(endTime, course.endTime) && Objects.equals(startDate, course.startDate) && Objects.equals(endDate, course.endDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, dayMask, startTime, endTime, startDate, endDate);
+        }
+    }
+
+    /**
+     * A class which represents a course with a general recurrence rule (see {@link Recurrence}),
+     * such as one which meets every other week, a set number of times, or with some meetings
+     * cancelled or moved. Meetings which are not part of the rule (from RDATE properties, or
+     * moved instances of the course) are kept separately, sorted by start time.
+     */
+    public static class RecurringCourse implements Course {
+        /**
+         * The name of the course
+         */
+        protected String name;
+        /**
+         * The start time of the course meetings which follow the rule
+         */
+        protected LocalTime startTime;
+        /**
+         * The end time of the course meetings which follow the rule
+         */
+        protected LocalTime endTime;
+        /**
+         * The number of days after its start date that a meeting which follows the rule ends
+         */
+        protected int endDayOffset;
+        /**
+         * The dates of the course meetings which follow the rule
+         */
+        protected Recurrence recurrence;
+        /**
+         * The meetings which are not part of the rule, sorted by start time
+         */
+        protected Interval[] extras;
+
+        public RecurringCourse(String name, LocalDateTime startDateTime, LocalDateTime endDateTime,
+                               Recurrence recurrence, List<Interval> extras) {
+            this.name = name;
+            this.startTime = startDateTime.toLocalTime();
+            this.endTime = endDateTime.toLocalTime();
+            this.endDayOffset = (int) (endDateTime.toLocalDate().toEpochDay() - startDateTime.toLocalDate().toEpochDay());
+            this.recurrence = recurrence;
+            this.extras = extras.toArray(new Interval[0]);
+            Arrays.sort(this.extras, Comparator.comparing((Interval i) -> i.start));
+        }
+
+        /**
+         * Construct a course from its fields, as loaded from a {@link ScheduleSnapshot}.
+         *
+         * @param name          The name of the course
+         * @param startTime     The start time of the course meetings which follow the rule
+         * @param endTime       The end time of the course meetings which follow the rule
+         * @param endDayOffset  The number of days after its start date that a meeting ends
+         * @param recurrence    The dates of the course meetings which follow the rule
+         * @param extras        The meetings which are not part of the rule, sorted by start time
+         */
+        RecurringCourse(String name, LocalTime startTime, LocalTime endTime, int endDayOffset,
+                        Recurrence recurrence, Interval[] extras) {
+            this.name = name;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.endDayOffset = endDayOffset;
+            this.recurrence = recurrence;
+            this.extras = extras;
+        }
+
+        @Override
+        public String name() {
+            return this.name;
+        }
+
+        @Override
+        public Interval meetingOnDate(LocalDate date) {
+            Interval rtn = this.recurrence.occursOn(date.toEpochDay()) ? meetingAt(date) : null;
+            // The extras are sorted by start time, so the first one on the date is the earliest
+            for (Interval extra : this.extras) {
+                if (extra.start.toLocalDate().isAfter(date)) {
+                    break;
+                }
+                if (!extra.end.toLocalDate().isBefore(date)) {
+                    return (rtn == null || extra.start.isBefore(rtn.start)) ? extra : rtn;
+                }
+            }
+            return rtn;
+        }
+
+        /**
+         * Returns the meeting of this course on a date, following the rule, without checking
+         * that it meets then
+         *
+         * @param date  The date
+         * @return      The time that this course meets on that date
+         */
+        private Interval meetingAt(LocalDate date) {
+            return new Interval(date.atTime(this.startTime).atZone(Utils.PENN_ZONEID),
+                    date.plusDays(this.endDayOffset).atTime(this.endTime).atZone(Utils.PENN_ZONEID));
+        }
+
+        @Override
+        public LocalDate firstDate() {
+            LocalDate rtn = LocalDate.ofEpochDay(this.recurrence.firstDay());
+            if (this.extras.length > 0 && this.extras[0].start.toLocalDate().isBefore(rtn)) {
+                rtn = this.extras[0].start.toLocalDate();
+            }
+            return rtn;
+        }
+
+        @Override
+        public LocalDate lastDate() {
+            if (!this.recurrence.isBounded()) {
+                return null;
+            }
+            LocalDate rtn = LocalDate.ofEpochDay(this.recurrence.lastDay()).plusDays(this.endDayOffset);
+            for (Interval extra : this.extras) {
+                if (extra.end.toLocalDate().isAfter(rtn)) {
+                    rtn = extra.end.toLocalDate();
+                }
+            }
+            return rtn;
+        }
+
+        /**
+         * End the recurrence of a course which has no end date (see {@link Recurrence#endAt}).
+         *
+         * @param lastDate  The last date the course can meet on
+         */
+        public void endAt(LocalDate lastDate) {
+            this.recurrence.endAt(lastDate);
+        }
+
+        @Override
+        public Spliterator<Interval> meetingsBetween(LocalDate startDate, LocalDate endDate) {
+            long first = startDate.toEpochDay();
+            long last = Math.min(endDate.toEpochDay(), this.recurrence.lastDay());
+            // The extras which overlap the dates, found by their start and end dates
+            int from = 0;
+            while (from < this.extras.length && this.extras[from].end.toLocalDate().isBefore(startDate)) {
+                from++;
+            }
+            List<Interval> extras = new ArrayList<>();
+            for (int i = from; i < this.extras.length && !this.extras[i].start.toLocalDate().isAfter(endDate); i++) {
+                if (!this.extras[i].end.toLocalDate().isBefore(startDate)) {
+                    extras.add(this.extras[i]);
+                }
+            }
+            return new MeetingSpliterator(first, last, extras.toArray(new Interval[0]), 0, extras.size());
+        }
+
+        /**
+         * A spliterator over the meetings of the course in a range of dates. The meetings which
+         * follow the rule are merged with the extra meetings by start time, and excluded dates
+         * are skipped in order. The range can be split in half to run in parallel.
+         */
+        private final class MeetingSpliterator implements Spliterator<Interval> {
+            /**
+             * The epoch day of the next meeting which follows the rule, or a day after
+             * {@link #last} if there is none
+             */
+            private long next;
+            /**
+             * The last epoch day in the range, inclusive
+             */
+            private final long last;
+            /**
+             * The index of the next excluded date which may be skipped
+             */
+            private int excludedIndex;
+            /**
+             * The extra meetings in the range
+             */
+            private final Interval[] extras;
+            /**
+             * The index of the next extra meeting
+             */
+            private int nextExtra;
+            /**
+             * The index after the last extra meeting
+             */
+            private final int endExtra;
+
+            /**
+             * Construct a spliterator over the meetings in a range of dates.
+             *
+             * @param first       The first epoch day, inclusive
+             * @param last        The last epoch day, inclusive
+             * @param extras      The extra meetings in the range, sorted by start time
+             * @param firstExtra  The index of the first extra meeting
+             * @param endExtra    The index after the last extra meeting
+             */
+            MeetingSpliterator(long first, long last, Interval[] extras, int firstExtra, int endExtra) {
+                this.last = last;
+                this.excludedIndex = recurrence.excludedIndex(first);
+                this.next = nextIncluded(first);
+                this.extras = extras;
+                this.nextExtra = firstExtra;
+                this.endExtra = endExtra;
+            }
+
+            /**
+             * Find the first date on or after the given date which follows the rule and is not
+             * excluded.
+             *
+             * @param epochDay  The epoch day to start from
+             * @return          The epoch day of the date, or a day after {@link #last} if there is none
+             */
+            private long nextIncluded(long epochDay) {
+                long day = (epochDay > this.last) ? Long.MAX_VALUE : recurrence.next(epochDay);
+                while (day <= this.last) {
+                    while (recurrence.excludedDay(this.excludedIndex) < day) {
+                        this.excludedIndex++;
+                    }
+                    if (recurrence.excludedDay(this.excludedIndex) != day) {
+                        return day;
+                    }
+                    day = recurrence.next(day + 1);
+                }
+                return this.last + 1;
+            }
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Interval> action) {
+                boolean hasRule = this.next <= this.last;
+                boolean hasExtra = this.nextExtra < this.endExtra;
+                if (!hasRule && !hasExtra) {
+                    return false;
+                }
+                Interval ruleMeeting = hasRule ? meetingAt(LocalDate.ofEpochDay(this.next)) : null;
+                if (hasExtra && (ruleMeeting == null || this.extras[this.nextExtra].start.isBefore(ruleMeeting.start))) {
+                    action.accept(this.extras[this.nextExtra++]);
+                } else {
+                    action.accept(ruleMeeting);
+                    this.next = nextIncluded(this.next + 1);
+                }
+                return true;
+            }
+
+            @Override
+            public Spliterator<Interval> trySplit() {
+                long mid = this.next + (this.last - this.next) / 2;
+                if (this.next > this.last || mid <= this.next + 7) {
+                    return null;
+                }
+                // Each extra meeting goes to the half containing its start date
+                LocalDate midDate = LocalDate.ofEpochDay(mid);
+                int splitExtra = this.nextExtra;
+                while (splitExtra < this.endExtra && this.extras[splitExtra].start.toLocalDate().isBefore(midDate)) {
+                    splitExtra++;
+                }
+                MeetingSpliterator prefix = new MeetingSpliterator(this.next, mid - 1, this.extras, this.nextExtra, splitExtra);
+                this.nextExtra = splitExtra;
+                this.next = nextIncluded(mid);
+                return prefix;
+            }
+
+            @Override
+            public long estimateSize() {
+                long days = (this.next > this.last) ? 0 : this.last - this.next + 1;
+                return days + (this.endExtra - this.nextExtra);
+            }
+
+            @Override
+            public int characteristics() {
+                return Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+            }
+        }
+
+        @Override
+        public boolean isValid() {
+            return (name != null) && (startTime != null) && (endTime != null) && (recurrence != null)
+                    && recurrence.isBounded();
+        }
+
+        @Override
+        public String toString() {
+            return "RecurringCourse{" +
+                    "name='" + name + '\'' +
+                    ", startTime=" + startTime +
+                    ", endTime=" + endTime +
+                    ", recurrence=" + recurrence +
+                    ", extras=" + Arrays.toString(extras) +
+                    '}';
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            RecurringCourse course = (RecurringCourse) o;
+            return Objects.equals(name, course.name) && Objects.equals(startTime, course.startTime) && Objects.equals(endTime, course.endTime) && endDayOffset == course.endDayOffset && Objects.equals(recurrence, course.recurrence) && Arrays.equals(extras, course.extras);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(name, days, startTime, endTime, startDate, endDate);
+            return 31 * Objects.hash(name, startTime, endTime, endDayOffset, recurrence) + Arrays.hashCode(extras);
         }
     }
 
@@ -0,0 +1,392 @@
+import java.io.*;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Objects;
+
+/**
+ * A persistent, on-disk cache of the calendars downloaded from schedule urls. Each calendar is
+ * stored along with the ETag and Last-Modified headers of its response, so it can be requested
+ * again with If-None-Match and If-Modified-Since; if the calendar has not changed, the server
+ * replies with an empty 304 response and the stored copy is used instead.
+ * <p>
+ * Schedule urls are usually secret links, so the cache files are named after a SHA-256 hash of
+ * the url rather than the url itself. New responses are written to the cache as they are
+ * parsed, so they are still only read once.
+ * <p>
+ * The cache is configured with the following system properties:
+ * <ul>
+ *     <li>{@code chagimchelper.scheduleCache.dir}: the directory to store the cache in
+ *         (default: ".chagimchelper/schedules" in the user's home directory)</li>
+ *     <li>{@code chagimchelper.cache.disabled}: set to "true" to bypass the cache entirely
+ *         (shared with {@link HolidayCache})</li>
+ *     <li>{@code chagimchelper.offline}: set to "true" to never request a schedule url
+ *         whose calendar is stored, using the stored copy instead (shared with
+ *         {@link HolidayCache}; see {@link #isOffline})</li>
+ * </ul>
+ * This class cannot be constructed; it contains only static methods
+ */
+public class ScheduleCache {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private ScheduleCache() {}
+
+    /**
+     * The first four bytes of every cache file ("CCSC")
+     */
+    private static final int MAGIC = 0x43435343;
+    /**
+     * The version of the cache file format. Files with a different version are ignored
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The directory the cache is stored in
+     */
+    private static final Path CACHE_DIR = Path.of(System.getProperty("chagimchelper.scheduleCache.dir",
+            Path.of(System.getProperty("user.home"), ".chagimchelper", "schedules").toString()));
+    /**
+     * Whether the cache is disabled
+     */
+    private static final boolean DISABLED = Boolean.getBoolean("chagimchelper.cache.disabled");
+    /**
+     * Whether schedule urls with a stored calendar must not be requested
+     */
+    private static final boolean OFFLINE = Boolean.getBoolean("chagimchelper.offline");
+
+    /**
+     * A stored calendar
+     *
+     * @param path          The path of the cache file
+     * @param fetchedAt     The time the calendar was downloaded
+     * @param etag          The ETag header of the response, or null
+     * @param lastModified  The Last-Modified header of the response, or null
+     */
+    public record Entry(Path path, Instant fetchedAt, String etag, String lastModified) {
+        /**
+         * Open the stored calendar.
+         *
+         * @return  A stream over the body of the stored response
+         * @throws IOException  If the cache file cannot be read
+         */
+        public InputStream openBody() throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.path)));
+            try {
+                readHeader(in, this.path);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            return in;
+        }
+    }
+
+    /**
+     * Check if the program is running in offline mode, in which case stored calendars are used
+     * without checking whether they have changed.
+     *
+     * @return  True if schedule urls with a stored calendar must not be requested
+     */
+    public static boolean isOffline() {
+        return OFFLINE;
+    }
+
+    /**
+     * Get the stored calendar for a url, if there is one.
+     *
+     * @param url  The schedule url
+     * @return     The cache entry, or null if the calendar is not stored
+     */
+    public static Entry get(URI url) {
+        if (DISABLED) {
+            return null;
+        }
+        Path path = pathFor(url);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return readHeader(in, path);
+        } catch (IOException e) {
+            // A corrupt or truncated entry is treated the same as a missing one
+            return null;
+        }
+    }
+
+    /**
+     * Create a request for a schedule url which is conditional on the stored calendar, so the
+     * server only sends the calendar again if it has changed.
+     *
+     * @param url     The schedule url
+     * @param cached  The stored calendar, or null if there is none
+     * @return        The request
+     */
+    public static HttpRequest newRequest(URI url, Entry cached) {
+        HttpRequest.Builder builder = HttpService.newRequest(url);
+        if (cached != null) {
+            if (cached.etag() != null) {
+                builder.header("If-None-Match", cached.etag());
+            }
+            if (cached.lastModified() != null) {
+                builder.header("If-Modified-Since", cached.lastModified());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Wrap the body of a successful response so that it is written to the cache as it is read.
+     * The entry is only replaced once the whole body has been read without errors; if the
+     * stream is closed early, the rest of the body is read first. Failures to write are
+     * ignored, since the cache is only an optimization.
+     *
+     * @param url       The schedule url
+     * @param response  The response, with a status code of 200
+     * @return          A stream over the response body
+     */
+    public static InputStream store(URI url, HttpResponse<InputStream> response) {
+        if (DISABLED) {
+            return response.body();
+        }
+        Path path = pathFor(url);
+        Path tempPath;
+        DataOutputStream out;
+        try {
+            Files.createDirectories(CACHE_DIR);
+            tempPath = Files.createTempFile(CACHE_DIR, path.getFileName().toString(), ".tmp");
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)));
+            writeHeader(out, Instant.now(), response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null));
+        } catch (IOException e) {
+            return response.body();
+        }
+        return new CachingInputStream(response.body(), out, tempPath, path);
+    }
+
+    /**
+     * Record that a stored calendar was revalidated by a 304 response. The entry is only
+     * rewritten if the response has new validators. Failures to write are ignored.
+     *
+     * @param cached    The stored calendar
+     * @param response  The 304 response
+     * @return          The updated entry
+     */
+    public static Entry revalidated(Entry cached, HttpResponse<?> response) {
+        String etag = response.headers().firstValue("ETag").orElse(cached.etag());
+        String lastModified = response.headers().firstValue("Last-Modified").orElse(cached.lastModified());
+        if (Objects.equals(etag, cached.etag()) && Objects.equals(lastModified, cached.lastModified())) {
+            return cached;
+        }
+        Entry rtn = new Entry(cached.path(), cached.fetchedAt(), etag, lastModified);
+        try {
+            Path tempPath = Files.createTempFile(CACHE_DIR, cached.path().getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)));
+                 InputStream body = cached.openBody()) {
+                writeHeader(out, rtn.fetchedAt(), rtn.etag(), rtn.lastModified());
+                body.transferTo(out);
+            }
+            Files.move(tempPath, cached.path(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Ignore, the old entry is still valid
+        }
+        return rtn;
+    }
+
+    /**
+     * Remove every entry from the cache.
+     */
+    public static void invalidateAll() {
+        if (!Files.isDirectory(CACHE_DIR)) {
+            return;
+        }
+        try (var files = Files.list(CACHE_DIR)) {
+            for (Path p : files.toList()) {
+                Files.deleteIfExists(p);
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while clearing the schedule cache at " + CACHE_DIR);
+        }
+    }
+
+    /**
+     * Write the header of a cache file.
+     *
+     * @param out           The stream to write to
+     * @param fetchedAt     The time the calendar was fetched
+     * @param etag          The ETag header of the response, or null
+     * @param lastModified  The Last-Modified header of the response, or null
+     * @throws IOException  If the header cannot be written
+     */
+    private static void writeHeader(DataOutputStream out, Instant fetchedAt, String etag, String lastModified) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(fetchedAt.getEpochSecond());
+        out.writeUTF((etag == null) ? "" : etag);
+        out.writeUTF((lastModified == null) ? "" : lastModified);
+    }
+
+    /**
+     * Read the header of a cache file, leaving the stream at the start of the stored calendar.
+     *
+     * @param in    The stream to read from
+     * @param path  The path of the cache file
+     * @return      The entry
+     * @throws IOException  If the header cannot be read, or is from a different format
+     */
+    private static Entry readHeader(DataInputStream in, Path path) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a schedule cache file");
+        }
+        Instant fetchedAt = Instant.ofEpochSecond(in.readLong());
+        String etag = in.readUTF();
+        String lastModified = in.readUTF();
+        return new Entry(path, fetchedAt, etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified);
+    }
+
+    /**
+     * Get the path of the cache file for a url.
+     *
+     * @param url  The schedule url
+     * @return     The path of the cache file
+     */
+    private static Path pathFor(URI url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.toString().getBytes(StandardCharsets.UTF_8));
+            return CACHE_DIR.resolve(HexFormat.of().formatHex(hash) + ".ics.bin");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A stream which copies everything read from a response body into a new cache file, and
+     * replaces the cache entry with it once the body has been read in full.
+     */
+    private static final class CachingInputStream extends FilterInputStream {
+        /**
+         * The new cache file, or null once writing to it has failed
+         */
+        private OutputStream out;
+        /**
+         * The path of the new cache file
+         */
+        private final Path tempPath;
+        /**
+         * The path of the cache entry
+         */
+        private final Path path;
+        /**
+         * Whether reading the response body has failed
+         */
+        private boolean failed;
+
+        CachingInputStream(InputStream body, OutputStream out, Path tempPath, Path path) {
+            super(body);
+            this.out = out;
+            this.tempPath = tempPath;
+            this.path = path;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+            try {
+                b = super.read();
+            } catch (IOException e) {
+                this.failed = true;
+                throw e;
+            }
+            if (b >= 0) {
+                copy(new byte[] {(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n;
+            try {
+                n = super.read(b, off, len);
+            } catch (IOException e) {
+                this.failed = true;
+                throw e;
+            }
+            if (n > 0) {
+                copy(b, off, n);
+            }
+            return n;
+        }
+
+        /**
+         * Copy bytes which were read to the new cache file.
+         *
+         * @param b    The bytes
+         * @param off  The index of the first byte
+         * @param len  The number of bytes
+         */
+        private void copy(byte[] b, int off, int len) {
+            if (this.out == null) {
+                return;
+            }
+            try {
+                this.out.write(b, off, len);
+            } catch (IOException e) {
+                abandon();
+            }
+        }
+
+        /**
+         * Stop writing to the new cache file, and delete it.
+         */
+        private void abandon() {
+            try {
+                this.out.close();
+            } catch (IOException e) {
+                // Ignore, the file is deleted anyway
+            }
+            this.out = null;
+            try {
+                Files.deleteIfExists(this.tempPath);
+            } catch (IOException e) {
+                // Ignore, the file is only a temporary file
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (this.out != null && !this.failed) {
+                    // Read the rest of the body, in case the reader stopped before the end
+                    byte[] buffer = new byte[8192];
+                    while (read(buffer, 0, buffer.length) >= 0) {
+                        // The bytes are copied by read()
+                    }
+                }
+            } catch (IOException e) {
+                this.failed = true;
+            } finally {
+                super.close();
+                if (this.out != null) {
+                    if (this.failed) {
+                        abandon();
+                    } else {
+                        try {
+                            this.out.close();
+                            Files.move(this.tempPath, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                        } catch (IOException e) {
+                            abandon();
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
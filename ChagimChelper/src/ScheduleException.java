@@ -0,0 +1,15 @@
+/**
+ * An exception thrown when a user's schedule cannot be retrieved or parsed.
+ * The message is suitable for showing directly to the user.
+ */
+public class ScheduleException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ScheduleException(String message) {
+        super(message);
+    }
+
+    public ScheduleException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
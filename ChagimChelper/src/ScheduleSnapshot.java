@@ -0,0 +1,384 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.*;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * A persistent, on-disk store of parsed schedules, so that a schedule which has been parsed
+ * before is loaded instead of being parsed again. Each snapshot is keyed by a SHA-256 hash of
+ * the .ics text it was parsed from, so a changed schedule never matches an old snapshot.
+ * <p>
+ * Snapshots are written in a compact binary format with a {@link FileChannel}, and read back
+ * through a memory-mapped buffer. All numbers are big-endian:
+ * <pre>
+ * int     magic ("CCSN"), int version
+ * long    start date, long end date (epoch days)
+ * int     number of courses, followed by each course:
+ *   byte  kind (1 = single meeting, 2 = weekly, 3 = recurring)
+ *   str   name (int length in bytes, or -1 for null, followed by UTF-8 bytes)
+ *   single meeting: meeting (2 date-times)
+ *   weekly:         byte day mask, long start time, long end time (nanos of day),
+ *                   long start date, long end date (epoch days)
+ *   recurring:      long start time, long end time (nanos of day), int end day offset,
+ *                   the recurrence (see {@link Recurrence#writeTo(ByteBuffer)}),
+ *                   int number of extra meetings, followed by each meeting (2 date-times)
+ * </pre>
+ * Date-times are in Penn's timezone, stored as a long of epoch seconds of the local date-time
+ * and an int of nanoseconds.
+ * <p>
+ * The snapshots are stored in the directory given by the system property
+ * {@code chagimchelper.snapshot.dir} (default: ".chagimchelper/snapshots" in the user's home
+ * directory), and are bypassed when {@code chagimchelper.cache.disabled} is "true" (shared with
+ * {@link HolidayCache} and {@link ScheduleCache}).
+ * This class cannot be constructed; it contains only static methods
+ */
+public class ScheduleSnapshot {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private ScheduleSnapshot() {}
+
+    /**
+     * The first four bytes of every snapshot ("CCSN")
+     */
+    private static final int MAGIC = 0x4343534E;
+    /**
+     * The version of the snapshot format. Snapshots with a different version are ignored, so
+     * this must be increased whenever the format, or the way schedules are parsed, changes.
+     */
+    private static final int VERSION = 1;
+
+    private static final byte SINGLETON = 1;
+    private static final byte WEEKLY = 2;
+    private static final byte RECURRING = 3;
+
+    /**
+     * The directory the snapshots are stored in
+     */
+    private static final Path SNAPSHOT_DIR = Path.of(System.getProperty("chagimchelper.snapshot.dir",
+            Path.of(System.getProperty("user.home"), ".chagimchelper", "snapshots").toString()));
+    /**
+     * Whether the snapshots are disabled
+     */
+    private static final boolean DISABLED = Boolean.getBoolean("chagimchelper.cache.disabled");
+
+    /**
+     * Create a digest to hash the text of a schedule with, for text which is hashed as it is
+     * read (see {@link #key(MessageDigest)}).
+     *
+     * @return  A new SHA-256 digest
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Check if snapshots are loaded and stored, so callers can skip hashing a schedule if not.
+     *
+     * @return  False if the snapshots are disabled with {@code chagimchelper.cache.disabled}
+     */
+    public static boolean isEnabled() {
+        return !DISABLED;
+    }
+
+    /**
+     * Get the key of the snapshot of a schedule whose text has been hashed.
+     *
+     * @param digest  A digest from {@link #newDigest()}, which has been given all the bytes of
+     *                the .ics file
+     * @return        The key
+     */
+    public static String key(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Load a snapshot into an empty schedule.
+     *
+     * @param key       The key of the snapshot
+     * @param schedule  The schedule to fill in, which is left untouched if there is no snapshot
+     * @return          True if the snapshot was found and loaded
+     */
+    public static boolean load(String key, Schedule schedule) {
+        if (DISABLED) {
+            return false;
+        }
+        Path path = pathFor(key);
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return false;
+            }
+            LocalDate startDate = LocalDate.ofEpochDay(in.getLong());
+            LocalDate endDate = LocalDate.ofEpochDay(in.getLong());
+            int count = in.getInt();
+            if (count < 0 || count > in.remaining()) {
+                return false;
+            }
+            List<Schedule.Course> courses = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                courses.add(readCourse(in));
+            }
+            if (in.hasRemaining()) {
+                return false;
+            }
+            schedule.courses = courses;
+            schedule.startDate = startDate;
+            schedule.endDate = endDate;
+            return true;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | DateTimeException e) {
+            // A corrupt or truncated snapshot is treated the same as a missing one
+            return false;
+        }
+    }
+
+    /**
+     * Save a snapshot of a parsed schedule. The snapshot is written to a temporary file, and
+     * then moved into place, so it is never seen half-written. Failures to write are ignored,
+     * since the snapshots are only an optimization.
+     *
+     * @param key       The key of the snapshot
+     * @param schedule  The parsed schedule
+     */
+    public static void store(String key, Schedule schedule) {
+        if (DISABLED) {
+            return;
+        }
+        Output out = new Output();
+        out.ensure(4 + 4 + 8 + 8 + 4)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(schedule.startDate.toEpochDay())
+                .putLong(schedule.endDate.toEpochDay())
+                .putInt(schedule.courses.size());
+        for (Schedule.Course c : schedule.courses) {
+            if (!writeCourse(c, out)) {
+                return;
+            }
+        }
+        ByteBuffer buffer = out.buffer.flip();
+
+        Path path = pathFor(key);
+        Path tempPath = null;
+        try {
+            Files.createDirectories(SNAPSHOT_DIR);
+            tempPath = Files.createTempFile(SNAPSHOT_DIR, path.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (tempPath != null) {
+                try {
+                    Files.deleteIfExists(tempPath);
+                } catch (IOException e2) {
+                    // Ignore, the file is only a temporary file
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove every snapshot.
+     */
+    public static void invalidateAll() {
+        if (!Files.isDirectory(SNAPSHOT_DIR)) {
+            return;
+        }
+        try (var files = Files.list(SNAPSHOT_DIR)) {
+            for (Path p : files.toList()) {
+                Files.deleteIfExists(p);
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while clearing the schedule snapshots at " + SNAPSHOT_DIR);
+        }
+    }
+
+    /**
+     * Write a course to a snapshot.
+     *
+     * @param course  The course
+     * @param out     The snapshot being written
+     * @return        False if the course is of a kind which cannot be saved
+     */
+    private static boolean writeCourse(Schedule.Course course, Output out) {
+        if (course instanceof Schedule.SingletonCourse sc) {
+            out.ensure(1).put(SINGLETON);
+            writeString(sc.name, out);
+            writeInterval(sc.interval, out);
+        } else if (course instanceof Schedule.WeeklyCourse wc) {
+            out.ensure(1).put(WEEKLY);
+            writeString(wc.name, out);
+            out.ensure(1 + 4 * 8)
+                    .put((byte) wc.dayMask)
+                    .putLong(wc.startTime.toNanoOfDay())
+                    .putLong(wc.endTime.toNanoOfDay())
+                    .putLong(wc.startDate.toEpochDay())
+                    .putLong(wc.endDate.toEpochDay());
+        } else if (course instanceof Schedule.RecurringCourse rc) {
+            out.ensure(1).put(RECURRING);
+            writeString(rc.name, out);
+            out.ensure(8 + 8 + 4)
+                    .putLong(rc.startTime.toNanoOfDay())
+                    .putLong(rc.endTime.toNanoOfDay())
+                    .putInt(rc.endDayOffset);
+            rc.recurrence.writeTo(out.ensure(rc.recurrence.snapshotSize()));
+            out.ensure(4).putInt(rc.extras.length);
+            for (Interval extra : rc.extras) {
+                writeInterval(extra, out);
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Read a course written by {@link #writeCourse(Schedule.Course, Output)}.
+     *
+     * @param in  The buffer to read from
+     * @return    The course
+     * @throws IllegalArgumentException  If the course is invalid
+     */
+    private static Schedule.Course readCourse(ByteBuffer in) {
+        byte kind = in.get();
+        String name = readString(in);
+        switch (kind) {
+            case SINGLETON:
+                return new Schedule.SingletonCourse(name, readInterval(in));
+            case WEEKLY:
+                return new Schedule.WeeklyCourse(name, in.get(), LocalTime.ofNanoOfDay(in.getLong()),
+                        LocalTime.ofNanoOfDay(in.getLong()), LocalDate.ofEpochDay(in.getLong()), LocalDate.ofEpochDay(in.getLong()));
+            case RECURRING:
+                LocalTime startTime = LocalTime.ofNanoOfDay(in.getLong());
+                LocalTime endTime = LocalTime.ofNanoOfDay(in.getLong());
+                int endDayOffset = in.getInt();
+                Recurrence recurrence = Recurrence.readFrom(in);
+                int count = in.getInt();
+                if (count < 0 || count > in.remaining()) {
+                    throw new IllegalArgumentException("Invalid number of meetings in snapshot");
+                }
+                Interval[] extras = new Interval[count];
+                for (int i = 0; i < count; i++) {
+                    extras[i] = readInterval(in);
+                }
+                return new Schedule.RecurringCourse(name, startTime, endTime, endDayOffset, recurrence, extras);
+            default:
+                throw new IllegalArgumentException("Invalid course kind in snapshot: " + kind);
+        }
+    }
+
+    /**
+     * Write a string to a snapshot.
+     *
+     * @param s    The string, or null
+     * @param out  The snapshot being written
+     */
+    private static void writeString(String s, Output out) {
+        if (s == null) {
+            out.ensure(4).putInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.ensure(4 + bytes.length).putInt(bytes.length).put(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #writeString(String, Output)}.
+     *
+     * @param in  The buffer to read from
+     * @return    The string, or null
+     */
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write an interval in Penn's timezone to a snapshot.
+     *
+     * @param interval  The interval
+     * @param out       The snapshot being written
+     */
+    private static void writeInterval(Interval interval, Output out) {
+        LocalDateTime start = interval.start.toLocalDateTime();
+        LocalDateTime end = interval.end.toLocalDateTime();
+        out.ensure(2 * (8 + 4))
+                .putLong(start.toEpochSecond(ZoneOffset.UTC))
+                .putInt(start.getNano())
+                .putLong(end.toEpochSecond(ZoneOffset.UTC))
+                .putInt(end.getNano());
+    }
+
+    /**
+     * Read an interval written by {@link #writeInterval(Interval, Output)}.
+     *
+     * @param in  The buffer to read from
+     * @return    The interval, in Penn's timezone
+     */
+    private static Interval readInterval(ByteBuffer in) {
+        LocalDateTime start = LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC);
+        LocalDateTime end = LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC);
+        return new Interval(start, end);
+    }
+
+    /**
+     * Get the path of a snapshot.
+     *
+     * @param key  The key of the snapshot
+     * @return     The path of the snapshot file
+     */
+    private static Path pathFor(String key) {
+        return SNAPSHOT_DIR.resolve(key + ".snapshot");
+    }
+
+    /**
+     * A buffer for writing a snapshot, which grows as needed
+     */
+    private static final class Output {
+        /**
+         * The buffer, which is replaced by a larger copy when it fills up
+         */
+        private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        /**
+         * Make sure there is room for the next few values.
+         *
+         * @param bytes  The number of bytes about to be written
+         * @return       The buffer to write them to
+         */
+        ByteBuffer ensure(int bytes) {
+            if (this.buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(this.buffer.capacity() * 2, this.buffer.position() + bytes));
+                this.buffer = larger.put(this.buffer.flip());
+            }
+            return this.buffer;
+        }
+    }
+}
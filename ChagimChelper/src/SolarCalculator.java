@@ -0,0 +1,119 @@
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * A class for calculating the times at which the sun reaches a given depression below the
+ * horizon, using the NOAA solar position algorithm (based on Jean Meeus' "Astronomical Algorithms").
+ * This is the same algorithm the HebCal API uses for candle lighting and havdalah times.
+ * This class cannot be constructed; it contains only static methods
+ */
+public class SolarCalculator {
+    /**
+     * This class cannot be constructed; it contains only static methods
+     */
+    private SolarCalculator() {}
+
+    /**
+     * The zenith angle of the sun at sunset, accounting for refraction and the size of the sun's disc
+     */
+    public static final double SUNSET_ZENITH = 90.833;
+
+    /**
+     * The Julian day of the Unix epoch (1970-01-01T00:00Z)
+     */
+    private static final double JULIAN_DAY_OF_EPOCH = 2440587.5;
+
+    /**
+     * Calculate the time of sunset on a date.
+     *
+     * @param date       The date
+     * @param latitude   The latitude of the location, in degrees north
+     * @param longitude  The longitude of the location, in degrees east
+     * @return           The instant of sunset, or null if the sun does not set on that date
+     */
+    public static Instant sunset(LocalDate date, double latitude, double longitude) {
+        return setting(date, latitude, longitude, SUNSET_ZENITH);
+    }
+
+    /**
+     * Calculate the time in the evening at which the sun sets to the given zenith angle.
+     *
+     * @param date       The date, which is assumed to be the local date at the location
+     * @param latitude   The latitude of the location, in degrees north
+     * @param longitude  The longitude of the location, in degrees east
+     * @param zenith     The zenith angle of the sun, in degrees (90 + the depression below the horizon)
+     * @return           The instant the sun reaches the zenith angle, or null if it never does on that date
+     */
+    public static Instant setting(LocalDate date, double latitude, double longitude, double zenith) {
+        double julianDay = date.toEpochDay() + JULIAN_DAY_OF_EPOCH;
+
+        // First approximate the time using the sun's position at local noon, then refine it
+        // using the sun's position at the approximated time.
+        double minutes = settingMinutesUTC(julianDay + 0.5 - longitude / 360, latitude, longitude, zenith);
+        if (Double.isNaN(minutes)) {
+            return null;
+        }
+        minutes = settingMinutesUTC(julianDay + minutes / 1440, latitude, longitude, zenith);
+        if (Double.isNaN(minutes)) {
+            return null;
+        }
+        return Instant.ofEpochMilli(Math.round((date.toEpochDay() * 1440 + minutes) * 60_000));
+    }
+
+    /**
+     * Calculate the time the sun sets to the given zenith angle, using the sun's position at the given time.
+     *
+     * @param julianDay  The Julian day to calculate the sun's position at
+     * @param latitude   The latitude of the location, in degrees north
+     * @param longitude  The longitude of the location, in degrees east
+     * @param zenith     The zenith angle of the sun, in degrees
+     * @return           The time, in minutes after midnight UTC, or NaN if the sun never reaches the angle
+     */
+    private static double settingMinutesUTC(double julianDay, double latitude, double longitude, double zenith) {
+        double t = (julianDay - 2451545.0) / 36525.0;
+
+        double meanLongitude = normalizeDegrees(280.46646 + t * (36000.76983 + t * 0.0003032));
+        double meanAnomaly = 357.52911 + t * (35999.05029 - 0.0001537 * t);
+        double eccentricity = 0.016708634 - t * (0.000042037 + 0.0000001267 * t);
+
+        double m = Math.toRadians(meanAnomaly);
+        double equationOfCenter = Math.sin(m) * (1.914602 - t * (0.004817 + 0.000014 * t))
+                + Math.sin(2 * m) * (0.019993 - 0.000101 * t)
+                + Math.sin(3 * m) * 0.000289;
+        double omega = Math.toRadians(125.04 - 1934.136 * t);
+        double apparentLongitude = meanLongitude + equationOfCenter - 0.00569 - 0.00478 * Math.sin(omega);
+
+        double meanObliquity = 23 + (26 + (21.448 - t * (46.815 + t * (0.00059 - t * 0.001813))) / 60) / 60;
+        double obliquity = Math.toRadians(meanObliquity + 0.00256 * Math.cos(omega));
+        double declination = Math.asin(Math.sin(obliquity) * Math.sin(Math.toRadians(apparentLongitude)));
+
+        double y = Math.pow(Math.tan(obliquity / 2), 2);
+        double l0 = Math.toRadians(meanLongitude);
+        double equationOfTime = 4 * Math.toDegrees(y * Math.sin(2 * l0)
+                - 2 * eccentricity * Math.sin(m)
+                + 4 * eccentricity * y * Math.sin(m) * Math.cos(2 * l0)
+                - 0.5 * y * y * Math.sin(4 * l0)
+                - 1.25 * eccentricity * eccentricity * Math.sin(2 * m));
+
+        double lat = Math.toRadians(latitude);
+        double cosHourAngle = Math.cos(Math.toRadians(zenith)) / (Math.cos(lat) * Math.cos(declination))
+                - Math.tan(lat) * Math.tan(declination);
+        if (cosHourAngle < -1 || cosHourAngle > 1) {
+            return Double.NaN;
+        }
+        double hourAngle = -Math.toDegrees(Math.acos(cosHourAngle));
+
+        return 720 - 4 * (longitude + hourAngle) - equationOfTime;
+    }
+
+    /**
+     * Normalize an angle to the range [0, 360).
+     *
+     * @param degrees  The angle, in degrees
+     * @return         The normalized angle
+     */
+    private static double normalizeDegrees(double degrees) {
+        double rtn = degrees % 360;
+        return (rtn < 0) ? rtn + 360 : rtn;
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket rate limiter. The bucket holds up to {@code burst} tokens and is refilled at a
+ * steady rate; each request takes one token. A request which finds the bucket empty reserves
+ * the next token to be added instead of waiting in a queue, so callers are told how long to
+ * wait and can schedule the request for later rather than blocking a thread.
+ */
+public class TokenBucket {
+    /**
+     * How many nanoseconds it takes to add one token
+     */
+    private final double nanosPerToken;
+    /**
+     * The maximum number of tokens the bucket holds
+     */
+    private final double burst;
+    /**
+     * The number of tokens in the bucket. This is negative when tokens which have not been added
+     * yet are already reserved.
+     */
+    private double tokens;
+    /**
+     * The value of {@link System#nanoTime()} when the tokens were last updated
+     */
+    private long lastRefill;
+
+    /**
+     * Construct a full bucket.
+     *
+     * @param perSecond  The number of tokens added per second
+     * @param burst      The maximum number of tokens the bucket holds
+     * @throws IllegalArgumentException  If the rate or burst is not positive
+     */
+    public TokenBucket(double perSecond, int burst) {
+        if (!(perSecond > 0) || burst < 1) {
+            throw new IllegalArgumentException("Invalid rate limit: " + perSecond + " per second, burst " + burst);
+        }
+        this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / perSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take a token, reserving one in advance if the bucket is empty.
+     *
+     * @return  How many nanoseconds the caller must wait before using the token (0 if it can be
+     *          used right away)
+     */
+    public synchronized long reserve() {
+        long now = System.nanoTime();
+        this.tokens = Math.min(this.burst, this.tokens + (now - this.lastRefill) / this.nanosPerToken);
+        this.lastRefill = now;
+        this.tokens -= 1;
+        return (this.tokens >= 0) ? 0 : (long) Math.ceil(-this.tokens * this.nanosPerToken);
+    }
+}
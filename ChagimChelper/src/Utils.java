@@ -1,3 +1,5 @@
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.stream.Stream;
@@ -28,4 +30,18 @@ public class Utils {
     public static Stream<LocalDate> datesUntilInclusive(LocalDate startDate, LocalDate endDate) {
         return Stream.concat(startDate.datesUntil(endDate), Stream.of(endDate));
     }
+
+    /**
+     * Close a response body which will not be read, so its connection (and its request's
+     * permit in {@link HttpService}) is released.
+     *
+     * @param body  The response body
+     */
+    public static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException e) {
+            // Ignore, the body is not needed
+        }
+    }
 }